@@ -0,0 +1,123 @@
+package dev.flyfish.boot.cas.benchmark;
+
+/**
+ * 基准测试使用的典型cas响应报文
+ *
+ * @author wangyu
+ */
+final class CASResponses {
+
+    static final String SERVICE_SUCCESS = """
+            <cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>
+                <cas:authenticationSuccess>
+                    <cas:user>username</cas:user>
+                    <cas:proxyGrantingTicket>PGTIOU-84678-8a9d2sfa23casd</cas:proxyGrantingTicket>
+                </cas:authenticationSuccess>
+            </cas:serviceResponse>
+            """;
+
+    static final String PROXY_SUCCESS = """
+            <cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>
+                <cas:authenticationSuccess>
+                    <cas:user>username</cas:user>
+                    <cas:proxyGrantingTicket>PGTIOU-84678-8a9d2sfa23casd</cas:proxyGrantingTicket>
+                    <cas:proxies>
+                        <cas:proxy>https://proxy2/pgtUrl</cas:proxy>
+                        <cas:proxy>https://proxy1/pgtUrl</cas:proxy>
+                    </cas:proxies>
+                </cas:authenticationSuccess>
+            </cas:serviceResponse>
+            """;
+
+    // cas 3.0 /p3/serviceValidate 释放属性
+    static final String ATTRIBUTES_SUCCESS = """
+            <cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>
+                <cas:authenticationSuccess>
+                    <cas:user>username</cas:user>
+                    <cas:attributes>
+                        <cas:displayName>User Name</cas:displayName>
+                        <cas:email>username@example.org</cas:email>
+                        <cas:isFromNewLogin>true</cas:isFromNewLogin>
+                        <cas:memberOf>staff</cas:memberOf>
+                        <cas:memberOf>faculty</cas:memberOf>
+                    </cas:attributes>
+                    <cas:proxyGrantingTicket>PGTIOU-84678-8a9d2sfa23casd</cas:proxyGrantingTicket>
+                </cas:authenticationSuccess>
+            </cas:serviceResponse>
+            """;
+
+    static final String FAILURE = """
+            <cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>
+                <cas:authenticationFailure code="INVALID_TICKET">
+                    Ticket ST-1856339-aA5Yuvrxzpv8Tau1cYQ7 not recognized
+                </cas:authenticationFailure>
+            </cas:serviceResponse>
+            """;
+
+    static final String SERVICE_SUCCESS_JSON = """
+            {"serviceResponse": {"authenticationSuccess": {
+                "user": "username",
+                "proxyGrantingTicket": "PGTIOU-84678-8a9d2sfa23casd"
+            }}}
+            """;
+
+    static final String PROXY_SUCCESS_JSON = """
+            {"serviceResponse": {"authenticationSuccess": {
+                "user": "username",
+                "proxyGrantingTicket": "PGTIOU-84678-8a9d2sfa23casd",
+                "proxies": ["https://proxy2/pgtUrl", "https://proxy1/pgtUrl"]
+            }}}
+            """;
+
+    static final String ATTRIBUTES_SUCCESS_JSON = """
+            {"serviceResponse": {"authenticationSuccess": {
+                "user": "username",
+                "attributes": {
+                    "displayName": "User Name",
+                    "email": ["username@example.org"],
+                    "isFromNewLogin": [true],
+                    "memberOf": ["staff", "faculty"]
+                },
+                "proxyGrantingTicket": "PGTIOU-84678-8a9d2sfa23casd"
+            }}}
+            """;
+
+    static final String FAILURE_JSON = """
+            {"serviceResponse": {"authenticationFailure": {
+                "code": "INVALID_TICKET",
+                "description": "Ticket ST-1856339-aA5Yuvrxzpv8Tau1cYQ7 not recognized"
+            }}}
+            """;
+
+    static final String LOGOUT_REQUEST = """
+            <samlp:LogoutRequest xmlns:samlp="urn:oasis:names:tc:SAML:2.0:protocol" ID="LR-1-AhsAKpMvbUhxdmJzxExjpJ7a0Z9wcBkDY3v" \
+            Version="2.0" IssueInstant="2024-10-01T08:00:00Z"><saml:NameID xmlns:saml="urn:oasis:names:tc:SAML:2.0:assertion">\
+            @NOT_USED@</saml:NameID><samlp:SessionIndex>ST-1-3hJ4Zqbpf1oTZrQ5gRDx-cas01.example.org</samlp:SessionIndex>\
+            </samlp:LogoutRequest>""";
+
+    // 带xml声明，不满足快速路径条件，必须完整解析
+    static final String LOGOUT_REQUEST_DECLARED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + LOGOUT_REQUEST;
+
+    private CASResponses() {
+    }
+
+    static String of(String name) {
+        return switch (name) {
+            case "service" -> SERVICE_SUCCESS;
+            case "proxy" -> PROXY_SUCCESS;
+            case "failure" -> FAILURE;
+            case "attributes" -> ATTRIBUTES_SUCCESS;
+            default -> throw new IllegalArgumentException("unknown response " + name);
+        };
+    }
+
+    static String json(String name) {
+        return switch (name) {
+            case "service" -> SERVICE_SUCCESS_JSON;
+            case "proxy" -> PROXY_SUCCESS_JSON;
+            case "failure" -> FAILURE_JSON;
+            case "attributes" -> ATTRIBUTES_SUCCESS_JSON;
+            default -> throw new IllegalArgumentException("unknown response " + name);
+        };
+    }
+}
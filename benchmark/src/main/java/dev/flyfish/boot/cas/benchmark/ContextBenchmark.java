@@ -0,0 +1,78 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已登录请求直通过滤器的开销，配合 -prof gc 观察每次请求的分配
+ * exchange为每次请求新建的基线，filter减去exchange即为过滤器本身的开销
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextBenchmark {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    private CASFilter filter;
+
+    private ReactiveTicketValidator validator;
+
+    private WebSession session;
+
+    @Setup
+    public void setup() {
+        CASParameter parameter = new CASParameter();
+        parameter.setCasLogin("http://cas.example.org/login");
+        parameter.setCasValidate("http://cas.example.org/serviceValidate");
+        parameter.setCasServerName("app.example.org");
+        validator = new ReactiveTicketValidator(parameter);
+        filter = new CASFilter(parameter, validator, new SessionMappingStorage.HashMapBackedSessionStorage());
+
+        CASReceipt receipt = new CASReceipt();
+        receipt.setUserName("alice");
+        receipt.setPrimaryAuthentication(true);
+        session = new InMemoryWebSessionStore().createWebSession().block();
+        session.getAttributes().put(CASFilter.CAS_FILTER_USER, "alice");
+        session.getAttributes().put(CASFilter.CAS_FILTER_RECEIPT, receipt);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validator.destroy();
+    }
+
+    @Benchmark
+    public MockServerWebExchange exchange() {
+        return newExchange();
+    }
+
+    @Benchmark
+    public MockServerWebExchange filter() {
+        MockServerWebExchange exchange = newExchange();
+        filter.filter(exchange, CHAIN).block();
+        return exchange;
+    }
+
+    private MockServerWebExchange newExchange() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/orders/42?page=2&size=20&sort=created").build();
+        return MockServerWebExchange.builder(request).session(session).build();
+    }
+}
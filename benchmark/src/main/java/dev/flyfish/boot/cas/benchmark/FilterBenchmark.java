@@ -0,0 +1,85 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器的三条常见路径
+ * authenticated 已登录直通；excluded 命中排除地址，不加载session；redirect 未登录，构建登录地址并跳转
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    @Param({"authenticated", "excluded", "redirect"})
+    public String path;
+
+    private CASFilter filter;
+
+    private ReactiveTicketValidator validator;
+
+    private WebSession session;
+
+    private String uri;
+
+    @Setup
+    public void setup() {
+        CASParameter parameter = new CASParameter();
+        parameter.setCasLogin("http://cas.example.org/login");
+        parameter.setCasValidate("http://cas.example.org/serviceValidate");
+        parameter.setCasServerName("app.example.org");
+        parameter.setExclusions(Set.of("/health"));
+        validator = new ReactiveTicketValidator(parameter);
+        filter = new CASFilter(parameter, validator, new SessionMappingStorage.HashMapBackedSessionStorage());
+
+        session = new InMemoryWebSessionStore().createWebSession().block();
+        if ("authenticated".equals(path)) {
+            CASReceipt receipt = new CASReceipt();
+            receipt.setUserName("alice");
+            receipt.setPrimaryAuthentication(true);
+            session.getAttributes().put(CASFilter.CAS_FILTER_USER, "alice");
+            session.getAttributes().put(CASFilter.CAS_FILTER_RECEIPT, receipt);
+        }
+        uri = "excluded".equals(path) ? "/health" : "/orders/42?page=2&size=20&sort=created";
+
+        MockServerWebExchange exchange = filter();
+        boolean redirected = exchange.getResponse().getHeaders().getLocation() != null;
+        if (redirected != "redirect".equals(path)) {
+            throw new IllegalStateException("unexpected response for " + path + ": " + exchange.getResponse().getStatusCode());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        validator.destroy();
+    }
+
+    @Benchmark
+    public MockServerWebExchange filter() {
+        MockServerHttpRequest request = MockServerHttpRequest.get(uri).build();
+        MockServerWebExchange exchange = MockServerWebExchange.builder(request).session(session).build();
+        filter.filter(exchange, CHAIN).block();
+        return exchange;
+    }
+}
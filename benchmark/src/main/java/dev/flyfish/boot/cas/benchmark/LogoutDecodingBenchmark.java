@@ -0,0 +1,49 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.validator.LogoutRequestDecoder;
+import dev.flyfish.boot.cas.validator.XmlUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单点注销报文解码对比：{@link XmlUtils#getTextForElement} 与 {@link LogoutRequestDecoder}
+ * standard为cas发送的标准报文，走快速路径；declared带xml声明，走复用解析器的完整解析
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogoutDecodingBenchmark {
+
+    @Param({"standard", "declared"})
+    public String shape;
+
+    private String payload;
+
+    private LogoutRequestDecoder decoder;
+
+    @Setup
+    public void setup() {
+        payload = "standard".equals(shape) ? CASResponses.LOGOUT_REQUEST : CASResponses.LOGOUT_REQUEST_DECLARED;
+        decoder = new LogoutRequestDecoder(16 * 1024);
+        String expected = xmlUtils();
+        if (expected == null || !expected.equals(decoder())) {
+            throw new IllegalStateException("decoders disagree: " + expected + " vs " + decoder());
+        }
+    }
+
+    @Benchmark
+    public String xmlUtils() {
+        return XmlUtils.getTextForElement(payload, "SessionIndex");
+    }
+
+    @Benchmark
+    public String decoder() {
+        return decoder.decodeSessionIndex(payload);
+    }
+}
@@ -0,0 +1,102 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.ConcurrentSessionMappingStorage;
+import dev.flyfish.boot.cas.context.cluster.DistributedSessionMappingStorage;
+import dev.flyfish.boot.cas.context.cluster.LoopbackLogoutTransport;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 集群注销扇出吞吐：所有注销请求都落在节点0，而session均匀分布在其他节点，
+ * 每次调用发出一批注销并等待全部远端session被注销
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogoutFanoutBenchmark {
+
+    private static final int LOGOUTS = 1000;
+
+    @Param({"2", "4", "8"})
+    public int nodes;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private DistributedSessionMappingStorage[] storages;
+
+    private InMemoryWebSessionStore[] stores;
+
+    private String[] tickets;
+
+    private long round;
+
+    @Setup(Level.Trial)
+    public void setupCluster() {
+        LoopbackLogoutTransport transport = new LoopbackLogoutTransport();
+        storages = new DistributedSessionMappingStorage[nodes];
+        stores = new InMemoryWebSessionStore[nodes];
+        for (int i = 0; i < nodes; i++) {
+            InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+            store.setMaxSessions(LOGOUTS * 2);
+            stores[i] = store;
+            ConcurrentSessionMappingStorage local = new ConcurrentSessionMappingStorage(() -> store, Duration.ofMinutes(30), LOGOUTS * 2);
+            storages[i] = new DistributedSessionMappingStorage(local, transport, "node-" + i, batchSize, Duration.ofMillis(1), LOGOUTS);
+        }
+        tickets = new String[LOGOUTS];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (DistributedSessionMappingStorage storage : storages) {
+            storage.destroy();
+        }
+    }
+
+    /**
+     * 每轮在节点1..n-1上登录，不计入耗时
+     */
+    @Setup(Level.Invocation)
+    public void login() {
+        round++;
+        for (int i = 0; i < LOGOUTS; i++) {
+            int node = 1 + i % (nodes - 1);
+            WebSession session = stores[node].createWebSession().block();
+            session.start();
+            session.save().block();
+            tickets[i] = "ST-" + round + "-" + i;
+            storages[node].addSessionById(tickets[i], session).block();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOGOUTS)
+    public long fanOut() {
+        long expected = remoteInvalidated() + LOGOUTS;
+        for (String ticket : tickets) {
+            storages[0].removeSessionByMappingId(ticket).block();
+        }
+        while (remoteInvalidated() < expected) {
+            LockSupport.parkNanos(10_000);
+        }
+        return expected;
+    }
+
+    private long remoteInvalidated() {
+        long total = 0;
+        for (DistributedSessionMappingStorage storage : storages) {
+            total += storage.getRemoteInvalidated();
+        }
+        return total;
+    }
+}
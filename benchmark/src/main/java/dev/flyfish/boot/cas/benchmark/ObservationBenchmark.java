@@ -0,0 +1,89 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.metrics.CASObservations;
+import dev.flyfish.boot.cas.validator.ValidationResponse;
+import dev.flyfish.boot.cas.validator.ValidationResponseParser;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 观测开销：以校验响应解析为负载，对比不同的注册中心
+ * none 未配置注册中心；sampled-out 观测被过滤，相当于链路未采样；recorded 每个阶段都创建观测
+ * 建议配合 {@code -prof gc} 运行
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObservationBenchmark {
+
+    @Param({"none", "sampled-out", "recorded"})
+    public String registry;
+
+    private byte[] body;
+
+    private ValidationResponseParser parser;
+
+    private CASObservations observations;
+
+    private Observation parent;
+
+    @Setup
+    public void setup() {
+        body = CASResponses.of("service").getBytes(StandardCharsets.UTF_8);
+        parser = new ValidationResponseParser(16, 256 * 1024);
+        ObservationRegistry observationRegistry = switch (registry) {
+            case "none" -> ObservationRegistry.NOOP;
+            case "sampled-out" -> registry(false);
+            case "recorded" -> registry(true);
+            default -> throw new IllegalArgumentException(registry);
+        };
+        observations = new CASObservations(observationRegistry);
+        // 模拟服务端请求的观测作为父节点
+        parent = Observation.start("http.server.requests", observationRegistry);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parent.stop();
+    }
+
+    @Benchmark
+    public ValidationResponse parse() {
+        return parser.parse(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body))).block();
+    }
+
+    @Benchmark
+    public ValidationResponse observed() {
+        return observations.observe(CASObservations.VALIDATION,
+                        observations.observeLeaf(CASObservations.PARSE,
+                                parser.parse(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)))))
+                .contextWrite(context -> context.put(ObservationThreadLocalAccessor.KEY, parent))
+                .block();
+    }
+
+    private static ObservationRegistry registry(boolean sampled) {
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig()
+                .observationPredicate((name, context) -> sampled || !name.startsWith("cas."))
+                .observationHandler(new ObservationHandler<>() {
+                    @Override
+                    public boolean supportsContext(Observation.Context context) {
+                        return true;
+                    }
+                });
+        return registry;
+    }
+}
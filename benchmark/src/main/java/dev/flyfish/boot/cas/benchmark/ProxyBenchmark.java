@@ -0,0 +1,101 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.proxy.ConcurrentProxyGrantingTicketStorage;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.loadtest.StubCASServer;
+import dev.flyfish.boot.cas.validator.ProxyTicketService;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 代理票据的并发开销
+ * storage 回调保存pgt后由校验取回，对应一次代理登录；
+ * proxyTicket 多个线程为同一目标服务向进程内桩服务申请代理票据，对比开启合并前后的吞吐量
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ProxyBenchmark {
+
+    private static final int TICKETS_PER_THREAD = 256;
+
+    private static final String TARGET_SERVICE = "http://backend.example.org/api";
+
+    @Param({"false", "true"})
+    public boolean coalesce;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    private StubCASServer cas;
+
+    private ProxyTicketService service;
+
+    private ConcurrentProxyGrantingTicketStorage storage;
+
+    private String pgtId;
+
+    @Setup
+    public void setup() {
+        // 桩服务每次签发延迟1ms，模拟局域网内的cas
+        cas = new StubCASServer(new StubCASServer.Settings(Duration.ZERO, Duration.ofMillis(1), 0, Duration.ZERO, 16));
+        CASParameter parameter = new CASParameter();
+        parameter.setCasLogin(cas.getBaseUrl() + "/login");
+        parameter.setCasValidate(cas.getBaseUrl() + "/proxyValidate");
+        parameter.setCasServerName("app.example.org");
+        parameter.getProxy().setCoalesce(coalesce);
+        service = new ProxyTicketService(parameter, new ReactiveTicketValidator(parameter));
+        storage = new ConcurrentProxyGrantingTicketStorage(Duration.ofMinutes(1), TICKETS_PER_THREAD * 64);
+        pgtId = cas.issueProxyGrantingTicket("alice");
+    }
+
+    @TearDown
+    public void tearDown() {
+        cas.close();
+    }
+
+    /**
+     * 每个线程持有自己的pgtIou，预先生成，避免把字符串拼接计入结果
+     */
+    @State(Scope.Thread)
+    public static class Callback {
+
+        private String[] ious;
+
+        private String[] ids;
+
+        private int next;
+
+        @Setup
+        public void setup(ProxyBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            ious = new String[TICKETS_PER_THREAD];
+            ids = new String[TICKETS_PER_THREAD];
+            for (int i = 0; i < TICKETS_PER_THREAD; i++) {
+                ious[i] = "PGTIOU-" + thread + "-" + i;
+                ids[i] = "PGT-" + thread + "-" + i;
+            }
+        }
+    }
+
+    @Benchmark
+    public String storage(Callback callback) {
+        int i = callback.next++ & (TICKETS_PER_THREAD - 1);
+        storage.save(callback.ious[i], callback.ids[i]);
+        return storage.retrieve(callback.ious[i]);
+    }
+
+    @Benchmark
+    public String proxyTicket() {
+        return service.getProxyTicket(pgtId, TARGET_SERVICE).block();
+    }
+}
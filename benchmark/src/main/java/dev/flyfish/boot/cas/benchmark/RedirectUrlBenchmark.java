@@ -0,0 +1,102 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.CASQuery;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.filter.CASUrlTemplates;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.util.CollectionUtils;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跳转cas登录地址的构建：legacy为原先逐次拼接与编码的实现，templates为预编码的模板
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedirectUrlBenchmark {
+
+    private static final String SESSION_ID = "5f0c3a52-8d0e-4d7f-9a43-3c2b8a7f61d4";
+
+    private CASParameter parameter;
+
+    private CASUrlTemplates templates;
+
+    private ServerHttpRequest request;
+
+    private CASQuery query;
+
+    @Setup
+    public void setup() {
+        parameter = new CASParameter();
+        parameter.setCasLogin("https://cas.example.org/cas/login");
+        parameter.setCasValidate("https://cas.example.org/cas/serviceValidate");
+        parameter.setCasServerName("app.example.org");
+        parameter.setCasServerProtocol("https");
+        templates = new CASUrlTemplates(parameter);
+        request = MockServerHttpRequest.get("/orders/42/items?page=2&size=20&sort=created,desc").build();
+        query = CASQuery.parse(request.getURI().getRawQuery());
+        if (!legacy().equals(templates())) {
+            throw new IllegalStateException("implementations disagree:\n" + legacy() + "\n" + templates());
+        }
+    }
+
+    @Benchmark
+    public String legacy() {
+        String service;
+        URI uri = request.getURI();
+        StringBuilder sb = new StringBuilder(parameter.getFullServerUrl()).append(uri.getPath());
+        if (uri.getQuery() != null) {
+            String q = uri.getQuery();
+            int ticketLoc = q.indexOf("ticket=");
+            if (ticketLoc == -1) {
+                sb.append("?").append(q);
+            } else if (ticketLoc > 0) {
+                ticketLoc = q.indexOf("&ticket=");
+                if (ticketLoc == -1) {
+                    sb.append("?").append(q);
+                } else if (ticketLoc > 0) {
+                    sb.append("?").append(q, 0, ticketLoc);
+                }
+            }
+        }
+        service = URLEncoder.encode(sb.toString(), StandardCharsets.UTF_8);
+
+        StringBuilder casLoginString = new StringBuilder()
+                .append(parameter.getCasLogin())
+                .append("?service=").append(service)
+                .append(parameter.isCasRenew() ? "&renew=true" : "")
+                .append(parameter.isCasGateway() ? "&gateway=true" : "");
+        String appId = parameter.getCasServerName() + request.getPath().contextPath().value();
+        casLoginString.append("&appId=").append(URLEncoder.encode(appId, StandardCharsets.UTF_8))
+                .append("&sessionId=").append(SESSION_ID);
+        List<HttpCookie> cookies = request.getCookies().get("JSESSIONID");
+        if (!CollectionUtils.isEmpty(cookies)) {
+            cookies.stream()
+                    .filter(Objects::nonNull)
+                    .map(HttpCookie::getValue)
+                    .filter(cookie -> !cookie.equals("null") && !cookie.equals(SESSION_ID))
+                    .findFirst()
+                    .ifPresent(cookie -> casLoginString.append("&timeOut=").append(cookie));
+        }
+        return casLoginString.toString();
+    }
+
+    @Benchmark
+    public String templates() {
+        return templates.login(request, query, false, false, SESSION_ID, null);
+    }
+}
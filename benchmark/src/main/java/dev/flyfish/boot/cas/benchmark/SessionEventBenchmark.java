@@ -0,0 +1,83 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.config.session.BatchWebSessionListener;
+import dev.flyfish.boot.cas.config.session.WebSessionDecorator;
+import dev.flyfish.boot.cas.config.session.WebSessionEvent;
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
+import dev.flyfish.boot.cas.config.session.WebSessionListener;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * session销毁在请求路径上的耗时
+ * 三个监听器各模拟一次1ms的远程写入，批量监听器一次调用写入整批。
+ * ordered + 同步即原先逐个串联调用监听器的方式，parallel 只等待最慢的一个，异步时销毁在入队后即返回。
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionEventBenchmark {
+
+    private static final Duration LISTENER_LATENCY = Duration.ofMillis(1);
+
+    @Param({"ORDERED", "PARALLEL"})
+    public CASParameter.SessionStore.Events.Dispatch dispatch;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private WebSessionEventBus bus;
+
+    private WebSession session;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CASParameter.SessionStore.Events settings = new CASParameter.SessionStore.Events();
+        settings.setDispatch(dispatch);
+        settings.setAsync(async);
+        Map<String, WebSessionListener> listeners = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            listeners.put("remote-" + i, new RemoteListener());
+        }
+        bus = new WebSessionEventBus(listeners, settings);
+        InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+        session = new WebSessionDecorator(store.createWebSession().block(), bus);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("overflow: " + bus.getOverflow());
+        bus.close();
+    }
+
+    @Benchmark
+    public WebSession invalidate() {
+        session.invalidate().block();
+        return session;
+    }
+
+    /**
+     * 模拟写入外部系统，每次调用固定耗时，与批量大小无关
+     */
+    private static final class RemoteListener implements BatchWebSessionListener {
+
+        @Override
+        public Mono<Void> onSessionEvents(List<WebSessionEvent> events) {
+            return Mono.delay(LISTENER_LATENCY).then();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.config.session.ListenableWebSessionStore;
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过期清理的开销
+ * 预先写入的session最后访问时间均匀分布在一个超时周期内，每次操作把时钟推进一秒并清理一次，
+ * 每次到期的session约为总数的1/1800。scan 为父类的全量扫描，wheel 为时间轮，只处理到期的槽。
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, batchSize = 60)
+@Measurement(iterations = 5, batchSize = 60)
+@Fork(1)
+public class SessionExpiryBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(30);
+
+    @Param({"100000", "500000"})
+    public int sessions;
+
+    @Param({"scan", "wheel"})
+    public String mode;
+
+    private MutableClock clock;
+
+    private InMemoryWebSessionStore store;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        // 从当前时间开始，与时间轮创建时的起点一致
+        clock = new MutableClock(Instant.now());
+        if ("wheel".equals(mode)) {
+            store = new ListenableWebSessionStore(TIMEOUT, new WebSessionEventBus(List.of()),
+                    Duration.ofSeconds(1));
+        } else {
+            store = new InMemoryWebSessionStore();
+        }
+        store.setClock(clock);
+        store.setMaxSessions(sessions + 1);
+        long step = TIMEOUT.toMillis() / sessions;
+        for (int i = 0; i < sessions; i++) {
+            WebSession session = store.createWebSession().block();
+            session.setMaxIdleTime(TIMEOUT);
+            session.getAttributes().put("user", "user-" + i);
+            session.save().block();
+            clock.advance(step);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        if (store instanceof ListenableWebSessionStore listenable) {
+            listenable.close();
+        }
+    }
+
+    @Benchmark
+    public int expire() {
+        clock.advance(1000);
+        if (store instanceof ListenableWebSessionStore listenable) {
+            listenable.getExpiry().advance();
+        } else {
+            store.removeExpiredSessions();
+        }
+        return store.getSessions().size();
+    }
+
+    /**
+     * 可手动推进的时钟
+     */
+    static final class MutableClock extends Clock {
+
+        private volatile long millis;
+
+        MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
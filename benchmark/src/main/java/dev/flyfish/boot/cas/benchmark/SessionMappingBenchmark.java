@@ -0,0 +1,92 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.ConcurrentSessionMappingStorage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发读写映射存储
+ * login 记录映射后按票据注销，对应一次完整的登录、单点注销；
+ * relogin 同一session携带新票据重新登录，对应过滤器中先按session移除再记录的流程
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class SessionMappingBenchmark {
+
+    private static final int SESSIONS_PER_THREAD = 64;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    private InMemoryWebSessionStore store;
+
+    private ConcurrentSessionMappingStorage storage;
+
+    @Setup
+    public void setup() {
+        store = new InMemoryWebSessionStore();
+        store.setMaxSessions(SESSIONS_PER_THREAD * 64);
+        storage = new ConcurrentSessionMappingStorage(() -> store, Duration.ofMinutes(30), SESSIONS_PER_THREAD * 64);
+    }
+
+    /**
+     * 每个线程持有自己的session与票据，票据预先生成，避免把字符串拼接计入结果
+     */
+    @State(Scope.Thread)
+    public static class Client {
+
+        private WebSession[] sessions;
+
+        private String[] tickets;
+
+        private int next;
+
+        @Setup
+        public void setup(SessionMappingBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            sessions = new WebSession[SESSIONS_PER_THREAD];
+            tickets = new String[SESSIONS_PER_THREAD];
+            for (int i = 0; i < SESSIONS_PER_THREAD; i++) {
+                WebSession session = benchmark.store.createWebSession().block();
+                session.start();
+                session.save().block();
+                sessions[i] = session;
+                tickets[i] = "ST-" + thread + "-" + i + "-cas.example.org";
+            }
+        }
+
+        private int next() {
+            int index = next;
+            next = (index + 1) % SESSIONS_PER_THREAD;
+            return index;
+        }
+    }
+
+    @Benchmark
+    public WebSession login(Client client) {
+        int index = client.next();
+        storage.addSessionById(client.tickets[index], client.sessions[index]).block();
+        return storage.removeSessionByMappingId(client.tickets[index]).block();
+    }
+
+    @Benchmark
+    public int relogin(Client client) {
+        int index = client.next();
+        WebSession session = client.sessions[index];
+        storage.removeBySessionById(session.getId())
+                .then(storage.addSessionById(client.tickets[index], session))
+                .block();
+        return storage.size();
+    }
+}
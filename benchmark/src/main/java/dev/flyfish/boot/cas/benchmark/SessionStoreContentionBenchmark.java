@@ -0,0 +1,157 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.config.session.ListenableWebSessionStore;
+import dev.flyfish.boot.cas.config.session.ShardedWebSessionStore;
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存储已满时的并发访问
+ * 预先写入占最大session数80%的已登录用户并由爬虫写满，之后56个线程按随机id取回用户的session，
+ * 8个线程不断新建session模拟爬虫，共64个线程。
+ * 按过滤器的实际流程：首次访问写入gateway标记并跳转登录，session随之保存；携带票据返回时取回同一session写入receipt。
+ * 爬虫只有第一步。
+ * memory 为原先的存储，已满时每次保存先全量扫描过期session再拒绝；sharded 淘汰最久未访问的session后接受，
+ * 被淘汰的用户在下次访问时重新登录，计入 missed。
+ * 线程数可用 -tg 调整，如 -tg 112,16。
+ *
+ * @author wangyu
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionStoreContentionBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(30);
+
+    // 与CASFilter中跳转登录时写入的标记相同
+    private static final String GATEWAYED = "edu.yale.its.tp.cas.client.filter.didGateway";
+
+    private static final CASReceipt RECEIPT = new CASReceipt();
+
+    @Param({"100000"})
+    public int sessions;
+
+    @Param({"memory", "sharded"})
+    public String store;
+
+    private WebSessionStore sessionStore;
+
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        WebSessionEventBus events = new WebSessionEventBus(List.of());
+        CASParameter.SessionStore settings = new CASParameter.SessionStore();
+        if ("sharded".equals(store)) {
+            ShardedWebSessionStore sharded = new ShardedWebSessionStore(settings, TIMEOUT, events);
+            sharded.setMaxSessions(sessions);
+            sessionStore = sharded;
+        } else {
+            ListenableWebSessionStore memory = new ListenableWebSessionStore(TIMEOUT, events, settings.getExpiryTick());
+            memory.setMaxSessions(sessions);
+            sessionStore = memory;
+        }
+        // 正常用户占最大session数的80%，低于软水位，其余由爬虫占满
+        ids = new String[sessions * 4 / 5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = login(i);
+        }
+        for (int i = ids.length; i < sessions; i++) {
+            redirect();
+        }
+    }
+
+    /**
+     * 跳转cas登录，session在响应前保存
+     */
+    private WebSession redirect() {
+        WebSession session = sessionStore.createWebSession().block();
+        session.getAttributes().put(GATEWAYED, "true");
+        session.save().block();
+        return session;
+    }
+
+    /**
+     * 跳转登录后携带票据返回，在同一session中写入receipt
+     *
+     * @return session id，登录途中session被淘汰时为空
+     */
+    private String login(int user) {
+        String id = redirect().getId();
+        WebSession session = sessionStore.retrieveSession(id).block();
+        if (session == null) {
+            return null;
+        }
+        session.getAttributes().put(CASFilter.CAS_FILTER_USER, "user-" + user);
+        session.getAttributes().put(CASFilter.CAS_FILTER_RECEIPT, RECEIPT);
+        session.getAttributes().remove(GATEWAYED);
+        session.save().block();
+        return id;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (sessionStore instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    @Group("full")
+    @GroupThreads(56)
+    public WebSession retrieve(Outcomes outcomes) {
+        int user = ThreadLocalRandom.current().nextInt(ids.length);
+        String id = ids[user];
+        WebSession session = id == null ? null : sessionStore.retrieveSession(id).block();
+        if (session == null) {
+            // 被淘汰的用户重新登录
+            outcomes.missed++;
+            ids[user] = login(user);
+        }
+        return session;
+    }
+
+    @Benchmark
+    @Group("full")
+    @GroupThreads(8)
+    public WebSession create(Outcomes outcomes) {
+        try {
+            WebSession session = redirect();
+            outcomes.accepted++;
+            return session;
+        } catch (IllegalStateException e) {
+            outcomes.rejected++;
+            return null;
+        }
+    }
+
+    /**
+     * 新建session被接受与拒绝的次数，以及用户因session被淘汰而重新登录的次数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long accepted;
+
+        public long rejected;
+
+        public long missed;
+    }
+}
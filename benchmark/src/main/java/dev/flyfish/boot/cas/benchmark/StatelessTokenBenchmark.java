@@ -0,0 +1,110 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.context.token.CASToken;
+import dev.flyfish.boot.cas.context.token.StatelessTokens;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已登录请求的单次开销：session模式按cookie从session存储中取回session，
+ * token模式只校验签名cookie，配合 -prof gc 观察分配
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatelessTokenBenchmark {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    @Param({"session", "token"})
+    public String mode;
+
+    private CASFilter filter;
+
+    private ReactiveTicketValidator validator;
+
+    private DefaultWebSessionManager sessionManager;
+
+    private HttpCookie cookie;
+
+    @Setup
+    public void setup() {
+        CASParameter parameter = new CASParameter();
+        parameter.setCasLogin("http://cas.example.org/login");
+        parameter.setCasValidate("http://cas.example.org/serviceValidate");
+        parameter.setCasServerName("app.example.org");
+        CASParameter.Token.Key key = new CASParameter.Token.Key();
+        key.setId("k1");
+        key.setSecret("0123456789abcdef0123456789abcdef");
+        parameter.getToken().getKeys().add(key);
+        validator = new ReactiveTicketValidator(parameter);
+
+        CASReceipt receipt = new CASReceipt();
+        receipt.setUserName("alice");
+        receipt.setPrimaryAuthentication(true);
+
+        InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+        sessionManager = new DefaultWebSessionManager();
+        sessionManager.setSessionStore(store);
+
+        if ("token".equals(mode)) {
+            StatelessTokens tokens = new StatelessTokens(parameter);
+            filter = new CASFilter(parameter, validator, new SessionMappingStorage.HashMapBackedSessionStorage(), tokens);
+            CASToken token = tokens.create(receipt, "alice", "ST-1-benchmark");
+            MockServerWebExchange login = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+            tokens.issue(login, token);
+            ResponseCookie issued = login.getResponse().getCookies().getFirst(parameter.getToken().getCookieName());
+            cookie = new HttpCookie(issued.getName(), issued.getValue());
+        } else {
+            filter = new CASFilter(parameter, validator, new SessionMappingStorage.HashMapBackedSessionStorage());
+            WebSession session = store.createWebSession().block();
+            session.getAttributes().put(CASFilter.CAS_FILTER_USER, "alice");
+            session.getAttributes().put(CASFilter.CAS_FILTER_RECEIPT, receipt);
+            session.start();
+            session.save().block();
+            cookie = new HttpCookie("SESSION", session.getId());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        validator.destroy();
+    }
+
+    @Benchmark
+    public MockServerWebExchange exchange() {
+        return newExchange();
+    }
+
+    @Benchmark
+    public MockServerWebExchange filter() {
+        MockServerWebExchange exchange = newExchange();
+        filter.filter(exchange, CHAIN).block();
+        return exchange;
+    }
+
+    private MockServerWebExchange newExchange() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/orders/42?page=2&size=20").cookie(cookie).build();
+        return MockServerWebExchange.builder(request).sessionManager(sessionManager).build();
+    }
+}
@@ -0,0 +1,104 @@
+package dev.flyfish.boot.cas.benchmark;
+
+import dev.flyfish.boot.cas.validator.JsonValidationResponseParser;
+import dev.flyfish.boot.cas.validator.ProxyTicketValidator;
+import dev.flyfish.boot.cas.validator.ValidationResponse;
+import dev.flyfish.boot.cas.validator.ValidationResponseParser;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 校验响应解析对比：原有的SAX {@code Handler/ProxyHandler}、流式xml解析器与流式json解析器（{@code format=JSON}）
+ * 建议配合 {@code -prof gc} 运行以观察每次校验的内存分配
+ *
+ * @author wangyu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationParsingBenchmark {
+
+    @Param({"service", "proxy", "failure", "attributes"})
+    public String response;
+
+    private String body;
+
+    private byte[] head;
+
+    private byte[] tail;
+
+    private byte[] jsonHead;
+
+    private byte[] jsonTail;
+
+    private ValidationResponseParser parser;
+
+    private JsonValidationResponseParser jsonParser;
+
+    @Setup
+    public void setup() throws Exception {
+        body = CASResponses.of(response);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        // 拆成两块，模拟响应分多个网络缓冲区到达
+        head = Arrays.copyOfRange(bytes, 0, bytes.length / 2);
+        tail = Arrays.copyOfRange(bytes, bytes.length / 2, bytes.length);
+        byte[] jsonBytes = CASResponses.json(response).getBytes(StandardCharsets.UTF_8);
+        jsonHead = Arrays.copyOfRange(jsonBytes, 0, jsonBytes.length / 2);
+        jsonTail = Arrays.copyOfRange(jsonBytes, jsonBytes.length / 2, jsonBytes.length);
+        parser = new ValidationResponseParser(16, 256 * 1024);
+        jsonParser = new JsonValidationResponseParser(16, 256 * 1024);
+
+        // 各实现结果必须一致，否则对比没有意义
+        ProxyTicketValidator legacy = legacy();
+        ValidationResponse streaming = streaming();
+        ValidationResponse json = json();
+        if (legacy.isAuthenticationSuccessful() != streaming.successful()
+                || !Objects.equals(legacy.getUser(), streaming.user())
+                || !Objects.equals(legacy.getErrorCode(), streaming.errorCode())) {
+            throw new IllegalStateException("parsers disagree: " + legacy + " vs " + streaming);
+        }
+        if (!streaming.equals(json)) {
+            throw new IllegalStateException("parsers disagree: " + streaming + " vs " + json);
+        }
+    }
+
+    @Benchmark
+    public ProxyTicketValidator legacy() throws Exception {
+        ProxyTicketValidator validator = new ProxyTicketValidator();
+        validator.parseResponse(new String(concat(), StandardCharsets.UTF_8));
+        return validator;
+    }
+
+    @Benchmark
+    public ValidationResponse streaming() {
+        DataBuffer first = DefaultDataBufferFactory.sharedInstance.wrap(head);
+        DataBuffer second = DefaultDataBufferFactory.sharedInstance.wrap(tail);
+        return parser.parse(Flux.just(first, second)).block();
+    }
+
+    @Benchmark
+    public ValidationResponse json() {
+        DataBuffer first = DefaultDataBufferFactory.sharedInstance.wrap(jsonHead);
+        DataBuffer second = DefaultDataBufferFactory.sharedInstance.wrap(jsonTail);
+        return jsonParser.parse(Flux.just(first, second)).block();
+    }
+
+    /**
+     * 原实现需要先把全部响应读入内存再转成字符串
+     */
+    private byte[] concat() {
+        byte[] all = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, all, head.length, tail.length);
+        return all;
+    }
+}
@@ -0,0 +1,255 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 端到端压测：进程内启动cas桩服务与接入starter的应用，模拟完整的用户流程
+ *
+ * @author wangyu
+ * 每个虚拟用户依次执行：首次访问被跳转 -> cas登录签发票据 -> 携带票据访问并完成校验 ->
+ * 若干次已登录访问 -> cas发送单点注销 -> 再次访问应被跳转。按阶段输出吞吐与p50/p99/p999延迟。
+ * 全部服务运行在本机，不依赖外部环境。
+ * <pre>
+ * java -cp target/benchmarks.jar dev.flyfish.boot.cas.loadtest.LoadTest --users=5000 --concurrency=128
+ * </pre>
+ * 参数（均为可选）：
+ * users 用户数；concurrency 并发用户数；requests 每个用户登录后的访问次数；warmup 预热用户数；
+ * login-latency、validate-latency、logout-latency 桩服务延迟，如 5ms；validate-failure-rate 校验失败比例；
+ * token 为true时使用无状态模式
+ */
+public final class LoadTest {
+
+    private static final String[] PHASES = {"first-hit", "login", "validate", "authenticated", "logout", "after-logout"};
+
+    private final WebClient client;
+
+    private final StubCASServer cas;
+
+    private final String appUrl;
+
+    private final int requests;
+
+    private final Map<String, PhaseRecorder> phases = new LinkedHashMap<>();
+
+    private LoadTest(WebClient client, StubCASServer cas, String appUrl, int requests) {
+        this.client = client;
+        this.cas = cas;
+        this.appUrl = appUrl;
+        this.requests = requests;
+        for (String phase : PHASES) {
+            phases.put(phase, new PhaseRecorder(phase));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parse(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "2000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "10"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", String.valueOf(Math.min(users, 500))));
+        boolean token = Boolean.parseBoolean(options.getOrDefault("token", "false"));
+
+        StubCASServer.Settings settings = new StubCASServer.Settings(
+                duration(options.getOrDefault("login-latency", "0ms")),
+                duration(options.getOrDefault("validate-latency", "5ms")),
+                Double.parseDouble(options.getOrDefault("validate-failure-rate", "0")),
+                duration(options.getOrDefault("logout-latency", "0ms")),
+                concurrency * 2);
+
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(concurrency * 2)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try (StubCASServer cas = new StubCASServer(settings);
+             ConfigurableApplicationContext app = startApp(cas, freePort(), users + warmup, token, concurrency)) {
+            String appUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+            WebClient client = WebClient.builder()
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                    .build();
+
+            System.out.printf("stub cas %s, app %s, users %d, concurrency %d, requests/user %d, %s mode, %s%n",
+                    cas.getBaseUrl(), appUrl, users, concurrency, requests, token ? "token" : "session", settings);
+
+            LoadTest test = new LoadTest(client, cas, appUrl, requests);
+            if (warmup > 0) {
+                test.run(0, warmup, concurrency);
+                test.phases.values().forEach(PhaseRecorder::reset);
+            }
+            long elapsed = test.run(warmup, users, concurrency);
+
+            System.out.printf("%n%d flows in %.2fs, %.1f flows/s%n", users, elapsed / 1e9, users / (elapsed / 1e9));
+            System.out.println(PhaseRecorder.header());
+            test.phases.values().forEach(phase -> System.out.println(phase.report(elapsed)));
+        } finally {
+            connections.dispose();
+        }
+    }
+
+    private static ConfigurableApplicationContext startApp(StubCASServer cas, int port, int sessions, boolean token,
+                                                           int concurrency) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", port);
+        properties.put("server.address", "127.0.0.1");
+        properties.put("server.reactive.session.max-sessions", sessions * 2);
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "warn");
+        properties.put("cas.filter.cas-login", cas.getBaseUrl() + "/login");
+        properties.put("cas.filter.cas-validate", cas.getBaseUrl() + "/serviceValidate");
+        properties.put("cas.filter.cas-server-name", "127.0.0.1:" + port);
+        properties.put("cas.filter.client.max-connections", concurrency * 2);
+        if (token) {
+            properties.put("cas.filter.token.enabled", true);
+            properties.put("cas.filter.token.keys[0].id", "load");
+            properties.put("cas.filter.token.keys[0].secret", "load-test-secret-load-test-secret-0123456789");
+        }
+        return new SpringApplicationBuilder(LoadTestApp.class)
+                .web(WebApplicationType.REACTIVE)
+                .properties(properties)
+                .run();
+    }
+
+    /**
+     * @return 耗时，纳秒
+     */
+    private long run(int offset, int users, int concurrency) {
+        long start = System.nanoTime();
+        Flux.range(offset, users)
+                .flatMap(user -> flow("user-" + user).onErrorResume(e -> Mono.empty()), concurrency)
+                .blockLast();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 单个用户的完整流程，任一阶段失败即结束
+     */
+    private Mono<Void> flow(String user) {
+        Map<String, String> cookies = new ConcurrentHashMap<>();
+        URI hello = URI.create(appUrl + "/hello");
+        return timed("first-hit", () -> get(hello, cookies), HttpStatus.FOUND)
+                .map(location -> URI.create(location + "&user=" + user))
+                .flatMap(login -> timed("login", () -> get(login, Map.of()), HttpStatus.FOUND))
+                .flatMap(service -> {
+                    String ticket = service.substring(service.indexOf("ticket=") + "ticket=".length());
+                    return timed("validate", () -> get(URI.create(service), cookies), HttpStatus.OK)
+                            .then(Flux.range(0, requests)
+                                    .concatMap(i -> timed("authenticated", () -> get(hello, cookies), HttpStatus.OK))
+                                    .then())
+                            .then(timedLogout(ticket))
+                            // 无状态模式下注销只吊销令牌，请求仍携带令牌，同样应被跳转
+                            .then(timed("after-logout", () -> get(hello, cookies), HttpStatus.FOUND))
+                            .then();
+                });
+    }
+
+    private Mono<Void> timedLogout(String ticket) {
+        PhaseRecorder recorder = phases.get("logout");
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return cas.logout(ticket).flatMap(status -> {
+                if (status != HttpStatus.OK.value()) {
+                    recorder.error();
+                    return Mono.error(new IllegalStateException("logout returned " + status));
+                }
+                recorder.record(System.nanoTime() - start);
+                return Mono.empty();
+            });
+        }).doOnError(e -> recorder.error()).then();
+    }
+
+    /**
+     * 执行请求并记录耗时，状态码不符合预期时计为错误
+     *
+     * @return 跳转地址，非跳转时为空串
+     */
+    private Mono<String> timed(String phase, Supplier<Mono<Result>> request, HttpStatus expected) {
+        PhaseRecorder recorder = phases.get(phase);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request.get().flatMap(result -> {
+                long elapsed = System.nanoTime() - start;
+                if (result.status() != expected.value()) {
+                    recorder.error();
+                    return Mono.error(new IllegalStateException(phase + " returned " + result.status()));
+                }
+                recorder.record(elapsed);
+                return Mono.just(result.location());
+            });
+        });
+    }
+
+    private Mono<Result> get(URI uri, Map<String, String> cookies) {
+        return client.get()
+                .uri(uri)
+                .cookies(values -> cookies.forEach(values::add))
+                .exchangeToMono(response -> response.releaseBody().then(Mono.fromSupplier(() -> result(response, cookies))));
+    }
+
+    private static Result result(ClientResponse response, Map<String, String> cookies) {
+        for (List<ResponseCookie> values : response.cookies().values()) {
+            for (ResponseCookie cookie : values) {
+                if (cookie.getMaxAge().isZero()) {
+                    cookies.remove(cookie.getName());
+                } else {
+                    cookies.put(cookie.getName(), cookie.getValue());
+                }
+            }
+        }
+        String location = response.headers().asHttpHeaders().getFirst(HttpHeaders.LOCATION);
+        return new Result(response.statusCode().value(), location == null ? "" : location);
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') == -1) {
+                throw new IllegalArgumentException("expected --name=value but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofMillis(Long.parseLong(value));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress("127.0.0.1", 0));
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Result(int status, String location) {
+    }
+}
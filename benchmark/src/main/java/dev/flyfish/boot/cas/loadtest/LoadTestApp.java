@@ -0,0 +1,34 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import dev.flyfish.boot.cas.filter.CASFilter;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * 压测使用的最小应用，只引入starter与一个受保护的接口
+ *
+ * @author wangyu
+ */
+@SpringBootApplication
+@RestController
+public class LoadTestApp {
+
+    /**
+     * @param exchange 请求
+     * @return 当前用户
+     */
+    @GetMapping("/hello")
+    public Mono<String> hello(ServerWebExchange exchange) {
+        Object user = exchange.getAttribute(CASFilter.CAS_FILTER_USER);
+        if (user != null) {
+            return Mono.just("hello " + user);
+        }
+        return exchange.getSession()
+                .mapNotNull(session -> session.<String>getAttribute(CASFilter.CAS_FILTER_USER))
+                .map(name -> "hello " + name)
+                .defaultIfEmpty("hello");
+    }
+}
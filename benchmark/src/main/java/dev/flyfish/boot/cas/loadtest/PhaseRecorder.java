@@ -0,0 +1,72 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 单个阶段的延迟记录
+ *
+ * @author wangyu
+ * 保存全部样本，结束后排序计算精确的分位数。压测规模在百万级以内，内存可以接受。
+ */
+final class PhaseRecorder {
+
+    private final String name;
+
+    private long[] samples = new long[1024];
+
+    private int count;
+
+    private long errors;
+
+    PhaseRecorder(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized void reset() {
+        count = 0;
+        errors = 0;
+    }
+
+    static String header() {
+        return String.format(Locale.ROOT, "%-14s %9s %7s %10s %9s %9s %9s %9s",
+                "phase", "count", "errors", "ops/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+    }
+
+    /**
+     * @param elapsedNanos 压测总耗时，用于计算吞吐
+     * @return 一行报告
+     */
+    synchronized String report(long elapsedNanos) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        double throughput = count / (elapsedNanos / 1e9);
+        return String.format(Locale.ROOT, "%-14s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                name, count, errors, throughput,
+                millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)),
+                millis(percentile(sorted, 0.999)), millis(count == 0 ? 0 : sorted[count - 1]));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
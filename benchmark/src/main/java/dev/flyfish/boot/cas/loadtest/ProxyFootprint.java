@@ -0,0 +1,141 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.context.ConcurrentSessionMappingStorage;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 代理调用的内存占用：大量不携带cookie的代理调用经过过滤器后，对比session与堆的增长
+ *
+ * @author wangyu
+ * cache 使用当前过滤器，校验结果进入共享的代理票据缓存；
+ * session 按旧流程的写法模拟，代理方不携带cookie，每次调用都创建session、登记映射并把receipt写入以票据为名的属性。
+ * 每个代理票据依次调用 reuse 次，只有第一次向进程内桩服务校验。
+ * <pre>
+ * java -cp target/benchmarks.jar dev.flyfish.boot.cas.loadtest.ProxyFootprint --calls=50000 --mode=cache
+ * </pre>
+ * 参数（均为可选）：calls 代理票据数；reuse 每个票据的调用次数；concurrency 并发数；mode cache 或 session
+ */
+public final class ProxyFootprint {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    private static final String SERVICE = "http://app.example.org/api/orders";
+
+    private ProxyFootprint() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = LoadTest.parse(args);
+        int calls = Integer.parseInt(options.getOrDefault("calls", "50000"));
+        int reuse = Integer.parseInt(options.getOrDefault("reuse", "3"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        String mode = options.getOrDefault("mode", "cache");
+
+        StubCASServer.Settings settings = new StubCASServer.Settings(Duration.ZERO, Duration.ZERO, 0, Duration.ZERO, 16);
+        try (StubCASServer cas = new StubCASServer(settings)) {
+            CASParameter parameter = new CASParameter();
+            parameter.setCasLogin(cas.getBaseUrl() + "/login");
+            parameter.setCasValidate(cas.getBaseUrl() + "/proxyValidate");
+            parameter.setCasServerName("app.example.org");
+            parameter.getClient().setMaxConnections(concurrency);
+            parameter.getProxy().setMaxReceipts(calls);
+
+            InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+            store.setMaxSessions(Integer.MAX_VALUE);
+            DefaultWebSessionManager sessionManager = new DefaultWebSessionManager();
+            sessionManager.setSessionStore(store);
+            SessionMappingStorage mappings = new ConcurrentSessionMappingStorage(() -> store, Duration.ofMinutes(30), Integer.MAX_VALUE);
+            ReactiveTicketValidator validator = new ReactiveTicketValidator(parameter);
+            CASFilter filter = new CASFilter(parameter, validator, mappings);
+
+            String[] tickets = new String[calls];
+            for (int i = 0; i < calls; i++) {
+                tickets[i] = cas.issueProxyTicket(SERVICE, "user-" + (i % 1000));
+            }
+
+            CASReceipt[] receipts = new CASReceipt[calls];
+            long before = usedHeap();
+            AtomicInteger passed = new AtomicInteger();
+            long start = System.nanoTime();
+            Flux.range(0, calls)
+                    .flatMap(i -> Flux.range(0, reuse)
+                            .concatMap(call -> "session".equals(mode)
+                                    ? legacy(validator, store, mappings, tickets[i], receipts, i, passed)
+                                    : proxyCall(filter, sessionManager, tickets[i], passed)), concurrency)
+                    .blockLast();
+            long elapsed = System.nanoTime() - start;
+            long after = usedHeap();
+
+            System.out.printf("%s mode: %d proxy tickets x %d calls in %.2fs, %d passed%n",
+                    mode, calls, reuse, elapsed / 1e9, passed.get());
+            System.out.printf("sessions stored: %d%n", store.getSessions().size());
+            System.out.printf("retained heap: %.1f MiB, %d bytes per proxy ticket%n",
+                    (after - before) / 1024.0 / 1024.0, (after - before) / calls);
+            // 测量完成前保持过滤器可达，避免缓存被提前回收
+            Reference.reachabilityFence(filter);
+            validator.destroy();
+        }
+    }
+
+    /**
+     * 经过过滤器的一次代理调用，不携带cookie
+     */
+    private static Mono<Void> proxyCall(CASFilter filter, DefaultWebSessionManager sessionManager, String ticket,
+                                        AtomicInteger passed) {
+        MockServerHttpRequest request = MockServerHttpRequest.get(SERVICE + "?ticket=" + ticket).build();
+        MockServerWebExchange exchange = MockServerWebExchange.builder(request).sessionManager(sessionManager).build();
+        return filter.filter(exchange, CHAIN)
+                .then(Mono.fromRunnable(() -> {
+                    if (exchange.getAttribute(CASFilter.CAS_FILTER_RECEIPT) != null) {
+                        passed.incrementAndGet();
+                    }
+                }))
+                // 提交响应，触发session保存
+                .then(exchange.getResponse().setComplete());
+    }
+
+    /**
+     * 旧流程的session写法：新建session、登记票据映射、以票据为名保存receipt
+     */
+    private static Mono<Void> legacy(ReactiveTicketValidator validator, InMemoryWebSessionStore store,
+                                     SessionMappingStorage mappings, String ticket, CASReceipt[] receipts, int index,
+                                     AtomicInteger passed) {
+        Mono<CASReceipt> validated = receipts[index] != null ? Mono.just(receipts[index])
+                : validator.validate(ticket, SERVICE, false).doOnNext(receipt -> receipts[index] = receipt);
+        return validated.zipWith(store.createWebSession())
+                .flatMap(tuple -> {
+                    CASReceipt receipt = tuple.getT1();
+                    WebSession session = tuple.getT2();
+                    session.getAttributes().put(ticket, receipt);
+                    session.getAttributes().put(CASFilter.CAS_FILTER_USER, receipt.getUserName());
+                    session.getAttributes().put(CASFilter.CAS_FILTER_RECEIPT, receipt);
+                    passed.incrementAndGet();
+                    return mappings.addSessionById(ticket, session).then(session.save());
+                });
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,223 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import dev.flyfish.boot.cas.config.session.MappedWebSessionStore;
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.validator.ValidationResponse;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import org.springframework.web.server.session.WebSessionStore;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * session存储的堆占用、gc停顿与重启恢复
+ *
+ * @author wangyu
+ * 先写入大量已登录的session（receipt带一组属性），再以多个线程混合执行取回、修改属性与销毁重建，
+ * 统计期间的gc停顿；mapped模式最后关闭存储并重新打开，记录恢复耗时与恢复的session数。
+ * <pre>
+ * java -Xmx1g -cp target/benchmarks.jar dev.flyfish.boot.cas.loadtest.SessionStoreFootprint --sessions=200000 --mode=mapped
+ * </pre>
+ * 参数（均为可选）：sessions session数；mode memory 或 mapped；seconds 混合负载时长；threads 线程数；dir 映射文件目录
+ */
+public final class SessionStoreFootprint {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(30);
+
+    private SessionStoreFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadTest.parse(args);
+        int sessions = Integer.parseInt(options.getOrDefault("sessions", "200000"));
+        String mode = options.getOrDefault("mode", "memory");
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "20"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        Path directory = Path.of(options.getOrDefault("dir", "target/session-footprint"));
+
+        CASParameter.SessionStore settings = new CASParameter.SessionStore();
+        settings.setType(CASParameter.SessionStore.Type.MAPPED);
+        settings.setDirectory(directory.toString());
+        settings.setSegmentSize(DataSize.ofMegabytes(64));
+        FileSystemUtils.deleteRecursively(directory);
+
+        long baseline = usedHeap();
+        WebSessionStore store = open(mode, settings);
+        AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(sessions);
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            ids.set(i, login(store, i));
+        }
+        System.out.printf("%s mode: %d sessions written in %.2fs%n", mode, sessions, (System.nanoTime() - start) / 1e9);
+        long populated = usedHeap();
+        System.out.printf("retained heap: %.1f MiB, %d bytes per session%n",
+                (populated - baseline) / 1024.0 / 1024.0, (populated - baseline) / sessions);
+
+        GcRecorder gc = new GcRecorder();
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    churn(store, ids, random.nextInt(sessions), random.nextInt(100));
+                    operations.increment();
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        gc.close();
+        System.out.printf("churn: %d operations in %ds with %d threads%n", operations.sum(), seconds, threads);
+        System.out.printf("gc pauses: %d, total %d ms, max %d ms%n", gc.count.sum(), gc.total.sum(), gc.max.get());
+        System.out.printf("heap after churn: %.1f MiB%n", (usedHeap() - baseline) / 1024.0 / 1024.0);
+
+        if (store instanceof MappedWebSessionStore mapped) {
+            System.out.printf("segments: %d%n", mapped.getSegmentCount());
+            mapped.close();
+            start = System.nanoTime();
+            MappedWebSessionStore reopened = new MappedWebSessionStore(settings, TIMEOUT,
+                    new WebSessionEventBus(List.of()));
+            long elapsed = System.nanoTime() - start;
+            int found = 0;
+            for (int i = 0; i < sessions; i++) {
+                if (reopened.retrieveSession(ids.get(i)).block() != null) {
+                    found++;
+                }
+            }
+            System.out.printf("recovered %d sessions in %d ms, %d of %d logins still valid%n",
+                    reopened.getSessionCount(), Duration.ofNanos(elapsed).toMillis(), found, sessions);
+            reopened.close();
+        }
+    }
+
+    private static WebSessionStore open(String mode, CASParameter.SessionStore settings) {
+        if ("mapped".equals(mode)) {
+            MappedWebSessionStore store = new MappedWebSessionStore(settings, TIMEOUT,
+                    new WebSessionEventBus(List.of()));
+            store.setMaxSessions(Integer.MAX_VALUE);
+            return store;
+        }
+        InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+        store.setMaxSessions(Integer.MAX_VALUE);
+        return store;
+    }
+
+    /**
+     * 与过滤器登录成功后写入的属性一致
+     */
+    private static String login(WebSessionStore store, int user) {
+        WebSession session = store.createWebSession().block();
+        CASReceipt receipt = receipt(user);
+        session.getAttributes().put(CASFilter.CAS_FILTER_USER, receipt.getUserName());
+        session.getAttributes().put(CASFilter.CAS_FILTER_RECEIPT, receipt);
+        session.save().block();
+        return session.getId();
+    }
+
+    /**
+     * 85% 只读访问，10% 修改属性，5% 注销后重新登录
+     */
+    private static void churn(WebSessionStore store, AtomicReferenceArray<String> ids, int index, int dice) {
+        WebSession session = store.retrieveSession(ids.get(index)).block();
+        if (session == null) {
+            return;
+        }
+        if (dice < 85) {
+            session.getAttribute(CASFilter.CAS_FILTER_RECEIPT);
+            session.save().block();
+        } else if (dice < 95) {
+            session.getAttributes().put("lastPage", "/orders/" + dice);
+            session.save().block();
+        } else {
+            session.invalidate().block();
+            ids.set(index, login(store, index));
+        }
+    }
+
+    private static CASReceipt receipt(int user) {
+        ValidationResponse response = new ValidationResponse(true, "user-" + user, null, List.of(),
+                Map.of("displayName", List.of("User " + user),
+                        "email", List.of("user-" + user + "@example.org"),
+                        "memberOf", List.of("staff", "orders-readers", "orders-writers")), null, null);
+        try {
+            return CASReceipt.fromResponse(response, "https://cas.example.org/cas/p3/serviceValidate", null, false);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 通过gc通知统计停顿，并发收集周期不计入
+     */
+    private static final class GcRecorder implements Closeable {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder total = new LongAdder();
+
+        private final AtomicLong max = new AtomicLong();
+
+        private final List<Runnable> removals = new ArrayList<>();
+
+        private GcRecorder() {
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (!(bean instanceof NotificationEmitter emitter) || bean.getName().contains("Cycles")) {
+                    continue;
+                }
+                NotificationListener listener = (notification, handback) -> {
+                    if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                        long duration = GarbageCollectionNotificationInfo
+                                .from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+                        count.increment();
+                        total.add(duration);
+                        max.accumulateAndGet(duration, Math::max);
+                    }
+                };
+                emitter.addNotificationListener(listener, null, null);
+                removals.add(() -> {
+                    try {
+                        emitter.removeNotificationListener(listener);
+                    } catch (Exception ignored) {
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            removals.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的cas桩服务
+ *
+ * @author wangyu
+ * 提供 /login 跳转、/serviceValidate 与 /proxyValidate 校验、/proxy 代理票据签发，并能向服务地址发送单点注销回调。
+ * 登录与校验可配置延迟，校验可按比例返回失败。票据只能校验一次，与真实cas一致。
+ * 校验携带 pgtUrl 时先回调该地址投递pgt，再在响应中返回pgtIou，代理票据同样只能校验一次。
+ * 登录地址接受额外的 user 参数，用于指定签发票据的用户。
+ */
+public final class StubCASServer implements AutoCloseable {
+
+    private final Settings settings;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    // pgtId -> 用户
+    private final Map<String, String> grantingTickets = new ConcurrentHashMap<>();
+
+    private final ConnectionProvider connections;
+
+    private final HttpClient client;
+
+    private final DisposableServer server;
+
+    /**
+     * 启动桩服务，监听本地随机端口
+     *
+     * @param settings 延迟与失败率
+     */
+    public StubCASServer(Settings settings) {
+        this.settings = settings;
+        this.connections = ConnectionProvider.builder("stub-cas-logout")
+                .maxConnections(settings.maxConnections())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = HttpClient.create(connections);
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/login", this::login)
+                        .get("/serviceValidate", this::validate)
+                        .get("/proxyValidate", this::validate)
+                        .get("/proxy", this::proxy))
+                .bindNow();
+    }
+
+    /**
+     * @return 协议://主机:端口
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    /**
+     * 直接签发代理授权票据，跳过回调投递
+     *
+     * @param user 用户
+     * @return pgtId
+     */
+    public String issueProxyGrantingTicket(String user) {
+        String pgtId = "PGT-" + sequence.incrementAndGet() + "-stub";
+        grantingTickets.put(pgtId, user);
+        return pgtId;
+    }
+
+    /**
+     * 直接签发代理票据，跳过 /proxy 请求
+     *
+     * @param targetService 目标服务
+     * @param user          用户
+     * @return 代理票据
+     */
+    public String issueProxyTicket(String targetService, String user) {
+        String ticket = "PT-" + sequence.incrementAndGet() + "-stub";
+        tickets.put(ticket, new Ticket(targetService, user, new AtomicBoolean()));
+        return ticket;
+    }
+
+    /**
+     * 向票据对应的服务发送单点注销回调
+     *
+     * @param ticket 票据
+     * @return 应用返回的状态码
+     */
+    public Mono<Integer> logout(String ticket) {
+        Ticket issued = tickets.remove(ticket);
+        if (issued == null) {
+            return Mono.error(new IllegalArgumentException("unknown ticket " + ticket));
+        }
+        String payload = "<samlp:LogoutRequest xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"LR-"
+                + sequence.incrementAndGet() + "\" Version=\"2.0\"><saml:NameID xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">"
+                + "@NOT_USED@</saml:NameID><samlp:SessionIndex>" + ticket + "</samlp:SessionIndex></samlp:LogoutRequest>";
+        byte[] form = ("logoutRequest=" + URLEncoder.encode(payload, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+        // 与cas一致声明长度，未配置注销地址时过滤器只接受声明了长度的注销回调
+        return delay(settings.logoutLatency())
+                .then(client.headers(headers -> headers
+                                .set(HttpHeaderNames.CONTENT_TYPE, "application/x-www-form-urlencoded")
+                                .set(HttpHeaderNames.CONTENT_LENGTH, form.length))
+                        .post()
+                        .uri(issued.service())
+                        .send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(form)))
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code()))));
+    }
+
+    private Mono<Void> login(HttpServerRequest request, HttpServerResponse response) {
+        Map<String, List<String>> parameters = new QueryStringDecoder(request.uri()).parameters();
+        String service = first(parameters, "service");
+        if (service == null) {
+            return response.status(HttpResponseStatus.BAD_REQUEST).send();
+        }
+        String user = first(parameters, "user");
+        String ticket = "ST-" + sequence.incrementAndGet() + "-stub";
+        tickets.put(ticket, new Ticket(service, user == null ? "anonymous" : user, new AtomicBoolean()));
+        String location = service + (service.indexOf('?') == -1 ? '?' : '&') + "ticket=" + ticket;
+        return delay(settings.loginLatency())
+                .then(response.status(HttpResponseStatus.FOUND)
+                        .header(HttpHeaderNames.LOCATION, location)
+                        .send());
+    }
+
+    private Mono<Void> validate(HttpServerRequest request, HttpServerResponse response) {
+        Map<String, List<String>> parameters = new QueryStringDecoder(request.uri()).parameters();
+        String ticket = first(parameters, "ticket");
+        String service = first(parameters, "service");
+        String pgtUrl = first(parameters, "pgtUrl");
+        Ticket issued = ticket == null ? null : tickets.get(ticket);
+
+        if (issued == null || !issued.validated().compareAndSet(false, true)) {
+            return send(response, failure("INVALID_TICKET", "Ticket " + ticket + " not recognized"));
+        }
+        if (!issued.service().equals(service)) {
+            return send(response, failure("INVALID_SERVICE", "Ticket " + ticket + " was issued for another service"));
+        }
+        if (ThreadLocalRandom.current().nextDouble() < settings.validateFailureRate()) {
+            return send(response, failure("INTERNAL_ERROR", "Injected failure"));
+        }
+        if (pgtUrl == null) {
+            return send(response, success(issued.user(), ""));
+        }
+        // 与cas一致，先把pgt投递到回调地址，投递失败则不签发
+        long id = sequence.incrementAndGet();
+        String pgtId = "PGT-" + id + "-stub";
+        String pgtIou = "PGTIOU-" + id + "-stub";
+        String callback = pgtUrl + (pgtUrl.indexOf('?') == -1 ? '?' : '&') + "pgtIou=" + pgtIou + "&pgtId=" + pgtId;
+        return client.get()
+                .uri(callback)
+                .responseSingle((callbackResponse, body) -> body.then(Mono.just(callbackResponse.status().code())))
+                .onErrorReturn(HttpResponseStatus.BAD_GATEWAY.code())
+                .flatMap(status -> {
+                    if (status != HttpResponseStatus.OK.code()) {
+                        return send(response, success(issued.user(), ""));
+                    }
+                    grantingTickets.put(pgtId, issued.user());
+                    return send(response, success(issued.user(), "<cas:proxyGrantingTicket>" + pgtIou + "</cas:proxyGrantingTicket>"));
+                });
+    }
+
+    private Mono<Void> proxy(HttpServerRequest request, HttpServerResponse response) {
+        Map<String, List<String>> parameters = new QueryStringDecoder(request.uri()).parameters();
+        String pgt = first(parameters, "pgt");
+        String targetService = first(parameters, "targetService");
+        String user = pgt == null ? null : grantingTickets.get(pgt);
+
+        String body;
+        if (targetService == null || user == null) {
+            body = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>"
+                    + "<cas:proxyFailure code=\"INVALID_TICKET\">Ticket " + pgt + " not recognized</cas:proxyFailure>"
+                    + "</cas:serviceResponse>";
+        } else {
+            String ticket = "PT-" + sequence.incrementAndGet() + "-stub";
+            tickets.put(ticket, new Ticket(targetService, user, new AtomicBoolean()));
+            body = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:proxySuccess>"
+                    + "<cas:proxyTicket>" + ticket + "</cas:proxyTicket>"
+                    + "</cas:proxySuccess></cas:serviceResponse>";
+        }
+        return send(response, body);
+    }
+
+    private Mono<Void> send(HttpServerResponse response, String body) {
+        return delay(settings.validateLatency())
+                .then(response.header(HttpHeaderNames.CONTENT_TYPE, "text/xml;charset=UTF-8")
+                        .sendString(Mono.just(body))
+                        .then());
+    }
+
+    private static String success(String user, String extra) {
+        return "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess>"
+                + "<cas:user>" + user + "</cas:user>" + extra
+                + "</cas:authenticationSuccess></cas:serviceResponse>";
+    }
+
+    private static String failure(String code, String message) {
+        return "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>"
+                + "<cas:authenticationFailure code=\"" + code + "\">" + message + "</cas:authenticationFailure>"
+                + "</cas:serviceResponse>";
+    }
+
+    private static Mono<Void> delay(Duration latency) {
+        return latency.isZero() ? Mono.empty() : Mono.delay(latency).then();
+    }
+
+    private static String first(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        connections.dispose();
+    }
+
+    /**
+     * 桩服务的行为
+     *
+     * @param loginLatency        登录跳转的延迟
+     * @param validateLatency     票据校验与代理票据签发的延迟
+     * @param validateFailureRate 校验失败的比例，0到1
+     * @param logoutLatency       发送注销回调前的延迟
+     * @param maxConnections      注销回调的最大连接数
+     */
+    public record Settings(Duration loginLatency, Duration validateLatency, double validateFailureRate,
+                           Duration logoutLatency, int maxConnections) {
+    }
+
+    private record Ticket(String service, String user, AtomicBoolean validated) {
+    }
+}
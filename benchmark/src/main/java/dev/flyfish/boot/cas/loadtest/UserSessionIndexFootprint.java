@@ -0,0 +1,90 @@
+package dev.flyfish.boot.cas.loadtest;
+
+import dev.flyfish.boot.cas.context.UserSessionIndex;
+import dev.flyfish.boot.cas.filter.CASFilter;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+
+import java.util.Map;
+
+/**
+ * 用户名索引的堆占用与按用户注销的耗时
+ *
+ * @author wangyu
+ * 先写入已登录的session，再登记到索引，两次gc后的堆差值即为索引本身的占用（session id与用户名由session共享，不计入）。
+ * 之后对比按索引注销一个用户与遍历全部session查找该用户的耗时。
+ * <pre>
+ * java -Xmx1g -cp target/benchmarks.jar dev.flyfish.boot.cas.loadtest.UserSessionIndexFootprint --sessions=200000 --per-user=2
+ * </pre>
+ * 参数（均为可选）：sessions session数；per-user 每个用户的session数；lookups 注销的用户数
+ */
+public final class UserSessionIndexFootprint {
+
+    private UserSessionIndexFootprint() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = LoadTest.parse(args);
+        int sessions = Integer.parseInt(options.getOrDefault("sessions", "200000"));
+        int perUser = Integer.parseInt(options.getOrDefault("per-user", "2"));
+        int lookups = Integer.parseInt(options.getOrDefault("lookups", "100"));
+
+        InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+        store.setMaxSessions(sessions + 1);
+        WebSession[] logins = new WebSession[sessions];
+        String[] users = new String[sessions / perUser + 1];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = "user-" + i;
+        }
+        for (int i = 0; i < sessions; i++) {
+            WebSession session = store.createWebSession().block();
+            session.getAttributes().put(CASFilter.CAS_FILTER_USER, users[i / perUser]);
+            session.save().block();
+            logins[i] = session;
+        }
+
+        long baseline = usedHeap();
+        UserSessionIndex index = new UserSessionIndex(() -> store, 0, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            index.register(users[i / perUser], logins[i]).block();
+        }
+        long elapsed = System.nanoTime() - start;
+        long populated = usedHeap();
+        System.out.printf("%d sessions of %d users indexed in %.2fs, %.0f ns per login%n",
+                index.sessionCount(), index.userCount(), elapsed / 1e9, (double) elapsed / sessions);
+        System.out.printf("index heap: %.1f MiB, %d bytes per session%n",
+                (populated - baseline) / 1024.0 / 1024.0, (populated - baseline) / sessions);
+
+        // 遍历全部session查找用户，索引之前的唯一做法
+        start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            String user = users[i];
+            for (WebSession session : store.getSessions().values()) {
+                if (user.equals(session.getAttribute(CASFilter.CAS_FILTER_USER))) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("scan: %.3f ms per user, %d sessions found%n", (System.nanoTime() - start) / 1e6 / lookups, found);
+
+        start = System.nanoTime();
+        long invalidated = 0;
+        for (int i = 0; i < lookups; i++) {
+            invalidated += index.invalidateAll(users[i]).block();
+        }
+        System.out.printf("index: %.3f ms per user, %d sessions invalidated%n",
+                (System.nanoTime() - start) / 1e6 / lookups, invalidated);
+        // 保证session在测量期间存活
+        System.out.println(logins.length + " logins kept");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,27 +1,51 @@
 package dev.flyfish.boot.cas.config;
 
 import dev.flyfish.boot.cas.config.resolver.CASUserArgumentResolver;
-import dev.flyfish.boot.cas.config.session.WebSessionDecorator;
+import dev.flyfish.boot.cas.config.session.ListenableWebSessionStore;
+import dev.flyfish.boot.cas.config.session.MappedWebSessionStore;
+import dev.flyfish.boot.cas.config.session.ShardedWebSessionStore;
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
 import dev.flyfish.boot.cas.config.session.WebSessionListener;
+import dev.flyfish.boot.cas.context.ConcurrentSessionMappingStorage;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.context.UserSessionIndex;
+import dev.flyfish.boot.cas.context.cluster.DistributedSessionMappingStorage;
+import dev.flyfish.boot.cas.context.cluster.LogoutTransport;
+import dev.flyfish.boot.cas.context.proxy.ConcurrentProxyGrantingTicketStorage;
+import dev.flyfish.boot.cas.context.proxy.ProxyGrantingTicketStorage;
+import dev.flyfish.boot.cas.context.token.RevokingSessionMappingStorage;
+import dev.flyfish.boot.cas.context.token.StatelessTokens;
 import dev.flyfish.boot.cas.filter.CASFilter;
 import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.metrics.CASMetrics;
+import dev.flyfish.boot.cas.metrics.CASObservations;
+import dev.flyfish.boot.cas.metrics.MeteredSessionMappingStorage;
+import dev.flyfish.boot.cas.validator.CircuitBreakerEvent;
+import dev.flyfish.boot.cas.validator.ProxyTicketService;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
 import org.springframework.web.server.WebSession;
 import org.springframework.web.server.session.DefaultWebSessionManager;
-import org.springframework.web.server.session.InMemoryWebSessionStore;
 import org.springframework.web.server.session.WebSessionManager;
 import org.springframework.web.server.session.WebSessionStore;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
-import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * cas核心配置
@@ -42,20 +66,186 @@ public class CASConfig implements WebFluxConfigurer {
         return new CASParameter();
     }
 
+    /**
+     * 非阻塞票据校验器，持有连接池，随容器销毁
+     *
+     * @param casParameter        参数
+     * @param casMetrics          指标，存在时记录校验耗时
+     * @param observationRegistry 观测注册中心，存在时记录校验链路
+     * @param eventPublisher      熔断器状态变化以 {@link CircuitBreakerEvent} 发布
+     * @return 结果
+     */
+    @Bean
+    public ReactiveTicketValidator casTicketValidator(CASParameter casParameter, ObjectProvider<CASMetrics> casMetrics,
+                                                      ObjectProvider<ObservationRegistry> observationRegistry,
+                                                      ApplicationEventPublisher eventPublisher) {
+        ReactiveTicketValidator validator = new ReactiveTicketValidator(casParameter,
+                observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP));
+        casMetrics.ifAvailable(validator::setMetrics);
+        validator.getCircuitBreaker().setListener(eventPublisher::publishEvent);
+        return validator;
+    }
+
+    /**
+     * 票据与session的映射存储，可自行声明bean替换
+     * session存储延迟获取，避免与session监听器形成循环依赖
+     * 存在 {@link LogoutTransport} 时启用集群模式，本地未命中的注销广播给其他节点，
+     * 待广播票据的上限为 cas.filter.cluster.max-pending
+     * 启用无状态令牌时，吊销在广播之内完成，其他节点同样会吊销
+     *
+     * @param casParameter     参数
+     * @param serverProperties 服务配置，提供session超时时间
+     * @param webSessionStore  session存储
+     * @param logoutTransport  集群注销的传输通道
+     * @param statelessTokens  无状态令牌，存在时注销同时吊销令牌
+     * @param casMetrics       指标，存在时记录映射命中率
+     * @return 结果
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public SessionMappingStorage sessionMappingStorage(CASParameter casParameter, ServerProperties serverProperties,
+                                                       ObjectProvider<WebSessionStore> webSessionStore,
+                                                       ObjectProvider<LogoutTransport> logoutTransport,
+                                                       ObjectProvider<StatelessTokens> statelessTokens,
+                                                       ObjectProvider<CASMetrics> casMetrics) {
+        CASParameter.SessionMapping mapping = casParameter.getSessionMapping();
+        Duration timeToLive = mapping.getTimeToLive() != null ? mapping.getTimeToLive()
+                : serverProperties.getReactive().getSession().getTimeout();
+        SessionMappingStorage storage = new ConcurrentSessionMappingStorage(webSessionStore::getIfAvailable, timeToLive, mapping.getMaxEntries());
+        CASMetrics metrics = casMetrics.getIfAvailable();
+        if (metrics != null) {
+            storage = new MeteredSessionMappingStorage(storage, metrics);
+        }
+        StatelessTokens tokens = statelessTokens.getIfAvailable();
+        if (tokens != null) {
+            storage = new RevokingSessionMappingStorage(storage, tokens);
+        }
+        LogoutTransport transport = logoutTransport.getIfAvailable();
+        if (transport != null) {
+            CASParameter.Cluster cluster = casParameter.getCluster();
+            return new DistributedSessionMappingStorage(storage, transport, cluster.getNodeId(),
+                    cluster.getBatchSize(), cluster.getBatchWindow(), cluster.getMaxPending());
+        }
+        return storage;
+    }
+
+    /**
+     * 无状态令牌，开启 cas.filter.token.enabled 后生效
+     *
+     * @param casParameter 参数
+     * @return 结果
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "cas.filter.token", name = "enabled", havingValue = "true")
+    public StatelessTokens statelessTokens(CASParameter casParameter) {
+        return new StatelessTokens(casParameter);
+    }
+
+    /**
+     * 代理授权票据存储，配置了代理回调地址时生效，可自行声明bean替换
+     *
+     * @param casParameter 参数
+     * @return 结果
+     */
     @Bean
-    public CASFilter casFilter(CASParameter casParameter) {
-        return new CASFilter(casParameter);
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "cas.filter", name = "cas-proxy-callback-url")
+    public ProxyGrantingTicketStorage proxyGrantingTicketStorage(CASParameter casParameter) {
+        CASParameter.Proxy proxy = casParameter.getProxy();
+        return new ConcurrentProxyGrantingTicketStorage(proxy.getPgtIouTimeToLive(), proxy.getMaxPgtEntries());
+    }
+
+    /**
+     * 代理票据申请，与票据校验共用连接池
+     *
+     * @param casParameter       参数
+     * @param casTicketValidator 票据校验器
+     * @return 结果
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "cas.filter", name = "cas-proxy-callback-url")
+    public ProxyTicketService proxyTicketService(CASParameter casParameter, ReactiveTicketValidator casTicketValidator) {
+        return new ProxyTicketService(casParameter, casTicketValidator);
+    }
+
+    /**
+     * 用户名到session的索引，可按用户注销全部session，关闭 cas.filter.user-sessions.enabled 后不再维护
+     * session存储延迟获取，索引本身是session监听器
+     *
+     * @param casParameter    参数
+     * @param webSessionStore session存储
+     * @return 结果
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "cas.filter.user-sessions", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public UserSessionIndex userSessionIndex(CASParameter casParameter, ObjectProvider<WebSessionStore> webSessionStore) {
+        // 只有映射文件存储会在重启后恢复session
+        return new UserSessionIndex(webSessionStore::getIfAvailable, casParameter.getUserSessions().getMaxSessionsPerUser(),
+                casParameter.getSessionStore().getType() == CASParameter.SessionStore.Type.MAPPED);
+    }
+
+    @Bean
+    public CASFilter casFilter(CASParameter casParameter, ReactiveTicketValidator casTicketValidator,
+                               SessionMappingStorage sessionMappingStorage, ObjectProvider<StatelessTokens> statelessTokens,
+                               ObjectProvider<CASMetrics> casMetrics, ObjectProvider<ObservationRegistry> observationRegistry,
+                               ObjectProvider<ProxyGrantingTicketStorage> proxyGrantingTicketStorage,
+                               ObjectProvider<UserSessionIndex> userSessionIndex) {
+        CASFilter filter = new CASFilter(casParameter, casTicketValidator, sessionMappingStorage, statelessTokens.getIfAvailable());
+        casMetrics.ifAvailable(filter::setMetrics);
+        observationRegistry.ifAvailable(registry -> filter.setObservations(new CASObservations(registry)));
+        proxyGrantingTicketStorage.ifAvailable(filter::setProxyGrantingTicketStorage);
+        userSessionIndex.ifAvailable(filter::setUserSessionIndex);
+        return filter;
+    }
+
+    /**
+     * session事件总线，监听器按声明顺序排列，以bean名称作为日志与指标中的名称
+     *
+     * @param casParameter 参数
+     * @param listeners    session监听器
+     * @param beanFactory  bean工厂，用于取得监听器的名称
+     * @param casMetrics   指标，存在时记录监听器耗时
+     * @return 结果
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public WebSessionEventBus webSessionEventBus(CASParameter casParameter, ObjectProvider<WebSessionListener> listeners,
+                                                 ListableBeanFactory beanFactory, ObjectProvider<CASMetrics> casMetrics) {
+        Map<WebSessionListener, String> names = new IdentityHashMap<>();
+        beanFactory.getBeansOfType(WebSessionListener.class).forEach((name, listener) -> names.put(listener, name));
+        Map<String, WebSessionListener> named = new LinkedHashMap<>();
+        listeners.orderedStream().forEach(listener ->
+                named.put(names.getOrDefault(listener, listener.getClass().getName()), listener));
+        WebSessionEventBus bus = new WebSessionEventBus(named, casParameter.getSessionStore().getEvents());
+        casMetrics.ifAvailable(bus::setMetrics);
+        return bus;
     }
 
     @Bean
     @ConditionalOnBean(WebSessionManager.class)
     public WebSessionStore webSessionStore(WebSessionManager webSessionManager, ServerProperties serverProperties,
-                                           ObjectProvider<WebSessionListener> listeners) {
+                                           CASParameter casParameter, WebSessionEventBus webSessionEventBus) {
         if (webSessionManager instanceof DefaultWebSessionManager defaultWebSessionManager) {
             Duration timeout = serverProperties.getReactive().getSession().getTimeout();
             int maxSessions = serverProperties.getReactive().getSession().getMaxSessions();
-            ListenableWebSessionStore sessionStore = new ListenableWebSessionStore(timeout, listeners);
-            sessionStore.setMaxSessions(maxSessions);
+            CASParameter.SessionStore settings = casParameter.getSessionStore();
+            WebSessionStore sessionStore;
+            if (settings.getType() == CASParameter.SessionStore.Type.MAPPED) {
+                // 容器关闭时由推断的close方法停止过期调度、刷盘并释放目录锁
+                MappedWebSessionStore mappedStore = new MappedWebSessionStore(settings, timeout, webSessionEventBus);
+                mappedStore.setMaxSessions(maxSessions);
+                sessionStore = mappedStore;
+            } else if (settings.getType() == CASParameter.SessionStore.Type.SHARDED) {
+                ShardedWebSessionStore shardedStore = new ShardedWebSessionStore(settings, timeout, webSessionEventBus);
+                shardedStore.setMaxSessions(maxSessions);
+                sessionStore = shardedStore;
+            } else {
+                ListenableWebSessionStore memoryStore = new ListenableWebSessionStore(timeout, webSessionEventBus,
+                        settings.getExpiryTick());
+                memoryStore.setMaxSessions(maxSessions);
+                sessionStore = memoryStore;
+            }
             defaultWebSessionManager.setSessionStore(sessionStore);
             return sessionStore;
         }
@@ -65,40 +255,17 @@ public class CASConfig implements WebFluxConfigurer {
     /**
      * 处理session销毁，保证正确退出
      *
-     * @param casFilter 过滤器
+     * @param sessionMappingStorage 映射存储
      * @return 结果
      */
     @Bean
-    public WebSessionListener singleSignOutSessionListener(CASFilter casFilter) {
+    public WebSessionListener singleSignOutSessionListener(SessionMappingStorage sessionMappingStorage) {
         return new WebSessionListener() {
             @Override
             public Mono<Void> onSessionInvalidated(WebSession session) {
-                return casFilter.getSessionMappingStorage().removeBySessionById(session.getId());
+                return sessionMappingStorage.removeBySessionById(session.getId());
             }
         };
     }
 
-    /**
-     * 可监听的web session存储
-     */
-    static final class ListenableWebSessionStore extends InMemoryWebSessionStore {
-        private final Duration timeout;
-        private final List<WebSessionListener> listeners;
-
-        private ListenableWebSessionStore(Duration timeout, ObjectProvider<WebSessionListener> listeners) {
-            this.timeout = timeout;
-            this.listeners = listeners.stream().toList();
-        }
-
-        public Mono<WebSession> createWebSession() {
-            return super.createWebSession()
-                    .map(session -> (WebSession) new WebSessionDecorator(session, listeners))
-                    .doOnSuccess(this::setMaxIdleTime);
-        }
-
-        private void setMaxIdleTime(WebSession session) {
-            session.setMaxIdleTime(this.timeout);
-        }
-    }
-
 }
@@ -22,6 +22,11 @@ public class CASUserArgumentResolver extends HandlerMethodArgumentResolverSuppor
 
     @Override
     public Mono<Object> resolveArgument(MethodParameter parameter, BindingContext bindingContext, ServerWebExchange exchange) {
+        // 无状态模式下用户名由过滤器放入请求属性
+        Object username = exchange.getAttribute(CASLoginFilter.CONST_CAS_USERNAME);
+        if (username != null) {
+            return Mono.just(username);
+        }
         return exchange.getSession().mapNotNull(session -> session.getAttribute(CASLoginFilter.CONST_CAS_USERNAME));
     }
 }
@@ -0,0 +1,21 @@
+package dev.flyfish.boot.cas.config.session;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 按批接收事件的session监听器
+ *
+ * @author wangyu
+ * 适合每次调用开销较大的处理，如写入远程存储。实现该接口后逐个事件的方法不再被调用，
+ * 同步投递时一批只含一次发布的事件，异步投递时为队列中攒下的事件，顺序与发布顺序一致。
+ */
+public interface BatchWebSessionListener extends WebSessionListener {
+
+    /**
+     * @param events 一批事件
+     * @return 结果
+     */
+    Mono<Void> onSessionEvents(List<WebSessionEvent> events);
+}
@@ -0,0 +1,144 @@
+package dev.flyfish.boot.cas.config.session;
+
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可监听的web session存储
+ *
+ * @author wangyu
+ * 创建与取回的session均经过装饰，首次保存、销毁与更换id时发布事件。未保存的session（如不带cookie的请求）不发布事件。
+ * session首次保存后交给过期调度，
+ * 超时后即使不再被访问也会被移除并通知监听器，父类惰性清理掉的session同样会补发过期通知。
+ */
+public class ListenableWebSessionStore extends InMemoryWebSessionStore implements Closeable {
+
+    private final Duration timeout;
+
+    private final WebSessionEventBus events;
+
+    // 已保存且未被销毁的原始session，按引用比较，更换id后依然有效
+    private final Set<WebSession> tracked = ConcurrentHashMap.newKeySet();
+
+    private final SessionExpiryScheduler<WebSession> expiry;
+
+    /**
+     * @param timeout    session的空闲超时
+     * @param events     session事件总线
+     * @param expiryTick 过期调度的刻度
+     */
+    public ListenableWebSessionStore(Duration timeout, WebSessionEventBus events, Duration expiryTick) {
+        this.timeout = timeout;
+        this.events = events;
+        this.expiry = new SessionExpiryScheduler<>(new TrackedSessions(), events, () -> getClock().millis(), expiryTick);
+    }
+
+    @Override
+    public Mono<WebSession> createWebSession() {
+        return super.createWebSession()
+                .map(session -> (WebSession) new TrackedSession(session))
+                .doOnSuccess(this::setMaxIdleTime);
+    }
+
+    /**
+     * 取回的session同样需要装饰，否则在后续请求中销毁时监听器不会收到通知
+     */
+    @Override
+    public Mono<WebSession> retrieveSession(String id) {
+        return super.retrieveSession(id)
+                .map(TrackedSession::new);
+    }
+
+    /**
+     * @return 过期调度
+     */
+    public SessionExpiryScheduler<WebSession> getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * 停止过期调度
+     */
+    @Override
+    public void close() {
+        expiry.close();
+    }
+
+    private void setMaxIdleTime(WebSession session) {
+        session.setMaxIdleTime(this.timeout);
+    }
+
+    /**
+     * @return 是否首次保存
+     */
+    private boolean track(WebSession session) {
+        if (session.isStarted() && !session.isExpired() && tracked.add(session)) {
+            expiry.schedule(session, deadline(session));
+            return true;
+        }
+        return false;
+    }
+
+    private static long deadline(WebSession session) {
+        Duration maxIdleTime = session.getMaxIdleTime();
+        if (maxIdleTime.isNegative()) {
+            return Long.MAX_VALUE;
+        }
+        return session.getLastAccessTime().toEpochMilli() + maxIdleTime.toMillis();
+    }
+
+    /**
+     * 首次保存后开始跟踪过期并发布创建事件，主动销毁时停止跟踪
+     */
+    private final class TrackedSession extends WebSessionDecorator {
+
+        private TrackedSession(WebSession session) {
+            super(session, events);
+        }
+
+        @Override
+        public Mono<Void> save() {
+            return super.save().then(Mono.defer(() -> track(decorated())
+                    ? events.publish(WebSessionEvent.created(this))
+                    : Mono.empty()));
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            tracked.remove(decorated());
+            return super.invalidate();
+        }
+    }
+
+    /**
+     * 时间轮到期时的复核与移除
+     */
+    private final class TrackedSessions implements SessionExpiryScheduler.Sessions<WebSession> {
+
+        @Override
+        public long deadline(WebSession session) {
+            return tracked.contains(session) ? ListenableWebSessionStore.deadline(session) : -1;
+        }
+
+        @Nullable
+        @Override
+        public WebSession expire(WebSession session, long now) {
+            if (ListenableWebSessionStore.deadline(session) > now || !tracked.remove(session)) {
+                return null;
+            }
+            // 父类可能已在取回或定期清理时移除，只移除仍是同一个session的条目
+            String id = session.getId();
+            if (getSessions().get(id) == session) {
+                removeSession(id).subscribe();
+            }
+            return session;
+        }
+    }
+}
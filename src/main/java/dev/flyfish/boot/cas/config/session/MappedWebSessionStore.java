@@ -0,0 +1,909 @@
+package dev.flyfish.boot.cas.config.session;
+
+import dev.flyfish.boot.cas.filter.CASParameter;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * 基于内存映射文件的session存储
+ *
+ * @author wangyu
+ * session属性序列化后追加写入按段切分的映射文件，堆内只保留 id -> 记录位置 的索引，属性只在请求处理期间反序列化到堆上。
+ * 启动时扫描各段重建索引，未过期的session继续有效，滚动重启后用户无需重新登录。
+ * 记录被新版本取代或session销毁时就地标记删除，已删除记录占比超过阈值的段在后台整理，存活记录搬到当前段后删除旧文件。
+ * 超时的session由过期调度移除并通知监听器。属性未变化的请求只就地更新最后访问时间，不追加记录。属性值需要实现 {@link Serializable}，
+ * 无法序列化的属性只在本次请求中可见；属性值被就地修改而没有重新放入时不会被写入。
+ */
+@Slf4j
+public class MappedWebSessionStore implements WebSessionStore, Closeable {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private static final byte LIVE = 1, DELETED = 2;
+
+    // 记录布局，长度最后写入，扫描时长度为0即为段内数据的末尾；校验和覆盖序号之后的全部内容
+    private static final int LENGTH = 0, CRC = 4, STATE = 8, LAST_ACCESS = 16, SEQUENCE = 24, CREATION = 32,
+            MAX_IDLE = 40, ATTRIBUTES_LENGTH = 48, ID_LENGTH = 52, HEADER = 54;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final double compactionThreshold;
+
+    private final Duration timeout;
+
+    private final WebSessionEventBus events;
+
+    private final Map<String, Slot> index = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final DefaultSerializer serializer = new DefaultSerializer();
+
+    private final DefaultDeserializer deserializer = new DefaultDeserializer(ClassUtils.getDefaultClassLoader());
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    private final SessionExpiryScheduler<String> expiry;
+
+    // 当前追加的段，只在分配锁内替换
+    private Segment active;
+
+    @Getter
+    @Setter
+    private int maxSessions = 10000;
+
+    @Getter
+    @Setter
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * 打开或新建存储，已有的映射文件中未过期的session会被恢复
+     *
+     * @param settings 存储配置
+     * @param timeout  session的空闲超时
+     * @param events   session事件总线
+     */
+    public MappedWebSessionStore(CASParameter.SessionStore settings, Duration timeout, WebSessionEventBus events) {
+        this.directory = Path.of(settings.getDirectory()).toAbsolutePath();
+        this.segmentSize = Math.toIntExact(settings.getSegmentSize().toBytes());
+        this.compactionThreshold = settings.getCompactionThreshold();
+        this.timeout = timeout;
+        this.events = events;
+        this.expiry = new SessionExpiryScheduler<>(new IndexedSessions(), events, () -> clock.millis(), settings.getExpiryTick());
+        try {
+            Files.createDirectories(directory);
+            this.lockChannel = FileChannel.open(directory.resolve("store.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Session store at [" + directory + "] is in use by another process");
+            }
+            long start = System.nanoTime();
+            recover();
+            index.forEach((id, slot) -> expiry.schedule(id, slot.deadline()));
+            log.info("Recovered {} sessions from [{}] in {} ms", index.size(), directory,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (IOException e) {
+            expiry.close();
+            throw new IllegalStateException("Cannot open session store at [" + directory + "]", e);
+        }
+    }
+
+    @Override
+    public Mono<WebSession> createWebSession() {
+        long now = clock.millis();
+        // 与InMemoryWebSessionStore一致，随机id的生成可能阻塞
+        return Mono.fromSupplier(() -> (WebSession) new WebSessionDecorator(new MappedWebSession(now), events))
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.parallel());
+    }
+
+    @Override
+    public Mono<WebSession> retrieveSession(String id) {
+        return Mono.fromSupplier(() -> load(id))
+                .map(session -> new WebSessionDecorator(session, events));
+    }
+
+    @Override
+    public Mono<Void> removeSession(String id) {
+        return Mono.fromRunnable(() -> remove(id));
+    }
+
+    @Override
+    public Mono<WebSession> updateLastAccessTime(WebSession webSession) {
+        return Mono.fromSupplier(() -> {
+            WebSession session = webSession instanceof WebSessionDecorator decorator ? decorator.decorated() : webSession;
+            if (session instanceof MappedWebSession mapped) {
+                mapped.lastAccessTime = clock.millis();
+            }
+            return webSession;
+        });
+    }
+
+    /**
+     * @return 当前保存的session数，含尚未清理的过期session
+     */
+    public int getSessionCount() {
+        return index.size();
+    }
+
+    /**
+     * @return 映射文件的段数
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return 过期调度
+     */
+    public SessionExpiryScheduler<String> getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * 立即移除所有已过期的session并通知监听器，过期调度之外只在达到最大session数时使用
+     */
+    public void removeExpiredSessions() {
+        long now = clock.millis();
+        List<WebSession> expired = new ArrayList<>();
+        index.forEach((id, slot) -> {
+            if (slot.isExpired(now)) {
+                WebSession session = expire(id, slot);
+                if (session != null) {
+                    expired.add(session);
+                }
+            }
+        });
+        expiry.notifyExpired(expired);
+    }
+
+    /**
+     * 把映射文件刷到磁盘并释放文件锁
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        expiry.close();
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    @Nullable
+    private MappedWebSession load(String id) {
+        Slot slot = index.get(id);
+        if (slot == null) {
+            return null;
+        }
+        long now = clock.millis();
+        if (slot.isExpired(now)) {
+            // 留给过期调度移除并通知
+            return null;
+        }
+        Map<String, Object> attributes;
+        try {
+            attributes = readAttributes(slot);
+        } catch (Exception e) {
+            // 通常是升级后类结构不兼容，丢弃该session，用户重新登录即可
+            log.warn("Cannot deserialize session [{}], discarding it: {}", id, e.toString());
+            if (index.remove(id, slot)) {
+                markDeleted(slot);
+            }
+            return null;
+        }
+        return new MappedWebSession(id, slot, attributes, now);
+    }
+
+    /**
+     * 移除过期的session，读出属性供监听器使用
+     *
+     * @return 被移除的session，已被其他操作移除时为空
+     */
+    @Nullable
+    private WebSession expire(String id, Slot slot) {
+        if (!index.remove(id, slot)) {
+            return null;
+        }
+        Map<String, Object> attributes;
+        try {
+            attributes = readAttributes(slot);
+        } catch (Exception e) {
+            attributes = Map.of();
+        }
+        markDeleted(slot);
+        MappedWebSession session = new MappedWebSession(id, slot, attributes, slot.lastAccessTime);
+        session.state.set(State.EXPIRED);
+        return session;
+    }
+
+    private void remove(String id) {
+        Slot slot = index.remove(id);
+        if (slot != null) {
+            markDeleted(slot);
+        }
+    }
+
+    /**
+     * 保存session，属性未变化时只就地更新最后访问时间
+     */
+    private void persist(MappedWebSession session) {
+        String id = session.id;
+        Slot current = index.get(id);
+        if (session.persisted && current == null) {
+            // 其他请求已销毁或已过期，不再复活
+            log.debug("Session [{}] was removed concurrently, skip saving", id);
+            return;
+        }
+        if (current != null && !session.attributes.dirty && current.maxIdleTime == session.maxIdleTime) {
+            touch(id, current, session.lastAccessTime);
+            return;
+        }
+        if (current == null && index.size() >= maxSessions) {
+            removeExpiredSessions();
+            if (index.size() >= maxSessions) {
+                throw new IllegalStateException("Max sessions limit reached: " + index.size());
+            }
+        }
+        session.attributes.dirty = false;
+        Slot written = write(id, session.creationTime, session.lastAccessTime, session.maxIdleTime, serialize(session));
+        if (!session.persisted) {
+            Slot previous = index.put(id, written);
+            if (previous != null) {
+                markDeleted(previous);
+            } else {
+                expiry.schedule(id, written.deadline());
+            }
+            session.persisted = true;
+        } else if (index.computeIfPresent(id, replaceWith(written)) == null) {
+            markDeleted(written);
+        }
+    }
+
+    /**
+     * 就地更新最后访问时间，整理可能同时把记录搬到新的位置，此时在新位置上再次更新
+     */
+    private void touch(String id, Slot slot, long lastAccessTime) {
+        while (true) {
+            slot.touch(lastAccessTime);
+            Slot current = index.get(id);
+            if (current == null || current == slot) {
+                return;
+            }
+            slot = current;
+        }
+    }
+
+    private static BiFunction<String, Slot, Slot> replaceWith(Slot written) {
+        return (id, previous) -> {
+            previous.markDeleted();
+            return written;
+        };
+    }
+
+    /**
+     * 序列化可序列化的属性，单个属性失败时跳过该属性
+     */
+    private byte[] serialize(MappedWebSession session) {
+        Map<String, Object> attributes = new LinkedHashMap<>(session.attributes);
+        try {
+            return serializer.serializeToByteArray(attributes);
+        } catch (IOException | RuntimeException e) {
+            attributes.entrySet().removeIf(entry -> !isSerializable(entry.getValue()));
+            log.warn("Some attributes of session [{}] are not serializable and will not be stored, kept {}",
+                    session.id, attributes.keySet());
+            try {
+                return serializer.serializeToByteArray(attributes);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Cannot serialize session [" + session.id + "]", ex);
+            }
+        }
+    }
+
+    private boolean isSerializable(Object value) {
+        if (!(value instanceof Serializable)) {
+            return false;
+        }
+        try {
+            serializer.serializeToByteArray(value);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readAttributes(Slot slot) throws IOException {
+        MappedByteBuffer buffer = slot.segment.buffer;
+        int idLength = buffer.getShort(slot.offset + ID_LENGTH);
+        byte[] bytes = new byte[buffer.getInt(slot.offset + ATTRIBUTES_LENGTH)];
+        buffer.get(slot.offset + HEADER + idLength, bytes);
+        return (Map<String, Object>) deserializer.deserializeFromByteArray(bytes);
+    }
+
+    private Slot write(String id, long creationTime, long lastAccessTime, long maxIdleTime, byte[] attributes) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int dataLength = HEADER + idBytes.length + attributes.length;
+        // 按8字节对齐，使下一条记录的时间字段对齐
+        int length = (dataLength + 7) & ~7;
+        if (length > segmentSize) {
+            throw new IllegalStateException("Session [" + id + "] takes " + length + " bytes, exceeding the segment size " + segmentSize);
+        }
+        Segment segment;
+        int offset;
+        synchronized (this) {
+            segment = allocate(length);
+            offset = segment.position;
+            segment.position += length;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.put(offset + STATE, LIVE);
+        buffer.putLong(offset + LAST_ACCESS, lastAccessTime);
+        buffer.putLong(offset + SEQUENCE, sequence.incrementAndGet());
+        buffer.putLong(offset + CREATION, creationTime);
+        buffer.putLong(offset + MAX_IDLE, maxIdleTime);
+        buffer.putInt(offset + ATTRIBUTES_LENGTH, attributes.length);
+        buffer.putShort(offset + ID_LENGTH, (short) idBytes.length);
+        buffer.put(offset + HEADER, idBytes);
+        buffer.put(offset + HEADER + idBytes.length, attributes);
+        buffer.putInt(offset + CRC, checksum(buffer, offset, dataLength));
+        buffer.putInt(offset + LENGTH, length);
+        return new Slot(segment, offset, length, creationTime, lastAccessTime, maxIdleTime);
+    }
+
+    /**
+     * 在当前段分配空间，不足时切换到新段，调用方持有分配锁
+     */
+    private Segment allocate(int length) {
+        if (active.position + length <= active.capacity) {
+            return active;
+        }
+        Segment sealed = active;
+        // 段尾未使用的空间同样计入垃圾
+        sealed.garbage.addAndGet(sealed.capacity - sealed.position);
+        try {
+            active = openSegment(sealed.id + 1, segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create session segment in [" + directory + "]", e);
+        }
+        segments.put(active.id, active);
+        maybeCompact(sealed);
+        return active;
+    }
+
+    private void markDeleted(Slot slot) {
+        slot.markDeleted();
+        maybeCompact(slot.segment);
+    }
+
+    private void maybeCompact(Segment segment) {
+        if (segment != active && segment.garbage.get() >= compactionThreshold * segment.capacity
+                && segment.compacting.compareAndSet(false, true)) {
+            Schedulers.boundedElastic().schedule(() -> compact(segment));
+        }
+    }
+
+    /**
+     * 把段内存活的记录搬到当前段，再删除该段
+     */
+    private void compact(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int moved = 0;
+        for (int offset = 0; offset < segment.position; offset += buffer.getInt(offset + LENGTH)) {
+            if (buffer.get(offset + STATE) != LIVE) {
+                continue;
+            }
+            String id = readId(buffer, offset);
+            Slot current = index.get(id);
+            if (current == null || current.segment != segment || current.offset != offset) {
+                continue;
+            }
+            Slot copy = copy(current);
+            if (index.replace(id, current, copy)) {
+                current.markDeleted();
+                // 复制期间的访问只更新了旧记录，补到新记录上
+                long lastAccessTime = current.lastAccessTime;
+                if (lastAccessTime > copy.lastAccessTime) {
+                    copy.touch(lastAccessTime);
+                }
+                moved++;
+            } else {
+                copy.markDeleted();
+            }
+        }
+        segments.remove(segment.id);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // 记录已全部标记删除，留下的文件在下次启动时按空段处理
+            log.warn("Cannot delete compacted session segment [{}]: {}", segment.path, e.toString());
+        }
+        log.debug("Compacted session segment [{}], moved {} sessions", segment.path, moved);
+    }
+
+    private Slot copy(Slot slot) {
+        MappedByteBuffer source = slot.segment.buffer;
+        byte[] record = new byte[slot.length - CRC];
+        source.get(slot.offset + CRC, record);
+        Segment segment;
+        int offset;
+        synchronized (this) {
+            segment = allocate(slot.length);
+            offset = segment.position;
+            segment.position += slot.length;
+        }
+        MappedByteBuffer target = segment.buffer;
+        target.put(offset + CRC, record);
+        target.put(offset + STATE, LIVE);
+        target.putLong(offset + LAST_ACCESS, slot.lastAccessTime);
+        target.putInt(offset + LENGTH, slot.length);
+        return new Slot(segment, offset, slot.length, slot.creationTime, slot.lastAccessTime, slot.maxIdleTime);
+    }
+
+    /**
+     * 扫描已有的段，同一session存在多条存活记录时（如搬移过程中退出）保留序号最大的一条
+     */
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (var listing = Files.list(directory)) {
+            listing.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches()).forEach(files::add);
+        }
+        long now = clock.millis();
+        Map<String, Slot> recovered = new HashMap<>();
+        Map<String, Long> sequences = new HashMap<>();
+        int lastId = -1;
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+            int id = matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+            Segment segment = openSegment(id, Math.toIntExact(Files.size(file)));
+            segments.put(id, segment);
+            lastId = Math.max(lastId, id);
+            scan(segment, now, recovered, sequences);
+        }
+        index.putAll(recovered);
+        Segment last = segments.get(lastId);
+        if (last != null && last.position < last.capacity) {
+            active = last;
+        } else {
+            active = openSegment(lastId + 1, segmentSize);
+            segments.put(active.id, active);
+        }
+        for (Segment segment : segments.values()) {
+            maybeCompact(segment);
+        }
+    }
+
+    private void scan(Segment segment, long now, Map<String, Slot> recovered, Map<String, Long> sequences) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER <= segment.capacity) {
+            int length = buffer.getInt(offset + LENGTH);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER || (length & 7) != 0 || offset + length > segment.capacity) {
+                log.warn("Corrupted record at {} in [{}], ignoring the rest of the segment", offset, segment.path);
+                break;
+            }
+            long dataLength = HEADER + (long) buffer.getShort(offset + ID_LENGTH) + buffer.getInt(offset + ATTRIBUTES_LENGTH);
+            Slot slot = new Slot(segment, offset, length, buffer.getLong(offset + CREATION),
+                    buffer.getLong(offset + LAST_ACCESS), buffer.getLong(offset + MAX_IDLE));
+            if (buffer.get(offset + STATE) != LIVE) {
+                segment.garbage.addAndGet(length);
+            } else if (dataLength < HEADER || dataLength > length
+                    || checksum(buffer, offset, (int) dataLength) != buffer.getInt(offset + CRC)) {
+                log.warn("Checksum mismatch at {} in [{}], discarding the record", offset, segment.path);
+                slot.markDeleted();
+            } else if (slot.isExpired(now)) {
+                slot.markDeleted();
+            } else {
+                String id = readId(buffer, offset);
+                long sequence = buffer.getLong(offset + SEQUENCE);
+                this.sequence.accumulateAndGet(sequence, Math::max);
+                Long previous = sequences.get(id);
+                if (previous == null || previous < sequence) {
+                    sequences.put(id, sequence);
+                    Slot replaced = recovered.put(id, slot);
+                    if (replaced != null) {
+                        replaced.markDeleted();
+                    }
+                } else {
+                    slot.markDeleted();
+                }
+            }
+            offset += length;
+        }
+        segment.position = offset;
+    }
+
+    private Segment openSegment(int id, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("segment-%08d.dat", id));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // 映射在通道关闭后依然有效
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    private static String readId(MappedByteBuffer buffer, int offset) {
+        byte[] id = new byte[buffer.getShort(offset + ID_LENGTH)];
+        buffer.get(offset + HEADER, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(MappedByteBuffer buffer, int offset, int dataLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + SEQUENCE, dataLength - SEQUENCE));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 一个映射文件
+     */
+    private static final class Segment {
+
+        private final int id;
+
+        private final Path path;
+
+        private final MappedByteBuffer buffer;
+
+        private final int capacity;
+
+        // 已分配的位置，只在分配锁内修改
+        private int position;
+
+        private final AtomicLong garbage = new AtomicLong();
+
+        private final AtomicBoolean compacting = new AtomicBoolean();
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+    }
+
+    /**
+     * 索引项，指向session的最新记录
+     */
+    private static final class Slot {
+
+        private final Segment segment;
+
+        private final int offset;
+
+        private final int length;
+
+        private final long creationTime;
+
+        // 毫秒，负数表示永不过期
+        private final long maxIdleTime;
+
+        private volatile long lastAccessTime;
+
+        private Slot(Segment segment, int offset, int length, long creationTime, long lastAccessTime, long maxIdleTime) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.creationTime = creationTime;
+            this.lastAccessTime = lastAccessTime;
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        private boolean isExpired(long now) {
+            return maxIdleTime >= 0 && now - lastAccessTime > maxIdleTime;
+        }
+
+        private long deadline() {
+            return maxIdleTime < 0 ? Long.MAX_VALUE : lastAccessTime + maxIdleTime;
+        }
+
+        private void touch(long lastAccessTime) {
+            this.lastAccessTime = lastAccessTime;
+            segment.buffer.putLong(offset + LAST_ACCESS, lastAccessTime);
+        }
+
+        private void markDeleted() {
+            segment.buffer.put(offset + STATE, DELETED);
+            segment.garbage.addAndGet(length);
+        }
+    }
+
+    /**
+     * 记录是否被修改过的属性表，只跟踪直接调用的修改方法
+     */
+    private static final class TrackedAttributes extends ConcurrentHashMap<String, Object> {
+
+        private volatile boolean dirty;
+
+        private TrackedAttributes(Map<String, Object> attributes) {
+            super(attributes);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            dirty = true;
+            return super.put(key, value);
+        }
+
+        @Override
+        public Object putIfAbsent(String key, Object value) {
+            dirty = true;
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ?> m) {
+            dirty = true;
+            super.putAll(m);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            dirty = true;
+            return super.remove(key);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            dirty = true;
+            return super.remove(key, value);
+        }
+
+        @Override
+        public Object replace(String key, Object value) {
+            dirty = true;
+            return super.replace(key, value);
+        }
+
+        @Override
+        public boolean replace(String key, Object oldValue, Object newValue) {
+            dirty = true;
+            return super.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public void clear() {
+            dirty = true;
+            super.clear();
+        }
+
+        @Override
+        public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+            dirty = true;
+            return super.computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+            dirty = true;
+            return super.computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+            dirty = true;
+            return super.compute(key, remappingFunction);
+        }
+
+        @Override
+        public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            dirty = true;
+            return super.merge(key, value, remappingFunction);
+        }
+    }
+
+    private enum State {NEW, STARTED, EXPIRED}
+
+    /**
+     * 时间轮到期时的复核与移除
+     */
+    private final class IndexedSessions implements SessionExpiryScheduler.Sessions<String> {
+
+        @Override
+        public long deadline(String id) {
+            Slot slot = index.get(id);
+            return slot == null ? -1 : slot.deadline();
+        }
+
+        @Nullable
+        @Override
+        public WebSession expire(String id, long now) {
+            Slot slot = index.get(id);
+            return slot != null && slot.isExpired(now) ? MappedWebSessionStore.this.expire(id, slot) : null;
+        }
+    }
+
+    /**
+     * 单次请求内使用的session，属性从映射文件反序列化而来
+     */
+    private final class MappedWebSession implements WebSession {
+
+        private volatile String id;
+
+        private final TrackedAttributes attributes;
+
+        private final long creationTime;
+
+        private volatile long lastAccessTime;
+
+        private volatile long maxIdleTime;
+
+        private final AtomicReference<State> state;
+
+        // 是否已写入过存储
+        private volatile boolean persisted;
+
+        // 是否已发布创建事件，更换id后重新写入时不再发布
+        private volatile boolean announced;
+
+        private MappedWebSession(long now) {
+            this.id = UUID.randomUUID().toString();
+            this.attributes = new TrackedAttributes(Map.of());
+            this.creationTime = now;
+            this.lastAccessTime = now;
+            this.maxIdleTime = timeout.toMillis();
+            this.state = new AtomicReference<>(State.NEW);
+        }
+
+        private MappedWebSession(String id, Slot slot, Map<String, Object> attributes, long now) {
+            this.id = id;
+            this.attributes = new TrackedAttributes(attributes);
+            this.creationTime = slot.creationTime;
+            this.lastAccessTime = now;
+            this.maxIdleTime = slot.maxIdleTime;
+            this.state = new AtomicReference<>(State.STARTED);
+            this.persisted = true;
+            this.announced = true;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public void start() {
+            state.compareAndSet(State.NEW, State.STARTED);
+        }
+
+        @Override
+        public boolean isStarted() {
+            return state.get() == State.STARTED || !attributes.isEmpty();
+        }
+
+        @Override
+        public Mono<Void> changeSessionId() {
+            return Mono.<Void>fromRunnable(() -> {
+                        String previous = id;
+                        id = UUID.randomUUID().toString();
+                        attributes.dirty = true;
+                        if (persisted) {
+                            persisted = false;
+                            remove(previous);
+                        }
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .publishOn(Schedulers.parallel());
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            state.set(State.EXPIRED);
+            attributes.clear();
+            return Mono.fromRunnable(() -> remove(id));
+        }
+
+        @Override
+        public Mono<Void> save() {
+            if (state.get() == State.EXPIRED) {
+                return Mono.error(new IllegalStateException("Session was invalidated"));
+            }
+            if (!attributes.isEmpty()) {
+                state.compareAndSet(State.NEW, State.STARTED);
+            }
+            if (!isStarted()) {
+                return Mono.empty();
+            }
+            return Mono.fromRunnable(() -> persist(this))
+                    .then(Mono.defer(this::announce));
+        }
+
+        /**
+         * 首次写入存储后发布创建事件
+         */
+        private Mono<Void> announce() {
+            if (announced || !persisted) {
+                return Mono.empty();
+            }
+            announced = true;
+            return events.publish(WebSessionEvent.created(this));
+        }
+
+        @Override
+        public boolean isExpired() {
+            if (state.get() == State.EXPIRED) {
+                return true;
+            }
+            if (isStarted() && maxIdleTime >= 0 && clock.millis() - lastAccessTime > maxIdleTime) {
+                state.set(State.EXPIRED);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return Instant.ofEpochMilli(creationTime);
+        }
+
+        @Override
+        public Instant getLastAccessTime() {
+            return Instant.ofEpochMilli(lastAccessTime);
+        }
+
+        @Override
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime.isNegative() ? -1 : maxIdleTime.toMillis();
+        }
+
+        @Override
+        public Duration getMaxIdleTime() {
+            return Duration.ofMillis(maxIdleTime);
+        }
+    }
+}
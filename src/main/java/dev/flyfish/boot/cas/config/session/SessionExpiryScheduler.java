@@ -0,0 +1,149 @@
+package dev.flyfish.boot.cas.config.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.WebSession;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 主动的session过期调度
+ *
+ * @author wangyu
+ * session保存后按过期时间放入分层时间轮，每个刻度只处理到期的槽。访问只更新session自身的最后访问时间，
+ * 不移动时间轮中的条目，到期时向存储复核，尚未过期的按新的过期时间重新放入。
+ * 真正过期的session由存储移除后作为一批事件发布，监听器收到 {@link WebSessionListener#onSessionExpired(WebSession)}。
+ */
+@Slf4j
+public final class SessionExpiryScheduler<K> implements Closeable {
+
+    private final Sessions<K> sessions;
+
+    private final WebSessionEventBus events;
+
+    private final LongSupplier clock;
+
+    private final TimingWheel<K> wheel;
+
+    private final Disposable task;
+
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param sessions 存储
+     * @param events   session事件总线
+     * @param clock    当前时间，毫秒
+     * @param tick     刻度，过期事件最多延迟一个刻度
+     */
+    public SessionExpiryScheduler(Sessions<K> sessions, WebSessionEventBus events, LongSupplier clock, Duration tick) {
+        this.sessions = sessions;
+        this.events = events;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(tick.toMillis(), clock.getAsLong());
+        this.task = Schedulers.parallel().schedulePeriodically(this::advance, tick.toMillis(), tick.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 开始跟踪session
+     *
+     * @param key      存储中的键
+     * @param deadline 过期时间，毫秒，{@link Long#MAX_VALUE} 表示永不过期
+     */
+    public void schedule(K key, long deadline) {
+        wheel.schedule(key, deadline);
+    }
+
+    /**
+     * 推进时间轮，移除并通知到期的session，由定时任务按刻度调用
+     */
+    public void advance() {
+        long now = clock.getAsLong();
+        List<WebSession> batch = new ArrayList<>();
+        for (K key : wheel.advance(now)) {
+            try {
+                long deadline = sessions.deadline(key);
+                if (deadline < 0) {
+                    continue;
+                }
+                if (deadline > now) {
+                    wheel.schedule(key, deadline);
+                    continue;
+                }
+                WebSession session = sessions.expire(key, now);
+                if (session != null) {
+                    batch.add(session);
+                } else if ((deadline = sessions.deadline(key)) >= 0) {
+                    // 复核期间被再次访问
+                    wheel.schedule(key, deadline);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to expire session [{}]", key, e);
+            }
+        }
+        notifyExpired(batch);
+    }
+
+    /**
+     * 通知一批已从存储移除的过期session
+     *
+     * @param batch 过期的session
+     */
+    public void notifyExpired(List<WebSession> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        expired.add(batch.size());
+        log.debug("Expired {} sessions", batch.size());
+        events.publish(batch.stream().map(WebSessionEvent::expired).toList()).subscribe();
+    }
+
+    /**
+     * @return 时间轮中跟踪的条目数，含已移除但尚未转到的条目
+     */
+    public int getScheduled() {
+        return wheel.size();
+    }
+
+    /**
+     * @return 累计过期的session数
+     */
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    @Override
+    public void close() {
+        task.dispose();
+    }
+
+    /**
+     * 由存储实现，时间轮到期时复核与移除
+     */
+    public interface Sessions<K> {
+
+        /**
+         * @param key 键
+         * @return 当前的过期时间，毫秒；已不在跟踪范围内时为负数，永不过期时为 {@link Long#MAX_VALUE}
+         */
+        long deadline(K key);
+
+        /**
+         * 移除已过期的session
+         *
+         * @param key 键
+         * @param now 当前时间，毫秒
+         * @return 被移除的session，用于通知；复核时未过期或已被其他操作移除时为空
+         */
+        @Nullable
+        WebSession expire(K key, long now);
+    }
+}
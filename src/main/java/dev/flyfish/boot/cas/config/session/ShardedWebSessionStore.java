@@ -0,0 +1,537 @@
+package dev.flyfish.boot.cas.config.session;
+
+import dev.flyfish.boot.cas.filter.CASFilter;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分片的内存session存储
+ *
+ * @author wangyu
+ * session按id散列到多个分片，每个分片有自己的表、锁与过期调度，只有首次保存与移除需要加锁，取回不加锁。
+ * 达到最大session数时不再拒绝新的session，而是淘汰同一分片中最久未访问的session：从分片中随机取样若干个，
+ * 优先淘汰其中未登录（没有receipt）的session，其次是最后访问时间最早的一个，近似于分段LRU。正在保存的session不会被同时淘汰。超过软水位时由后台把分片削减到软水位以下，到达硬水位时在保存时同步淘汰。
+ * 被淘汰的session通知 {@link WebSessionListener#onSessionEvicted(WebSession)}。
+ * 水位按分片计算，总数可能略微超过最大session数。
+ */
+@Slf4j
+public class ShardedWebSessionStore implements WebSessionStore, Closeable {
+
+    // 单次持锁最多淘汰的session数，避免后台削减长时间占用分片
+    private static final int EVICTION_BATCH = 64;
+
+    private static final int NEW = 0, STORED = 1, REMOVED = 2;
+
+    // 取样全是已登录用户时的最多取样轮数
+    private static final int MAX_SAMPLE_ROUNDS = 4;
+
+    private final Duration timeout;
+
+    private final WebSessionEventBus events;
+
+    private final Shard[] shards;
+
+    private final int mask;
+
+    private final int samples;
+
+    private final double softWatermark;
+
+    private final LongAdder softEvictions = new LongAdder();
+
+    private final LongAdder hardEvictions = new LongAdder();
+
+    // 每个分片的软硬水位，随最大session数变化
+    private volatile int softLimit, hardLimit;
+
+    @Getter
+    private int maxSessions;
+
+    @Getter
+    @Setter
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * @param settings 存储配置
+     * @param timeout  session的空闲超时
+     * @param events   session事件总线
+     */
+    public ShardedWebSessionStore(CASParameter.SessionStore settings, Duration timeout, WebSessionEventBus events) {
+        this.timeout = timeout;
+        this.events = events;
+        int count = settings.getShards() > 0 ? settings.getShards() : Runtime.getRuntime().availableProcessors() * 2;
+        // 取不小于配置的2的幂，按位与取分片
+        count = Integer.highestOneBit(Math.max(1, count * 2 - 1));
+        this.shards = new Shard[count];
+        this.mask = count - 1;
+        this.samples = Math.max(1, settings.getEvictionSamples());
+        this.softWatermark = settings.getSoftWatermark();
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(settings.getExpiryTick());
+        }
+        setMaxSessions(10000);
+    }
+
+    /**
+     * 最大session数，即所有分片硬水位之和
+     *
+     * @param maxSessions 最大session数
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+        int hard = Math.max(1, (maxSessions + shards.length - 1) / shards.length);
+        this.hardLimit = hard;
+        this.softLimit = Math.max(1, Math.min(hard, (int) (hard * softWatermark)));
+    }
+
+    @Override
+    public Mono<WebSession> createWebSession() {
+        long now = clock.millis();
+        // 与InMemoryWebSessionStore一致，随机id的生成可能阻塞
+        return Mono.fromSupplier(() -> (WebSession) new ShardedWebSession(now))
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.parallel());
+    }
+
+    @Override
+    public Mono<WebSession> retrieveSession(String id) {
+        return Mono.fromSupplier(() -> {
+            ShardedWebSession session = shard(id).sessions.get(id);
+            if (session == null) {
+                return null;
+            }
+            long now = clock.millis();
+            if (session.isExpired(now)) {
+                // 留给过期调度移除并通知
+                return null;
+            }
+            session.lastAccessTime = now;
+            return session;
+        });
+    }
+
+    @Override
+    public Mono<Void> removeSession(String id) {
+        return Mono.fromRunnable(() -> {
+            ShardedWebSession session = shard(id).sessions.get(id);
+            if (session != null) {
+                remove(session);
+            }
+        });
+    }
+
+    @Override
+    public Mono<WebSession> updateLastAccessTime(WebSession webSession) {
+        return Mono.fromSupplier(() -> {
+            if (webSession instanceof ShardedWebSession session) {
+                session.lastAccessTime = clock.millis();
+            }
+            return webSession;
+        });
+    }
+
+    /**
+     * @return 当前保存的session数，含尚未清理的过期session
+     */
+    public int getSessionCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.sessions.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return 分片数
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return 超过软水位后由后台淘汰的session数
+     */
+    public long getSoftEvictions() {
+        return softEvictions.sum();
+    }
+
+    /**
+     * @return 到达硬水位时同步淘汰的session数
+     */
+    public long getHardEvictions() {
+        return hardEvictions.sum();
+    }
+
+    /**
+     * 停止各分片的过期调度
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.expiry.close();
+        }
+    }
+
+    private Shard shard(String id) {
+        int hash = id.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    /**
+     * 首次保存，放入分片后按水位淘汰
+     *
+     * @return 是否放入了分片
+     */
+    private boolean store(ShardedWebSession session) {
+        Shard shard = shard(session.id);
+        int size;
+        synchronized (shard) {
+            if (session.residence != NEW) {
+                return false;
+            }
+            shard.add(session);
+            size = shard.size;
+        }
+        shard.expiry.schedule(session.id, session.deadline());
+        if (size > hardLimit) {
+            evict(shard, hardLimit, hardEvictions, session);
+        } else if (size > softLimit && shard.trimming.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(() -> {
+                try {
+                    evict(shard, softLimit, softEvictions, null);
+                } finally {
+                    shard.trimming.set(false);
+                }
+            });
+        }
+        return true;
+    }
+
+    private boolean remove(ShardedWebSession session) {
+        Shard shard = shard(session.id);
+        synchronized (shard) {
+            return shard.remove(session);
+        }
+    }
+
+    /**
+     * 淘汰分片中最久未访问的session，直到不超过目标数量
+     *
+     * @param shard   分片
+     * @param target  目标数量
+     * @param counter 淘汰计数
+     * @param keep    正在保存、不能淘汰的session，可为空
+     */
+    private void evict(Shard shard, int target, LongAdder counter, @Nullable ShardedWebSession keep) {
+        while (true) {
+            List<WebSession> evicted = new ArrayList<>();
+            synchronized (shard) {
+                while (shard.size > target && evicted.size() < EVICTION_BATCH) {
+                    ShardedWebSession victim = shard.sample(samples, keep);
+                    if (victim == null) {
+                        break;
+                    }
+                    shard.remove(victim);
+                    // 处理中的请求不再写回，并清除客户端的cookie
+                    victim.state.set(State.EXPIRED);
+                    evicted.add(victim);
+                }
+            }
+            if (evicted.isEmpty()) {
+                return;
+            }
+            counter.add(evicted.size());
+            log.debug("Evicted {} sessions from a shard over {} sessions", evicted.size(), target);
+            events.publish(evicted.stream().map(WebSessionEvent::evicted).toList()).subscribe();
+            if (evicted.size() < EVICTION_BATCH) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 分片，表用于不加锁的取回，数组用于随机取样，二者只在分片锁内修改
+     */
+    private final class Shard {
+
+        private final Map<String, ShardedWebSession> sessions = new ConcurrentHashMap<>();
+
+        private final AtomicBoolean trimming = new AtomicBoolean();
+
+        private final SessionExpiryScheduler<String> expiry;
+
+        private ShardedWebSession[] slots = new ShardedWebSession[16];
+
+        private int size;
+
+        private Shard(Duration expiryTick) {
+            this.expiry = new SessionExpiryScheduler<>(new ShardSessions(this), events, () -> clock.millis(), expiryTick);
+        }
+
+        private void add(ShardedWebSession session) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            sessions.put(session.id, session);
+            slots[size] = session;
+            session.slot = size++;
+            session.residence = STORED;
+        }
+
+        private boolean remove(ShardedWebSession session) {
+            if (session.residence != STORED) {
+                return false;
+            }
+            sessions.remove(session.id, session);
+            // 用最后一个填补空位
+            ShardedWebSession last = slots[--size];
+            slots[session.slot] = last;
+            last.slot = session.slot;
+            slots[size] = null;
+            session.slot = -1;
+            session.residence = REMOVED;
+            return true;
+        }
+
+        /**
+         * 随机取样，优先返回未登录的session，其次是最后访问时间最早的一个
+         * 取样中全是已登录用户时继续取样，最多取样 {@link #MAX_SAMPLE_ROUNDS} 轮，减少误伤已登录的用户
+         *
+         * @param keep 不参与取样的session，可为空
+         * @return 淘汰的session，分片中只有keep时为空
+         */
+        @Nullable
+        private ShardedWebSession sample(int samples, @Nullable ShardedWebSession keep) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            ShardedWebSession victim = null;
+            int limit = samples * MAX_SAMPLE_ROUNDS;
+            for (int i = 0; i < limit && (i < samples || victim == null || victim.isAuthenticated()); i++) {
+                ShardedWebSession candidate = slots[random.nextInt(size)];
+                if (candidate != keep && (victim == null || candidate.isPreferredVictim(victim))) {
+                    victim = candidate;
+                }
+            }
+            if (victim == null) {
+                // 取样全部落在keep上
+                for (int i = 0; i < size; i++) {
+                    if (slots[i] != keep) {
+                        return slots[i];
+                    }
+                }
+            }
+            return victim;
+        }
+    }
+
+    /**
+     * 时间轮到期时的复核与移除
+     */
+    private final class ShardSessions implements SessionExpiryScheduler.Sessions<String> {
+
+        private final Shard shard;
+
+        private ShardSessions(Shard shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public long deadline(String id) {
+            ShardedWebSession session = shard.sessions.get(id);
+            return session == null ? -1 : session.deadline();
+        }
+
+        @Nullable
+        @Override
+        public WebSession expire(String id, long now) {
+            ShardedWebSession session = shard.sessions.get(id);
+            if (session == null || session.deadline() > now) {
+                return null;
+            }
+            synchronized (shard) {
+                if (!shard.remove(session)) {
+                    return null;
+                }
+            }
+            session.state.set(State.EXPIRED);
+            return session;
+        }
+    }
+
+    private enum State {NEW, STARTED, EXPIRED}
+
+    /**
+     * 保存在分片中的session，首次保存、销毁与更换id时直接发布事件，无需再装饰
+     */
+    private final class ShardedWebSession implements WebSession {
+
+        private volatile String id;
+
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private final long creationTime;
+
+        private volatile long lastAccessTime;
+
+        private volatile long maxIdleTime;
+
+        private final AtomicReference<State> state = new AtomicReference<>(State.NEW);
+
+        // 是否在分片中，只在分片锁内修改
+        private volatile int residence = NEW;
+
+        // 在分片数组中的位置，只在分片锁内读写
+        private int slot = -1;
+
+        private ShardedWebSession(long now) {
+            this.id = UUID.randomUUID().toString();
+            this.creationTime = now;
+            this.lastAccessTime = now;
+            this.maxIdleTime = timeout.isNegative() ? -1 : timeout.toMillis();
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public void start() {
+            state.compareAndSet(State.NEW, State.STARTED);
+        }
+
+        @Override
+        public boolean isStarted() {
+            return state.get() == State.STARTED || !attributes.isEmpty();
+        }
+
+        @Override
+        public Mono<Void> changeSessionId() {
+            return Mono.<String>fromSupplier(() -> {
+                        String previous = id;
+                        String next = UUID.randomUUID().toString();
+                        if (remove(this)) {
+                            id = next;
+                            residence = NEW;
+                            store(this);
+                        } else {
+                            id = next;
+                        }
+                        return previous;
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .publishOn(Schedulers.parallel())
+                    .flatMap(previous -> events.publish(WebSessionEvent.idChanged(this, previous)));
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            state.set(State.EXPIRED);
+            attributes.clear();
+            remove(this);
+            return events.publish(WebSessionEvent.invalidated(this));
+        }
+
+        @Override
+        public Mono<Void> save() {
+            if (state.get() == State.EXPIRED) {
+                return Mono.error(new IllegalStateException("Session was invalidated"));
+            }
+            if (!attributes.isEmpty()) {
+                state.compareAndSet(State.NEW, State.STARTED);
+            }
+            if (!isStarted() || residence == STORED) {
+                return Mono.empty();
+            }
+            if (residence == REMOVED) {
+                // 已被淘汰或过期，不再复活
+                log.debug("Session [{}] was removed concurrently, skip saving", id);
+                return Mono.empty();
+            }
+            return Mono.fromCallable(() -> store(this))
+                    .flatMap(stored -> stored ? events.publish(WebSessionEvent.created(this)) : Mono.empty());
+        }
+
+        @Override
+        public boolean isExpired() {
+            if (state.get() == State.EXPIRED) {
+                return true;
+            }
+            if (isStarted() && isExpired(clock.millis())) {
+                state.set(State.EXPIRED);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isExpired(long now) {
+            return maxIdleTime >= 0 && now - lastAccessTime > maxIdleTime;
+        }
+
+        private long deadline() {
+            return maxIdleTime < 0 ? Long.MAX_VALUE : lastAccessTime + maxIdleTime;
+        }
+
+        /**
+         * 爬虫等不带cookie的客户端每次都新建session并被跳转登录，这些session没有receipt，先于已登录用户淘汰。
+         * 不能以是否被再次访问判断，刚登录的用户在下一次点击前同样没有被再次访问
+         */
+        private boolean isPreferredVictim(ShardedWebSession other) {
+            boolean authenticated = isAuthenticated();
+            if (authenticated != other.isAuthenticated()) {
+                return !authenticated;
+            }
+            return lastAccessTime < other.lastAccessTime;
+        }
+
+        private boolean isAuthenticated() {
+            return attributes.containsKey(CASFilter.CAS_FILTER_RECEIPT);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return Instant.ofEpochMilli(creationTime);
+        }
+
+        @Override
+        public Instant getLastAccessTime() {
+            return Instant.ofEpochMilli(lastAccessTime);
+        }
+
+        @Override
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime.isNegative() ? -1 : maxIdleTime.toMillis();
+        }
+
+        @Override
+        public Duration getMaxIdleTime() {
+            return Duration.ofMillis(maxIdleTime);
+        }
+    }
+}
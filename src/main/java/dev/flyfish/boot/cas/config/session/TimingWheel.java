@@ -0,0 +1,139 @@
+package dev.flyfish.boot.cas.config.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮
+ *
+ * @author wangyu
+ * 每层64个槽，第0层每槽一个刻度，上一层每槽覆盖下一层一整圈。推进时只访问到期的槽，
+ * 上层的槽转到时把其中的条目下放到更低的层，因此每个条目最多被搬动层数次，推进的代价与到期条目数成正比。
+ * 超出最高层范围的条目放在最高层的最远槽，转到时重新计算位置。条目只按截止时间放入，是否真正到期由调用方复核。
+ */
+final class TimingWheel<K> {
+
+    private static final int BITS = 6, SLOTS = 1 << BITS, MASK = SLOTS - 1, LEVELS = 4;
+
+    private final long tick;
+
+    @SuppressWarnings("unchecked")
+    private final List<Entry<K>>[][] buckets = new List[LEVELS][SLOTS];
+
+    // 已超过截止时间、下次推进时直接交出的条目
+    private List<Entry<K>> overdue = new ArrayList<>();
+
+    // 已推进到的刻度，单位毫秒并按刻度对齐
+    private long current;
+
+    private int size;
+
+    /**
+     * @param tick  刻度，毫秒
+     * @param start 起始时间，毫秒
+     */
+    TimingWheel(long tick, long start) {
+        this.tick = tick;
+        this.current = start - Math.floorMod(start, tick);
+    }
+
+    /**
+     * 放入条目
+     *
+     * @param key      键
+     * @param deadline 截止时间，毫秒
+     */
+    synchronized void schedule(K key, long deadline) {
+        insert(new Entry<>(key, deadline));
+        size++;
+    }
+
+    /**
+     * 推进到指定时间，交出截止时间已过的条目
+     *
+     * @param now 当前时间，毫秒
+     * @return 到期的键
+     */
+    synchronized List<K> advance(long now) {
+        List<K> due = new ArrayList<>();
+        drainOverdue(due);
+        while (current + tick <= now) {
+            current += tick;
+            long ticks = current / tick;
+            // 先把转到的上层槽下放，再取出第0层当前槽
+            for (int level = 1; level < LEVELS && (ticks & ((1L << (BITS * level)) - 1)) == 0; level++) {
+                List<Entry<K>> bucket = take(level, (int) ((ticks >>> (BITS * level)) & MASK));
+                if (bucket != null) {
+                    for (Entry<K> entry : bucket) {
+                        insert(entry);
+                    }
+                }
+            }
+            List<Entry<K>> bucket = take(0, (int) (ticks & MASK));
+            if (bucket != null) {
+                drain(bucket, due);
+            }
+            // 下放时已过期的条目
+            drainOverdue(due);
+        }
+        size -= due.size();
+        return due;
+    }
+
+    /**
+     * @return 轮中的条目数
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private void insert(Entry<K> entry) {
+        // 向上取整到刻度，条目不会早于截止时间交出
+        long ticks = entry.deadline / tick + (entry.deadline % tick == 0 ? 0 : 1);
+        long delta = ticks - current / tick;
+        if (delta <= 0) {
+            overdue.add(entry);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (BITS * (level + 1))) {
+                bucket(level, (int) ((ticks >>> (BITS * level)) & MASK)).add(entry);
+                return;
+            }
+        }
+        // 超出范围，放在最高层当前位置的前一个槽，即一整圈之后
+        int top = LEVELS - 1;
+        long farthest = (current / tick >>> (BITS * top)) - 1;
+        bucket(top, (int) (farthest & MASK)).add(entry);
+    }
+
+    private List<Entry<K>> bucket(int level, int slot) {
+        List<Entry<K>> bucket = buckets[level][slot];
+        if (bucket == null) {
+            bucket = buckets[level][slot] = new ArrayList<>();
+        }
+        return bucket;
+    }
+
+    private List<Entry<K>> take(int level, int slot) {
+        List<Entry<K>> bucket = buckets[level][slot];
+        buckets[level][slot] = null;
+        return bucket;
+    }
+
+    private void drainOverdue(List<K> due) {
+        if (!overdue.isEmpty()) {
+            drain(overdue, due);
+            overdue = new ArrayList<>();
+        }
+    }
+
+    private static <K> void drain(List<Entry<K>> entries, List<K> due) {
+        for (Entry<K> entry : entries) {
+            due.add(entry.key);
+        }
+    }
+
+    private record Entry<K>(K key, long deadline) {
+    }
+}
@@ -7,7 +7,6 @@ import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 import java.util.Map;
 
 @RequiredArgsConstructor
@@ -15,7 +14,14 @@ public class WebSessionDecorator implements WebSession {
 
     private final WebSession decorated;
 
-    private final List<WebSessionListener> listeners;
+    private final WebSessionEventBus events;
+
+    /**
+     * 被装饰的session，供存储取回自身的实现
+     */
+    WebSession decorated() {
+        return decorated;
+    }
 
     /**
      * Return a unique session identifier.
@@ -98,7 +104,11 @@ public class WebSessionDecorator implements WebSession {
      */
     @Override
     public Mono<Void> changeSessionId() {
-        return decorated.changeSessionId();
+        return Mono.defer(() -> {
+            String previousId = decorated.getId();
+            return decorated.changeSessionId()
+                    .then(Mono.defer(() -> events.publish(WebSessionEvent.idChanged(decorated, previousId))));
+        });
     }
 
     /**
@@ -108,13 +118,9 @@ public class WebSessionDecorator implements WebSession {
      */
     @Override
     public Mono<Void> invalidate() {
-        // 后续处理
-        Mono<Void> consumer = Mono.defer(() -> listeners.stream()
-                .map(listener -> listener.onSessionInvalidated(this.decorated))
-                .reduce(Mono::then)
-                .orElse(Mono.empty()));
-
-        return decorated.invalidate().then(consumer);
+        // 后续处理，异步投递时发布即返回
+        return decorated.invalidate()
+                .then(Mono.defer(() -> events.publish(WebSessionEvent.invalidated(decorated))));
     }
 
     /**
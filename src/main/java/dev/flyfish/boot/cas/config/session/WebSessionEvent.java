@@ -0,0 +1,48 @@
+package dev.flyfish.boot.cas.config.session;
+
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.WebSession;
+
+/**
+ * session事件
+ *
+ * @param type       事件类型
+ * @param session    事件对应的session
+ * @param previousId 更换id之前的id，仅ID_CHANGED存在
+ * @author wangyu
+ */
+public record WebSessionEvent(Type type, WebSession session, @Nullable String previousId) {
+
+    public static WebSessionEvent created(WebSession session) {
+        return new WebSessionEvent(Type.CREATED, session, null);
+    }
+
+    public static WebSessionEvent invalidated(WebSession session) {
+        return new WebSessionEvent(Type.INVALIDATED, session, null);
+    }
+
+    public static WebSessionEvent expired(WebSession session) {
+        return new WebSessionEvent(Type.EXPIRED, session, null);
+    }
+
+    public static WebSessionEvent evicted(WebSession session) {
+        return new WebSessionEvent(Type.EVICTED, session, null);
+    }
+
+    public static WebSessionEvent idChanged(WebSession session, String previousId) {
+        return new WebSessionEvent(Type.ID_CHANGED, session, previousId);
+    }
+
+    public enum Type {
+        // 新建
+        CREATED,
+        // 主动销毁
+        INVALIDATED,
+        // 超时后被存储移除
+        EXPIRED,
+        // 超出容量被存储淘汰
+        EVICTED,
+        // 更换了id
+        ID_CHANGED
+    }
+}
@@ -0,0 +1,236 @@
+package dev.flyfish.boot.cas.config.session;
+
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.metrics.CASMetrics;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * session事件总线
+ *
+ * @author wangyu
+ * 存储与session装饰器只发布事件，由总线调用监听器。监听器可以按顺序逐个调用，也可以同时调用；
+ * 每个监听器收到的事件始终与发布顺序一致，单个监听器失败只记录日志，不影响其他监听器与发布方。
+ * 开启异步后事件放入有界队列即返回，后台线程成批取出投递。队列已满时由发布方直接投递，事件不会丢失，
+ * 但这部分事件可能先于队列中的事件到达。
+ */
+@Slf4j
+public class WebSessionEventBus implements Closeable {
+
+    private final List<NamedListener> listeners;
+
+    private final boolean parallel;
+
+    private final int batchSize;
+
+    // 同步投递时为空
+    private final BlockingQueue<WebSessionEvent> queue;
+
+    private final Scheduler worker;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final LongAdder overflow = new LongAdder();
+
+    @Setter
+    private CASMetrics metrics = CASMetrics.NOOP;
+
+    /**
+     * 同步、按顺序投递
+     *
+     * @param listeners 监听器
+     */
+    public WebSessionEventBus(List<WebSessionListener> listeners) {
+        this(named(listeners), new CASParameter.SessionStore.Events());
+    }
+
+    /**
+     * @param listeners 监听器，键为名称，用于日志与指标，按迭代顺序调用
+     * @param settings  投递配置
+     */
+    public WebSessionEventBus(Map<String, WebSessionListener> listeners, CASParameter.SessionStore.Events settings) {
+        this.listeners = listeners.entrySet().stream()
+                .map(entry -> new NamedListener(entry.getKey(), entry.getValue()))
+                .toList();
+        this.parallel = settings.getDispatch() == CASParameter.SessionStore.Events.Dispatch.PARALLEL;
+        this.batchSize = Math.max(1, settings.getBatchSize());
+        if (settings.isAsync() && !this.listeners.isEmpty()) {
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getQueueCapacity()));
+            this.worker = Schedulers.newSingle("cas-session-events", true);
+        } else {
+            this.queue = null;
+            this.worker = null;
+        }
+    }
+
+    /**
+     * 发布事件
+     *
+     * @param event 事件
+     * @return 同步投递时在所有监听器完成后结束，异步投递时入队即结束
+     */
+    public Mono<Void> publish(WebSessionEvent event) {
+        return publish(List.of(event));
+    }
+
+    /**
+     * 发布一批事件，批量监听器一次收到整批
+     *
+     * @param events 事件
+     * @return 同步投递时在所有监听器完成后结束，异步投递时入队即结束
+     */
+    public Mono<Void> publish(List<WebSessionEvent> events) {
+        if (listeners.isEmpty() || events.isEmpty()) {
+            return Mono.empty();
+        }
+        if (queue == null) {
+            return dispatch(events);
+        }
+        return Mono.defer(() -> {
+            int accepted = 0;
+            while (accepted < events.size() && queue.offer(events.get(accepted))) {
+                accepted++;
+            }
+            if (accepted > 0) {
+                signal();
+            }
+            if (accepted == events.size()) {
+                return Mono.empty();
+            }
+            // 队列已满，剩余的事件由发布方直接投递，形成背压
+            overflow.add(events.size() - accepted);
+            return dispatch(events.subList(accepted, events.size()));
+        });
+    }
+
+    /**
+     * @return 是否存在监听器
+     */
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * @return 异步队列中等待投递的事件数
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return 因队列已满而由发布方直接投递的事件数
+     */
+    public long getOverflow() {
+        return overflow.sum();
+    }
+
+    /**
+     * 投递队列中剩余的事件后停止后台线程
+     */
+    @Override
+    public void close() {
+        if (worker == null) {
+            return;
+        }
+        List<WebSessionEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        worker.dispose();
+        if (!remaining.isEmpty()) {
+            dispatch(remaining).subscribe();
+        }
+    }
+
+    private void signal() {
+        if (draining.compareAndSet(false, true)) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 取出一批投递，完成后再取下一批，同一时刻只有一批在投递中
+     */
+    private void drain() {
+        List<WebSessionEvent> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+        queue.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+            draining.set(false);
+            // 发布方可能在判断之后入队，但未能取得投递权
+            if (!queue.isEmpty()) {
+                signal();
+            }
+            return;
+        }
+        dispatch(batch)
+                .doFinally(signal -> scheduleDrain())
+                .subscribe();
+    }
+
+    private void scheduleDrain() {
+        try {
+            worker.schedule(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 已关闭，剩余的事件由close投递
+            log.debug("Session event bus closed, stop draining");
+        }
+    }
+
+    private Mono<Void> dispatch(List<WebSessionEvent> events) {
+        if (parallel) {
+            return Flux.fromIterable(listeners)
+                    .flatMap(listener -> deliver(listener, events))
+                    .then();
+        }
+        return Flux.fromIterable(listeners)
+                .concatMap(listener -> deliver(listener, events))
+                .then();
+    }
+
+    private Mono<Void> deliver(NamedListener named, List<WebSessionEvent> events) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            Mono<Void> delivery = named.listener instanceof BatchWebSessionListener batch
+                    ? batch.onSessionEvents(events)
+                    : Flux.fromIterable(events).concatMap(event -> deliver(named.listener, event)).then();
+            return delivery.doFinally(signal -> metrics.onSessionListener(named.name, System.nanoTime() - start));
+        }).onErrorResume(e -> {
+            log.warn("Session listener [{}] failed on {} events", named.name, events.size(), e);
+            return Mono.empty();
+        });
+    }
+
+    private static Mono<Void> deliver(WebSessionListener listener, WebSessionEvent event) {
+        return switch (event.type()) {
+            case CREATED -> listener.onSessionCreated(event.session());
+            case INVALIDATED -> listener.onSessionInvalidated(event.session());
+            case EXPIRED -> listener.onSessionExpired(event.session());
+            case EVICTED -> listener.onSessionEvicted(event.session());
+            case ID_CHANGED -> listener.onSessionIdChanged(event.session(), event.previousId());
+        };
+    }
+
+    private static Map<String, WebSessionListener> named(List<WebSessionListener> listeners) {
+        Map<String, WebSessionListener> named = new LinkedHashMap<>();
+        for (WebSessionListener listener : listeners) {
+            named.put(listener.getClass().getName() + "#" + named.size(), listener);
+        }
+        return named;
+    }
+
+    private record NamedListener(String name, WebSessionListener listener) {
+    }
+}
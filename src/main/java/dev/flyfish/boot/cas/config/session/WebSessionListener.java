@@ -7,7 +7,7 @@ import reactor.core.publisher.Mono;
  * web session监听器
  *
  * @author wangyu
- * 基于装饰器增强实现，可灵活处理
+ * 基于装饰器增强实现，可灵活处理，事件经由 {@link WebSessionEventBus} 投递
  */
 public interface WebSessionListener {
 
@@ -18,4 +18,35 @@ public interface WebSessionListener {
     default Mono<Void> onSessionInvalidated(WebSession session) {
         return Mono.empty();
     }
+
+    /**
+     * session超时后被存储主动移除，默认按销毁处理
+     *
+     * @param session 已过期的session
+     * @return 结果
+     */
+    default Mono<Void> onSessionExpired(WebSession session) {
+        return onSessionInvalidated(session);
+    }
+
+    /**
+     * session数超出容量，最久未访问的session被存储淘汰，默认按销毁处理
+     *
+     * @param session 被淘汰的session
+     * @return 结果
+     */
+    default Mono<Void> onSessionEvicted(WebSession session) {
+        return onSessionInvalidated(session);
+    }
+
+    /**
+     * session更换了id
+     *
+     * @param session    更换后的session
+     * @param previousId 更换之前的id
+     * @return 结果
+     */
+    default Mono<Void> onSessionIdChanged(WebSession session, String previousId) {
+        return Mono.empty();
+    }
 }
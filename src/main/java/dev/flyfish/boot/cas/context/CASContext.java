@@ -1,65 +1,77 @@
 package dev.flyfish.boot.cas.context;
 
-import lombok.AccessLevel;
+import dev.flyfish.boot.cas.filter.RoutePolicy;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
-import org.springframework.util.ConcurrentReferenceHashMap;
-import org.springframework.util.StringUtils;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilterChain;
 import org.springframework.web.server.WebSession;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
-import java.util.Map;
 
 /**
  * cas 上下文
+ * 每个请求只分配上下文本身，cas参数在创建时一次性从查询串中提取
  */
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 public class CASContext {
 
     @Getter
-    private String ticket;
+    private final String ticket;
 
-    @Setter
     @Getter
-    private WebSession session;
+    private final WebSession session;
 
+    @Getter
     private final ServerWebExchange exchange;
 
     private final WebFilterChain chain;
 
-    private final Map<String, Mono<String>> parameters = new ConcurrentReferenceHashMap<>();
+    @Getter
+    private final CASQuery query;
 
     @Setter
     @Getter
     private String username;
 
+    // 当前请求命中的路由策略
+    @Setter
+    @Getter
+    private RoutePolicy policy = RoutePolicy.AUTHENTICATE;
+
+    // 本次登录是否签发无状态令牌，携带票据时确定，不签发时登录状态保存在session中
+    @Setter
+    @Getter
+    private boolean stateless;
+
+    private CASContext(ServerWebExchange exchange, WebFilterChain chain, CASQuery query, WebSession session) {
+        this.exchange = exchange;
+        this.chain = chain;
+        this.query = query;
+        this.ticket = query.getTicket();
+        this.session = session;
+    }
+
     public static Mono<CASContext> create(ServerWebExchange exchange, WebFilterChain chain) {
-        return new CASContext(exchange, chain).init();
+        CASQuery query = CASQuery.parse(exchange.getRequest().getURI().getRawQuery());
+        return exchange.getSession()
+                .map(session -> new CASContext(exchange, chain, query, session));
     }
 
-    private Mono<CASContext> init() {
-        Mono<String> ticketMono = getParameter("ticket")
-                .filter(StringUtils::hasText)
-                .doOnNext(ticket -> this.ticket = ticket);
-        // 此处必须保证session不为空
-        Mono<WebSession> sessionMono = exchange.getSession()
-                .doOnNext(session -> this.session = session);
-        return Mono.zipDelayError(ticketMono, sessionMono)
-                .onErrorContinue((e, v) -> e.printStackTrace())
-                .thenReturn(this);
+    public boolean isRenew() {
+        return policy == RoutePolicy.RENEW;
+    }
+
+    public boolean isGateway() {
+        return policy == RoutePolicy.GATEWAY;
     }
 
     public boolean isTokenRequest() {
-        return StringUtils.hasText(ticket);
+        return ticket != null;
     }
 
     public Mono<Void> filter() {
@@ -89,6 +101,12 @@ public class CASContext {
         return exchange.getRequest().getMethod();
     }
 
+    /**
+     * 获取任意查询参数，cas参数请直接使用 {@link #getQuery()}
+     *
+     * @param key 参数名
+     * @return 解码后的值
+     */
     public String getQuery(String key) {
         ServerHttpRequest request = exchange.getRequest();
         return request.getQueryParams().getFirst(key);
@@ -102,30 +120,4 @@ public class CASContext {
     public void setSessionAttribute(String key, Object value) {
         session.getAttributes().put(key, value);
     }
-
-    /**
-     * 获取参数
-     *
-     * @param key 键
-     * @return 异步结果
-     */
-    private Mono<String> getParameter(String key) {
-        return parameters.computeIfAbsent(key, this::computeParameter);
-    }
-
-    private Mono<String> computeParameter(String key) {
-        return this.readParameter(key).cache();
-    }
-
-    private Mono<String> readParameter(String key) {
-        String query = getQuery(key);
-        if (StringUtils.hasText(query)) {
-            return Mono.just(query);
-        }
-        MediaType mediaType = exchange.getRequest().getHeaders().getContentType();
-        if (null != mediaType && mediaType.isCompatibleWith(MediaType.APPLICATION_FORM_URLENCODED)) {
-            return exchange.getFormData().mapNotNull(formData -> formData.getFirst(key));
-        }
-        return Mono.empty();
-    }
 }
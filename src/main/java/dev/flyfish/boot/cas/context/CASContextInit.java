@@ -10,4 +10,16 @@ public interface CASContextInit {
     String getTranslatorUser(String username);
 
     void initContext(CASContext casContext, String username);
+
+    /**
+     * 带校验结果的初始化，可直接使用cas释放的属性 {@link CASReceipt#getAttributes()}，无需再次查询
+     * 默认忽略校验结果
+     *
+     * @param casContext 上下文
+     * @param username   转换后的用户名
+     * @param receipt    校验结果
+     */
+    default void initContext(CASContext casContext, String username, CASReceipt receipt) {
+        initContext(casContext, username);
+    }
 }
@@ -0,0 +1,118 @@
+package dev.flyfish.boot.cas.context;
+
+import lombok.Getter;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * cas相关的查询参数
+ *
+ * @author wangyu
+ * 一次遍历原始查询串，只截取cas关心的参数，其余参数不做解码也不分配内存。
+ * 未携带任何参数的请求共享同一个空实例。
+ */
+@Getter
+public final class CASQuery {
+
+    static final CASQuery EMPTY = new CASQuery();
+
+    // 关心的参数
+    private static final int NONE = 0, TICKET = 1, PT = 2, PGT_ID = 3, PGT_IOU = 4, LOCALE = 5;
+
+    // 服务票据
+    private String ticket;
+
+    // 代理票据
+    private String proxyTicket;
+
+    // 代理回调参数
+    private String pgtId;
+
+    private String pgtIou;
+
+    private String locale;
+
+    private CASQuery() {
+    }
+
+    /**
+     * 解析原始查询串，同名参数取第一个
+     *
+     * @param rawQuery 未解码的查询串
+     * @return 结果
+     */
+    public static CASQuery parse(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return EMPTY;
+        }
+        CASQuery query = null;
+        int length = rawQuery.length();
+        int start = 0;
+        while (start < length) {
+            int end = rawQuery.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            int eq = rawQuery.indexOf('=', start);
+            if (eq != -1 && eq < end) {
+                int field = field(rawQuery, start, eq);
+                if (field != NONE) {
+                    if (query == null) {
+                        query = new CASQuery();
+                    }
+                    query.set(field, rawQuery, eq + 1, end);
+                }
+            }
+            start = end + 1;
+        }
+        return query == null ? EMPTY : query;
+    }
+
+    public boolean hasTicket() {
+        return ticket != null;
+    }
+
+    /**
+     * 按参数名长度与内容判断，避免截取参数名
+     */
+    private static int field(String query, int start, int end) {
+        return switch (end - start) {
+            case 2 -> query.startsWith("pt", start) ? PT : NONE;
+            case 5 -> query.startsWith("pgtId", start) ? PGT_ID : NONE;
+            case 6 -> query.startsWith("ticket", start) ? TICKET
+                    : query.startsWith("pgtIou", start) ? PGT_IOU
+                    : query.startsWith("locale", start) ? LOCALE : NONE;
+            default -> NONE;
+        };
+    }
+
+    private void set(int field, String query, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        switch (field) {
+            case TICKET -> ticket = ticket == null ? decode(query, start, end) : ticket;
+            case PT -> proxyTicket = proxyTicket == null ? decode(query, start, end) : proxyTicket;
+            case PGT_ID -> pgtId = pgtId == null ? decode(query, start, end) : pgtId;
+            case PGT_IOU -> pgtIou = pgtIou == null ? decode(query, start, end) : pgtIou;
+            case LOCALE -> locale = locale == null ? decode(query, start, end) : locale;
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * 票据通常无需解码，只有包含转义字符时才走完整解码
+     */
+    private static String decode(String query, int start, int end) {
+        String value = query.substring(start, end);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '+') {
+                return URLDecoder.decode(value, StandardCharsets.UTF_8);
+            }
+        }
+        return value;
+    }
+}
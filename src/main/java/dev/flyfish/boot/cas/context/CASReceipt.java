@@ -2,6 +2,8 @@ package dev.flyfish.boot.cas.context;
 
 import dev.flyfish.boot.cas.exception.CASAuthenticationException;
 import dev.flyfish.boot.cas.validator.ProxyTicketValidator;
+import dev.flyfish.boot.cas.validator.ValidationResponse;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -12,6 +14,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @Setter
 @ToString
@@ -22,6 +25,13 @@ public class CASReceipt implements Serializable {
     private String casValidateUrl;
     @Getter
     private String pgtIou;
+    /**
+     * 以pgtIou从代理回调中取回的代理授权票据，用于申请代理票据
+     * 凭据只保存在内存中，不参与序列化与toString，session写入文件或外部存储后恢复的receipt不含pgt
+     */
+    @Getter
+    @ToString.Exclude
+    private transient String proxyGrantingTicket;
     @Getter
     private boolean primaryAuthentication = false;
     @Getter
@@ -30,6 +40,12 @@ public class CASReceipt implements Serializable {
     private List<?> proxyList = new ArrayList<>();
     @Getter
     private String userName;
+    /**
+     * cas 3.0释放的用户属性，不可变，未释放时为空
+     */
+    @Getter
+    @Setter(AccessLevel.NONE)
+    private Map<String, List<String>> attributes = Map.of();
 
     public static CASReceipt getReceipt(ProxyTicketValidator ptv) throws CASAuthenticationException {
         if (log.isTraceEnabled()) {
@@ -46,6 +62,17 @@ public class CASReceipt implements Serializable {
             }
         }
 
+        return fromValidator(ptv);
+    }
+
+    /**
+     * 基于已完成校验的validator构建receipt，不会再次发起校验
+     *
+     * @param ptv 已解析响应的校验器
+     * @return 结果
+     * @throws CASAuthenticationException 校验未成功或结果不一致
+     */
+    public static CASReceipt fromValidator(ProxyTicketValidator ptv) throws CASAuthenticationException {
         if (!ptv.isAuthenticationSuccessful()) {
             log.error("validation of [" + ptv + "] was not successful.");
             throw new CASAuthenticationException("Unable to validate ProxyTicketValidator [" + ptv + "]");
@@ -69,6 +96,37 @@ public class CASReceipt implements Serializable {
         }
     }
 
+    /**
+     * 基于流式解析的校验结果构建receipt
+     *
+     * @param response         校验结果
+     * @param casValidateUrl   校验地址
+     * @param proxyCallbackUrl 代理回调地址
+     * @param renew            是否要求重新认证
+     * @return 结果
+     * @throws CASAuthenticationException 校验未成功或结果不一致
+     */
+    public static CASReceipt fromResponse(ValidationResponse response, String casValidateUrl, String proxyCallbackUrl,
+                                          boolean renew) throws CASAuthenticationException {
+        if (!response.successful()) {
+            log.error("validation against [" + casValidateUrl + "] was not successful: [" + response.errorCode() + "] " + response.errorMessage());
+            throw new CASAuthenticationException("Ticket validation failed with code [" + response.errorCode() + "]: " + response.errorMessage());
+        }
+
+        CASReceipt receipt = new CASReceipt();
+        receipt.casValidateUrl = casValidateUrl;
+        receipt.pgtIou = response.pgtIou();
+        receipt.userName = response.user();
+        receipt.proxyCallbackUrl = proxyCallbackUrl;
+        receipt.proxyList = response.proxies();
+        receipt.attributes = response.attributes();
+        receipt.primaryAuthentication = renew;
+        if (!receipt.validate()) {
+            throw new CASAuthenticationException("Validation against [" + casValidateUrl + "] did not result in an internally consistent CASReceipt.");
+        }
+        return receipt;
+    }
+
     public CASReceipt() {
     }
 
@@ -76,6 +134,17 @@ public class CASReceipt implements Serializable {
         return Collections.unmodifiableList(this.proxyList);
     }
 
+    /**
+     * 获取属性的第一个值
+     *
+     * @param name 属性名
+     * @return 结果，未释放时为空
+     */
+    public String getAttribute(String name) {
+        List<String> values = this.attributes.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
     public boolean isProxied() {
         return !this.proxyList.isEmpty();
     }
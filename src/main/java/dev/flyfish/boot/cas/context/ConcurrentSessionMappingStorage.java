@@ -0,0 +1,221 @@
+package dev.flyfish.boot.cas.context;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 并发安全、有界、按过期时间淘汰的session mapping存储
+ *
+ * @author wangyu
+ * 只保存票据与session id的映射，注销时通过 {@link WebSessionStore} 按id取回session，
+ * 不再持有整个session对象。一个session可以对应多个票据。
+ * 每次访问会刷新过期时间，过期的映射由后台定期清理，超出容量时立即淘汰。
+ */
+@Slf4j
+public class ConcurrentSessionMappingStorage implements SessionMappingStorage {
+
+    private final Map<String, String> ticketToSession = new ConcurrentHashMap<>();
+
+    private final Map<String, SessionEntry> sessions = new ConcurrentHashMap<>();
+
+    private final Supplier<WebSessionStore> sessionStore;
+
+    private final long timeToLive;
+
+    private final long sweepInterval;
+
+    private final int maxEntries;
+
+    private final AtomicLong nextSweep;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * @param sessionStore session存储，延迟获取以避免与监听器的循环依赖
+     * @param timeToLive   映射的空闲过期时间，通常与session超时一致
+     * @param maxEntries   最多保存的票据数
+     */
+    public ConcurrentSessionMappingStorage(Supplier<WebSessionStore> sessionStore, Duration timeToLive, int maxEntries) {
+        this.sessionStore = sessionStore;
+        this.timeToLive = timeToLive.toNanos();
+        // 清理周期取过期时间的四分之一，最长一分钟
+        this.sweepInterval = Math.min(this.timeToLive / 4, Duration.ofMinutes(1).toNanos());
+        this.maxEntries = maxEntries;
+        this.nextSweep = new AtomicLong(System.nanoTime() + sweepInterval);
+    }
+
+    @Override
+    public Mono<WebSession> removeSessionByMappingId(String mappingId) {
+        String sessionId = ticketToSession.remove(mappingId);
+        if (sessionId == null) {
+            log.debug("No mapping for ticket [{}] found. Ignoring.", mappingId);
+            return Mono.empty();
+        }
+        removeSession(sessionId);
+        WebSessionStore store = sessionStore.get();
+        if (store == null) {
+            log.warn("No WebSessionStore available, cannot resolve session [{}]", sessionId);
+            return Mono.empty();
+        }
+        return store.retrieveSession(sessionId);
+    }
+
+    @Override
+    public Mono<Void> removeBySessionById(String sessionId) {
+        log.debug("Attempting to remove Session=[{}]", sessionId);
+        if (removeSession(sessionId)) {
+            log.debug("Found mapping for session.  Session Removed.");
+        } else {
+            log.debug("No mapping for session found.  Ignoring.");
+        }
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Void> addSessionById(String mappingId, WebSession session) {
+        String sessionId = session.getId();
+        long now = System.nanoTime();
+        // 在session条目的锁内登记票据，保证与并发的移除操作互斥
+        sessions.compute(sessionId, (id, entry) -> {
+            ticketToSession.put(mappingId, id);
+            return entry == null
+                    ? new SessionEntry(new String[]{mappingId}, now + timeToLive)
+                    : entry.with(mappingId, now + timeToLive);
+        });
+        int size = ticketToSession.size();
+        if (size > maxEntries) {
+            // 多淘汰一部分，避免持续满载时每次登记都触发淘汰
+            evict(size - maxEntries + Math.max(1, maxEntries / 100));
+        }
+        scheduleSweep(now);
+        return Mono.empty();
+    }
+
+    @Override
+    public void touch(String sessionId) {
+        SessionEntry entry = sessions.get(sessionId);
+        if (entry != null) {
+            long expiresAt = System.nanoTime() + timeToLive;
+            // 变化不足一个清理周期时不写，减少共享缓存行的争用
+            if (expiresAt - entry.expiresAt > sweepInterval) {
+                entry.expiresAt = expiresAt;
+            }
+        }
+    }
+
+    /**
+     * @return 当前保存的票据数
+     */
+    @Override
+    public int size() {
+        return ticketToSession.size();
+    }
+
+    /**
+     * @return 当前保存的session数
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    private boolean removeSession(String sessionId) {
+        SessionEntry entry = sessions.remove(sessionId);
+        if (entry == null) {
+            return false;
+        }
+        for (String ticket : entry.tickets) {
+            ticketToSession.remove(ticket, sessionId);
+        }
+        return true;
+    }
+
+    /**
+     * 超出容量时淘汰，优先淘汰已过期的映射
+     */
+    private void evict(int excess) {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (int pass = 0; pass < 2 && removed < excess; pass++) {
+            Iterator<Map.Entry<String, SessionEntry>> iterator = sessions.entrySet().iterator();
+            while (iterator.hasNext() && removed < excess) {
+                Map.Entry<String, SessionEntry> next = iterator.next();
+                if (pass == 1 || next.getValue().isExpired(now)) {
+                    removed += next.getValue().tickets.length;
+                    removeSession(next.getKey());
+                }
+            }
+        }
+        log.warn("Session mapping storage exceeded {} entries, evicted {} tickets", maxEntries, removed);
+    }
+
+    private void scheduleSweep(long now) {
+        long scheduled = nextSweep.get();
+        if (now - scheduled >= 0 && nextSweep.compareAndSet(scheduled, now + sweepInterval)
+                && sweeping.compareAndSet(false, true)) {
+            Schedulers.boundedElastic().schedule(this::sweep);
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            int removed = 0;
+            for (Map.Entry<String, SessionEntry> entry : sessions.entrySet()) {
+                if (entry.getValue().isExpired(now) && sessions.remove(entry.getKey(), entry.getValue())) {
+                    for (String ticket : entry.getValue().tickets) {
+                        ticketToSession.remove(ticket, entry.getKey());
+                    }
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                log.debug("Swept {} expired session mappings", removed);
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * session对应的票据，票据数组不可变，只在compute中整体替换
+     */
+    private static final class SessionEntry {
+
+        private final String[] tickets;
+
+        private volatile long expiresAt;
+
+        private SessionEntry(String[] tickets, long expiresAt) {
+            this.tickets = tickets;
+            this.expiresAt = expiresAt;
+        }
+
+        private SessionEntry with(String ticket, long expiresAt) {
+            for (String existing : tickets) {
+                if (existing.equals(ticket)) {
+                    this.expiresAt = expiresAt;
+                    return this;
+                }
+            }
+            String[] next = Arrays.copyOf(tickets, tickets.length + 1);
+            next[tickets.length] = ticket;
+            return new SessionEntry(next, expiresAt);
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
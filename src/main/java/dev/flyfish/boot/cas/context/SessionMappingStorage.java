@@ -20,6 +20,21 @@ public interface SessionMappingStorage {
 
     Mono<Void> addSessionById(String mappingId, WebSession session);
 
+    /**
+     * 已认证的请求经过时刷新映射的有效期，同步且廉价，默认不处理
+     *
+     * @param sessionId session id
+     */
+    default void touch(String sessionId) {
+    }
+
+    /**
+     * @return 当前保存的票据数，不支持统计时返回-1
+     */
+    default int size() {
+        return -1;
+    }
+
     @Slf4j
     class HashMapBackedSessionStorage implements SessionMappingStorage {
 
@@ -61,5 +76,10 @@ public interface SessionMappingStorage {
             this.MANAGED_SESSIONS.put(mappingId, session);
             return Mono.empty();
         }
+
+        @Override
+        public int size() {
+            return this.MANAGED_SESSIONS.size();
+        }
     }
 }
@@ -0,0 +1,241 @@
+package dev.flyfish.boot.cas.context;
+
+import dev.flyfish.boot.cas.config.session.WebSessionListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 用户名到session id的索引
+ *
+ * @author wangyu
+ * 登录成功写入receipt时登记，session销毁或过期时经由监听器移除，可按用户一次性注销全部session。
+ * 每个用户的session id按登录先后保存在不可变数组中，只在该用户条目的compute中整体替换，
+ * 两个映射的修改都在同一用户条目的锁内完成。配置了每个用户的最大session数时，超出的最早登录的session被注销，
+ * 登记与淘汰的开销只与该上限有关，与在线用户数无关。
+ * 存储在重启后恢复session时，启动前创建的session在首次访问时补登记；已移出索引、正在注销的session不会被补登记。
+ */
+@Slf4j
+public class UserSessionIndex implements WebSessionListener {
+
+    private static final String[] NONE = new String[0];
+
+    private final Map<String, String[]> userToSessions = new ConcurrentHashMap<>();
+
+    private final Map<String, String> sessionToUser = new ConcurrentHashMap<>();
+
+    private final Supplier<WebSessionStore> sessionStore;
+
+    private final int maxSessionsPerUser;
+
+    private final boolean recovering;
+
+    // 已移出索引、尚未从存储中注销的session，期间不允许补登记
+    private final Set<String> invalidating = ConcurrentHashMap.newKeySet();
+
+    private final Instant startedAt = Instant.now();
+
+    /**
+     * @param sessionStore       session存储，延迟获取以避免与监听器的循环依赖
+     * @param maxSessionsPerUser 每个用户的最大session数，0为不限制
+     * @param recovering         存储是否在重启后恢复session，是时补登记启动前创建的session
+     */
+    public UserSessionIndex(Supplier<WebSessionStore> sessionStore, int maxSessionsPerUser, boolean recovering) {
+        this.sessionStore = sessionStore;
+        this.maxSessionsPerUser = Math.max(0, maxSessionsPerUser);
+        this.recovering = recovering;
+    }
+
+    /**
+     * 登记用户的session，超出每个用户的最大session数时注销最早登录的session
+     *
+     * @param user    用户名
+     * @param session 已登录的session
+     * @return 被挤出的session注销后结束
+     */
+    public Mono<Void> register(String user, WebSession session) {
+        String id = session.getId();
+        String previous = sessionToUser.get(id);
+        if (user.equals(previous)) {
+            return Mono.empty();
+        }
+        if (previous != null) {
+            // 同一session换了用户登录
+            remove(previous, id);
+        }
+        String[][] evicted = {NONE};
+        userToSessions.compute(user, (key, ids) -> {
+            sessionToUser.put(id, key);
+            if (ids == null) {
+                return new String[]{id};
+            }
+            int keep = ids.length;
+            if (maxSessionsPerUser > 0 && keep >= maxSessionsPerUser) {
+                keep = maxSessionsPerUser - 1;
+                evicted[0] = Arrays.copyOf(ids, ids.length - keep);
+                for (String old : evicted[0]) {
+                    sessionToUser.remove(old, key);
+                }
+            }
+            String[] next = Arrays.copyOfRange(ids, ids.length - keep, ids.length + 1);
+            next[keep] = id;
+            return next;
+        });
+        if (evicted[0].length == 0) {
+            return Mono.empty();
+        }
+        log.debug("User [{}] exceeded {} sessions, invalidating {}", user, maxSessionsPerUser, evicted[0].length);
+        return invalidate(evicted[0]).then();
+    }
+
+    /**
+     * 补登记重启后恢复的session，只登记启动前创建且仍在存储中的session，
+     * 因超出上限或按用户注销而被移出索引的session不会被重新登记
+     *
+     * @param user    用户名
+     * @param session 带有登录信息的session
+     * @return 登记后结束
+     */
+    public Mono<Void> recover(String user, WebSession session) {
+        String id = session.getId();
+        if (!recovering || sessionToUser.containsKey(id) || invalidating.contains(id)
+                || session.isExpired() || !session.getCreationTime().isBefore(startedAt)) {
+            return Mono.empty();
+        }
+        WebSessionStore store = sessionStore.get();
+        if (store == null) {
+            return Mono.empty();
+        }
+        return store.retrieveSession(id)
+                .flatMap(live -> invalidating.contains(id) ? Mono.empty() : register(user, session));
+    }
+
+    /**
+     * @param sessionId session id
+     * @return 该session是否已登记
+     */
+    public boolean contains(String sessionId) {
+        return sessionToUser.containsKey(sessionId);
+    }
+
+    /**
+     * @param user 用户名
+     * @return 用户的session id，按登录先后排列
+     */
+    public List<String> getSessionIds(String user) {
+        String[] ids = userToSessions.get(user);
+        return ids == null ? List.of() : List.of(ids);
+    }
+
+    /**
+     * 注销用户的全部session
+     *
+     * @param user 用户名
+     * @return 实际注销的session数，已不在存储中的不计入
+     */
+    public Mono<Long> invalidateAll(String user) {
+        return Mono.defer(() -> {
+            String[][] removed = {NONE};
+            userToSessions.computeIfPresent(user, (key, ids) -> {
+                for (String id : ids) {
+                    sessionToUser.remove(id, key);
+                }
+                removed[0] = ids;
+                return null;
+            });
+            log.debug("Invalidating {} sessions of user [{}]", removed[0].length, user);
+            return invalidate(removed[0]);
+        });
+    }
+
+    /**
+     * @return 已登记的用户数
+     */
+    public int userCount() {
+        return userToSessions.size();
+    }
+
+    /**
+     * @return 已登记的session数
+     */
+    public int sessionCount() {
+        return sessionToUser.size();
+    }
+
+    @Override
+    public Mono<Void> onSessionInvalidated(WebSession session) {
+        String id = session.getId();
+        String user = sessionToUser.get(id);
+        if (user != null) {
+            remove(user, id);
+        }
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Void> onSessionIdChanged(WebSession session, String previousId) {
+        String user = sessionToUser.get(previousId);
+        if (user != null) {
+            String id = session.getId();
+            userToSessions.computeIfPresent(user, (key, ids) -> {
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i].equals(previousId)) {
+                        String[] next = ids.clone();
+                        next[i] = id;
+                        sessionToUser.remove(previousId, key);
+                        sessionToUser.put(id, key);
+                        return next;
+                    }
+                }
+                return ids;
+            });
+        }
+        return Mono.empty();
+    }
+
+    private void remove(String user, String id) {
+        userToSessions.computeIfPresent(user, (key, ids) -> {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i].equals(id)) {
+                    sessionToUser.remove(id, key);
+                    if (ids.length == 1) {
+                        return null;
+                    }
+                    String[] next = new String[ids.length - 1];
+                    System.arraycopy(ids, 0, next, 0, i);
+                    System.arraycopy(ids, i + 1, next, i, next.length - i);
+                    return next;
+                }
+            }
+            return ids;
+        });
+    }
+
+    private Mono<Long> invalidate(String[] ids) {
+        if (ids.length == 0) {
+            return Mono.just(0L);
+        }
+        WebSessionStore store = sessionStore.get();
+        if (store == null) {
+            log.warn("No WebSessionStore available, cannot invalidate {} sessions", ids.length);
+            return Mono.just(0L);
+        }
+        List<String> pending = List.of(ids);
+        invalidating.addAll(pending);
+        return Flux.fromIterable(pending)
+                .flatMap(store::retrieveSession)
+                .flatMap(session -> session.invalidate().thenReturn(session))
+                .count()
+                .doFinally(signal -> invalidating.removeAll(pending));
+    }
+}
@@ -0,0 +1,175 @@
+package dev.flyfish.boot.cas.context.cluster;
+
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.server.WebSession;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群模式的session mapping存储
+ *
+ * @author wangyu
+ * 负载均衡会把cas的注销回调发往任意节点，本地未命中的票据按批广播给其他节点，
+ * 其他节点收到后在本地批量查找并注销对应的session。远端消息只在本地处理，不会再次广播。
+ * 待广播的票据有上限，广播跟不上时丢弃并计数；接收通道出错后退避重新订阅，单条消息处理失败不影响后续消息。
+ */
+@Slf4j
+public class DistributedSessionMappingStorage implements SessionMappingStorage, DisposableBean {
+
+    private static final Duration RESUBSCRIBE_BACKOFF = Duration.ofSeconds(1);
+
+    private static final Duration RESUBSCRIBE_MAX_BACKOFF = Duration.ofMinutes(1);
+
+    private final SessionMappingStorage local;
+
+    private final String nodeId;
+
+    private final Sinks.Many<String> misses;
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    private final LongAdder broadcasted = new LongAdder();
+
+    private final LongAdder remoteInvalidated = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param local       本地存储
+     * @param transport   传输通道
+     * @param nodeId      当前节点标识，集群内唯一
+     * @param batchSize   单次广播的最大票据数
+     * @param batchWindow 攒批的最长等待时间
+     * @param maxPending  待广播的最大票据数，超出时丢弃
+     */
+    public DistributedSessionMappingStorage(SessionMappingStorage local, LogoutTransport transport, String nodeId,
+                                            int batchSize, Duration batchWindow, int maxPending) {
+        this.local = local;
+        this.nodeId = nodeId;
+        this.misses = Sinks.many().unicast().onBackpressureBuffer(Queues.<String>get(Math.max(1, maxPending)).get());
+
+        // 使用公平背压，避免广播繁忙时攒批定时器溢出而终止整条链路
+        subscriptions.add(misses.asFlux()
+                .bufferTimeout(batchSize, batchWindow, true)
+                .concatMap(batch -> Mono.defer(() -> transport.publish(new LogoutBroadcast(nodeId, batch)))
+                        .doOnSuccess(v -> broadcasted.add(batch.size()))
+                        .doOnError(e -> log.error("Unable to broadcast {} logout requests", batch.size(), e))
+                        .onErrorComplete())
+                .subscribe());
+
+        subscriptions.add(Flux.defer(transport::receive)
+                .filter(broadcast -> !nodeId.equals(broadcast.origin()))
+                .concatMap(broadcast -> invalidateAll(broadcast.mappingIds())
+                        .onErrorResume(e -> {
+                            log.error("Unable to process logout broadcast from [{}]", broadcast.origin(), e);
+                            return Mono.empty();
+                        }))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, RESUBSCRIBE_BACKOFF)
+                        .maxBackoff(RESUBSCRIBE_MAX_BACKOFF)
+                        .doBeforeRetry(signal -> log.error("Logout broadcast receiver failed, resubscribing (attempt {})",
+                                signal.totalRetriesInARow() + 1, signal.failure())))
+                .subscribe());
+    }
+
+    @Override
+    public Mono<WebSession> removeSessionByMappingId(String mappingId) {
+        return local.removeSessionByMappingId(mappingId)
+                .switchIfEmpty(Mono.fromRunnable(() -> {
+                    log.debug("No local mapping for ticket [{}], broadcasting to peers", mappingId);
+                    broadcast(mappingId);
+                }));
+    }
+
+    /**
+     * 放入待广播队列，队列已满时丢弃
+     */
+    private void broadcast(String mappingId) {
+        Sinks.EmitResult result;
+        while ((result = misses.tryEmitNext(mappingId)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+        }
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+            dropped.increment();
+            log.warn("Logout broadcast queue is full, dropping ticket [{}]", mappingId);
+        } else if (result.isFailure()) {
+            log.debug("Unable to queue ticket [{}] for broadcast: {}", mappingId, result);
+        }
+    }
+
+    @Override
+    public Mono<Void> removeBySessionById(String sessionId) {
+        return local.removeBySessionById(sessionId);
+    }
+
+    @Override
+    public Mono<Void> addSessionById(String mappingId, WebSession session) {
+        return local.addSessionById(mappingId, session);
+    }
+
+    @Override
+    public void touch(String sessionId) {
+        local.touch(sessionId);
+    }
+
+    @Override
+    public int size() {
+        return local.size();
+    }
+
+    /**
+     * 批量注销远端广播的票据，单个失败不影响其他票据
+     */
+    private Mono<Void> invalidateAll(List<String> mappingIds) {
+        return Flux.fromIterable(mappingIds)
+                .flatMap(mappingId -> Mono.defer(() -> local.removeSessionByMappingId(mappingId))
+                        .doOnNext(session -> log.debug("Invalidating session [{}] for remote ST [{}]", session.getId(), mappingId))
+                        .flatMap(session -> session.invalidate().doOnSuccess(v -> remoteInvalidated.increment()))
+                        .doOnError(e -> log.debug("error when invalidating session for remote ST [{}]", mappingId, e))
+                        .onErrorComplete())
+                .then();
+    }
+
+    /**
+     * @return 当前节点的标识
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return 已广播的票据数
+     */
+    public long getBroadcasted() {
+        return broadcasted.sum();
+    }
+
+    /**
+     * @return 处理远端广播时命中并注销的session数
+     */
+    public long getRemoteInvalidated() {
+        return remoteInvalidated.sum();
+    }
+
+    /**
+     * @return 广播队列已满而丢弃的票据数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void destroy() {
+        subscriptions.dispose();
+    }
+}
@@ -0,0 +1,17 @@
+package dev.flyfish.boot.cas.context.cluster;
+
+import java.util.List;
+
+/**
+ * 节点间广播的注销消息
+ *
+ * @param origin     发起广播的节点
+ * @param mappingIds 在发起节点未命中的票据
+ * @author wangyu
+ */
+public record LogoutBroadcast(String origin, List<String> mappingIds) {
+
+    public LogoutBroadcast {
+        mappingIds = List.copyOf(mappingIds);
+    }
+}
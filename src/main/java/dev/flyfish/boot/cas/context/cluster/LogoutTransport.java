@@ -0,0 +1,28 @@
+package dev.flyfish.boot.cas.context.cluster;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 集群注销的传输通道，可基于消息队列、redis发布订阅等实现
+ *
+ * @author wangyu
+ * 实现方需要保证广播能送达包括自身在内的所有订阅节点，自身发出的消息由接收方过滤
+ */
+public interface LogoutTransport {
+
+    /**
+     * 广播注销消息
+     *
+     * @param broadcast 消息
+     * @return 发送完成
+     */
+    Mono<Void> publish(LogoutBroadcast broadcast);
+
+    /**
+     * 接收所有节点广播的注销消息
+     *
+     * @return 消息流
+     */
+    Flux<LogoutBroadcast> receive();
+}
@@ -0,0 +1,57 @@
+package dev.flyfish.boot.cas.context.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内回环传输，多个节点共享同一个实例即可在单个jvm内模拟集群
+ * 订阅方消费跟不上、缓冲已满时丢弃广播并计数，不会终止通道
+ *
+ * @author wangyu
+ */
+@Slf4j
+public class LoopbackLogoutTransport implements LogoutTransport {
+
+    private final Sinks.Many<LogoutBroadcast> sink = Sinks.many().multicast()
+            .onBackpressureBuffer(Queues.SMALL_BUFFER_SIZE, false);
+
+    private final LongAdder dropped = new LongAdder();
+
+    @Override
+    public Mono<Void> publish(LogoutBroadcast broadcast) {
+        return Mono.fromRunnable(() -> emit(broadcast));
+    }
+
+    /**
+     * 并发发布时自旋重试，缓冲已满时丢弃
+     */
+    private void emit(LogoutBroadcast broadcast) {
+        Sinks.EmitResult result;
+        while ((result = sink.tryEmitNext(broadcast)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+        }
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+            dropped.increment();
+            log.warn("Loopback transport buffer is full, dropping broadcast from node [{}]", broadcast.origin());
+        } else if (result.isFailure()) {
+            log.debug("Unable to publish broadcast from node [{}]: {}", broadcast.origin(), result);
+        }
+    }
+
+    @Override
+    public Flux<LogoutBroadcast> receive() {
+        return sink.asFlux();
+    }
+
+    /**
+     * @return 缓冲已满而丢弃的广播数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
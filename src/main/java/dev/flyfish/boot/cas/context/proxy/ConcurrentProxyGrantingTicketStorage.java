@@ -0,0 +1,44 @@
+package dev.flyfish.boot.cas.context.proxy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * 并发安全、有界、按过期时间淘汰的代理授权票据存储
+ *
+ * @author wangyu
+ * 映射只在回调与校验之间短暂存在，取回即移除。未被取走的映射（如校验失败）由后台定期清理，超出容量时立即淘汰。
+ */
+@Slf4j
+public class ConcurrentProxyGrantingTicketStorage implements ProxyGrantingTicketStorage {
+
+    private final ExpiringMap<String, String> tickets;
+
+    /**
+     * @param timeToLive 映射的保留时间
+     * @param maxEntries 最多保存的映射数
+     */
+    public ConcurrentProxyGrantingTicketStorage(Duration timeToLive, int maxEntries) {
+        this.tickets = new ExpiringMap<>("Proxy granting ticket storage", timeToLive, maxEntries);
+    }
+
+    @Override
+    public void save(String pgtIou, String pgtId) {
+        tickets.put(pgtIou, pgtId);
+    }
+
+    @Override
+    public String retrieve(String pgtIou) {
+        String pgtId = tickets.remove(pgtIou);
+        if (pgtId == null) {
+            log.debug("No unexpired proxy granting ticket found for [{}]", pgtIou);
+        }
+        return pgtId;
+    }
+
+    @Override
+    public int size() {
+        return tickets.size();
+    }
+}
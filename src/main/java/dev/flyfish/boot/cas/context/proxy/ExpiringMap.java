@@ -0,0 +1,131 @@
+package dev.flyfish.boot.cas.context.proxy;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发安全、有界、按写入时间过期的映射
+ *
+ * @author wangyu
+ * 读取时发现过期即移除，其余过期条目由写入时触发的后台清理回收，超出容量时立即淘汰，优先淘汰已过期的条目。
+ */
+@Slf4j
+final class ExpiringMap<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final long timeToLive;
+
+    private final long sweepInterval;
+
+    private final int maxEntries;
+
+    private final AtomicLong nextSweep;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * @param name       名称，用于日志
+     * @param timeToLive 条目的保留时间
+     * @param maxEntries 最多保存的条目数
+     */
+    ExpiringMap(String name, Duration timeToLive, int maxEntries) {
+        this.name = name;
+        this.timeToLive = timeToLive.toNanos();
+        // 清理周期取保留时间的一半，最长一分钟
+        this.sweepInterval = Math.min(this.timeToLive / 2, Duration.ofMinutes(1).toNanos());
+        this.maxEntries = maxEntries;
+        this.nextSweep = new AtomicLong(System.nanoTime() + sweepInterval);
+    }
+
+    void put(K key, V value) {
+        long now = System.nanoTime();
+        entries.put(key, new Entry<>(value, now + timeToLive));
+        int size = entries.size();
+        if (size > maxEntries) {
+            // 多淘汰一部分，避免持续满载时每次写入都触发淘汰
+            evict(size - maxEntries + Math.max(1, maxEntries / 100));
+        }
+        scheduleSweep(now);
+    }
+
+    /**
+     * @return 未过期的值，不存在或已过期时为空
+     */
+    V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 取出并移除
+     *
+     * @return 未过期的值，不存在或已过期时为空
+     */
+    V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.value;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evict(int excess) {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (int pass = 0; pass < 2 && removed < excess; pass++) {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext() && removed < excess) {
+                Map.Entry<K, Entry<V>> next = iterator.next();
+                if (pass == 1 || next.getValue().isExpired(now)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        log.warn("{} exceeded {} entries, evicted {}", name, maxEntries, removed);
+    }
+
+    private void scheduleSweep(long now) {
+        long scheduled = nextSweep.get();
+        if (now - scheduled >= 0 && nextSweep.compareAndSet(scheduled, now + sweepInterval)
+                && sweeping.compareAndSet(false, true)) {
+            Schedulers.boundedElastic().schedule(this::sweep);
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            if (entries.values().removeIf(entry -> entry.isExpired(now))) {
+                log.debug("Swept expired entries of {}", name);
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package dev.flyfish.boot.cas.context.proxy;
+
+/**
+ * 代理授权票据的存储
+ *
+ * @author wangyu
+ * cas在返回校验结果之前，把pgtIou与pgt回调给代理回调地址；校验成功后以receipt中的pgtIou取回pgt。
+ */
+public interface ProxyGrantingTicketStorage {
+
+    /**
+     * 保存cas回调的映射
+     *
+     * @param pgtIou 代理授权票据的IOU
+     * @param pgtId  代理授权票据
+     */
+    void save(String pgtIou, String pgtId);
+
+    /**
+     * 取回并移除映射，每个pgtIou只能取回一次
+     *
+     * @param pgtIou 代理授权票据的IOU
+     * @return 代理授权票据，不存在或已过期时为空
+     */
+    String retrieve(String pgtIou);
+
+    /**
+     * @return 当前保存的映射数，不支持统计时返回-1
+     */
+    default int size() {
+        return -1;
+    }
+}
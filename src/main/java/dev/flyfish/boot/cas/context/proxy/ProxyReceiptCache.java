@@ -0,0 +1,62 @@
+package dev.flyfish.boot.cas.context.proxy;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+
+import java.time.Duration;
+
+/**
+ * 代理票据校验结果的缓存，按 票据+服务 区分，所有请求共享
+ *
+ * @author wangyu
+ * 代理票据只能向cas校验一次，代理方在有效期内重复使用同一票据时直接命中缓存。
+ * 代理调用通常不携带cookie，结果不写入session，避免每次调用都创建或膨胀session。
+ */
+public class ProxyReceiptCache {
+
+    private final ExpiringMap<Key, Grant> grants;
+
+    /**
+     * @param timeToLive 校验结果的保留时间
+     * @param maxEntries 最多保存的校验结果数
+     */
+    public ProxyReceiptCache(Duration timeToLive, int maxEntries) {
+        this.grants = new ExpiringMap<>("Proxy receipt cache", timeToLive, maxEntries);
+    }
+
+    /**
+     * @param ticket  代理票据
+     * @param service 校验时使用的服务地址
+     * @return 未过期的校验结果，不存在时为空
+     */
+    public Grant get(String ticket, String service) {
+        return grants.get(new Key(ticket, service));
+    }
+
+    /**
+     * @param ticket  代理票据
+     * @param service 校验时使用的服务地址
+     * @param grant   校验结果
+     */
+    public void put(String ticket, String service, Grant grant) {
+        grants.put(new Key(ticket, service), grant);
+    }
+
+    /**
+     * @return 当前缓存的校验结果数，含尚未清理的过期条目
+     */
+    public int size() {
+        return grants.size();
+    }
+
+    /**
+     * 一次代理票据校验的结果
+     *
+     * @param receipt   校验结果
+     * @param principal 转换后的用户名，未配置初始化时为空
+     */
+    public record Grant(CASReceipt receipt, String principal) {
+    }
+
+    private record Key(String ticket, String service) {
+    }
+}
@@ -0,0 +1,51 @@
+package dev.flyfish.boot.cas.context.token;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 无状态模式下签发给浏览器的登录凭证
+ *
+ * @param user            cas返回的用户名
+ * @param principal       经过 {@link dev.flyfish.boot.cas.context.CASContextInit} 转换后的用户名，未配置时为空
+ * @param authTime        认证时间，秒
+ * @param expiresAt       过期时间，秒
+ * @param primary         是否为重新输入凭证的认证
+ * @param proxyingService 代理服务，非代理认证时为空
+ * @param ticketId        服务票据的摘要，用于单点注销时吊销
+ * @author wangyu
+ */
+public record CASToken(String user, String principal, long authTime, long expiresAt, boolean primary,
+                       String proxyingService, String ticketId) {
+
+    /**
+     * 请求属性中保存已校验令牌的键
+     */
+    public static final String ATTRIBUTE = CASToken.class.getName();
+
+    public boolean isExpired(long nowSeconds) {
+        return nowSeconds >= expiresAt;
+    }
+
+    public boolean isProxied() {
+        return proxyingService != null;
+    }
+
+    /**
+     * 计算服务票据的摘要，令牌中不直接保存票据
+     *
+     * @param ticket 服务票据
+     * @return 16个字符的摘要
+     */
+    public static String ticketId(String ticket) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(ticket.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
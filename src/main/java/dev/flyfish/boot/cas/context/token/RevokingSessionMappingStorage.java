@@ -0,0 +1,49 @@
+package dev.flyfish.boot.cas.context.token;
+
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import org.springframework.web.server.WebSession;
+import reactor.core.publisher.Mono;
+
+/**
+ * 无状态模式下的映射存储，注销时同时吊销该票据签发的令牌
+ *
+ * @author wangyu
+ * 放在集群广播之内，本地未命中的注销会广播给其他节点，其他节点同样完成吊销
+ */
+public class RevokingSessionMappingStorage implements SessionMappingStorage {
+
+    private final SessionMappingStorage delegate;
+
+    private final StatelessTokens tokens;
+
+    public RevokingSessionMappingStorage(SessionMappingStorage delegate, StatelessTokens tokens) {
+        this.delegate = delegate;
+        this.tokens = tokens;
+    }
+
+    @Override
+    public Mono<WebSession> removeSessionByMappingId(String mappingId) {
+        tokens.revoke(mappingId);
+        return delegate.removeSessionByMappingId(mappingId);
+    }
+
+    @Override
+    public Mono<Void> removeBySessionById(String sessionId) {
+        return delegate.removeBySessionById(sessionId);
+    }
+
+    @Override
+    public Mono<Void> addSessionById(String mappingId, WebSession session) {
+        return delegate.addSessionById(mappingId, session);
+    }
+
+    @Override
+    public void touch(String sessionId) {
+        delegate.touch(sessionId);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+}
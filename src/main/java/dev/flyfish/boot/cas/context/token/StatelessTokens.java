@@ -0,0 +1,168 @@
+package dev.flyfish.boot.cas.context.token;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 无状态登录模式
+ *
+ * @author wangyu
+ * 登录成功后签发HMAC签名的cookie，后续请求只在内存中校验签名，不再读取session。
+ * 单点注销时按票据摘要吊销令牌，吊销记录保留到令牌的最长有效期为止，到期前不会被丢弃。
+ * 吊销记录达到上限时暂停签发令牌，这期间的登录保留session，直到过期的吊销记录被清理。
+ */
+@Slf4j
+public class StatelessTokens {
+
+    private final TokenCodec codec;
+
+    private final String cookieName;
+
+    private final Duration maxAge;
+
+    private final boolean secure;
+
+    private final String sameSite;
+
+    private final int maxRevocations;
+
+    // 票据摘要 -> 吊销记录的过期时间，秒
+    private final Map<String, Long> revocations = new ConcurrentHashMap<>();
+
+    // 按吊销先后排列的吊销记录，有效期固定，因此也是过期先后，清理时只需检查队首
+    private final Queue<Revocation> expiries = new ConcurrentLinkedQueue<>();
+
+    public StatelessTokens(CASParameter parameter) {
+        CASParameter.Token token = parameter.getToken();
+        this.codec = new TokenCodec(token.getKeys());
+        this.cookieName = token.getCookieName();
+        this.maxAge = token.getMaxAge();
+        this.secure = token.getSecure() != null ? token.getSecure() : "https".equalsIgnoreCase(parameter.getCasServerProtocol());
+        this.sameSite = token.getSameSite();
+        this.maxRevocations = parameter.getSessionMapping().getMaxEntries();
+    }
+
+    /**
+     * 从请求中解析有效的令牌
+     *
+     * @param request 请求
+     * @return 令牌，不存在、签名错误、过期或已吊销时为空
+     */
+    public CASToken resolve(ServerHttpRequest request) {
+        HttpCookie cookie = request.getCookies().getFirst(cookieName);
+        if (cookie == null || !StringUtils.hasText(cookie.getValue())) {
+            return null;
+        }
+        CASToken token = codec.decode(cookie.getValue());
+        if (token == null || token.isExpired(now())) {
+            return null;
+        }
+        if (token.ticketId() != null && !revocations.isEmpty() && revocations.containsKey(token.ticketId())) {
+            log.debug("token of user [{}] has been revoked", token.user());
+            return null;
+        }
+        return token;
+    }
+
+    /**
+     * 吊销记录达到上限时不再签发令牌，以免无法吊销
+     *
+     * @return 是否可以签发令牌
+     */
+    public boolean canIssue() {
+        if (revocations.size() < maxRevocations) {
+            return true;
+        }
+        prune(now());
+        return revocations.size() < maxRevocations;
+    }
+
+    /**
+     * 基于校验结果创建令牌
+     *
+     * @param receipt   校验结果
+     * @param principal 转换后的用户名
+     * @param ticket    服务票据
+     * @return 令牌
+     */
+    public CASToken create(CASReceipt receipt, String principal, String ticket) {
+        long now = now();
+        return new CASToken(receipt.getUserName(), principal, now, now + maxAge.toSeconds(),
+                receipt.isPrimaryAuthentication(), receipt.getProxyingService(),
+                ticket == null ? null : CASToken.ticketId(ticket));
+    }
+
+    /**
+     * 把令牌写入响应cookie
+     *
+     * @param exchange 请求
+     * @param token    令牌
+     */
+    public void issue(ServerWebExchange exchange, CASToken token) {
+        String contextPath = exchange.getRequest().getPath().contextPath().value();
+        exchange.getResponse().addCookie(ResponseCookie.from(cookieName, codec.encode(token))
+                .path(StringUtils.hasText(contextPath) ? contextPath : "/")
+                .maxAge(maxAge)
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite(sameSite)
+                .build());
+    }
+
+    /**
+     * 吊销由该票据签发的令牌
+     *
+     * @param ticket 服务票据
+     */
+    public void revoke(String ticket) {
+        long now = now();
+        String ticketId = CASToken.ticketId(ticket);
+        long expiresAt = now + maxAge.toSeconds();
+        revocations.put(ticketId, expiresAt);
+        expiries.offer(new Revocation(ticketId, expiresAt));
+        prune(now);
+        if (revocations.size() >= maxRevocations) {
+            log.warn("Token revocations reached {} entries, new logins keep their session until revocations expire",
+                    maxRevocations);
+        }
+    }
+
+    /**
+     * @return 当前的吊销记录数
+     */
+    public int getRevocations() {
+        return revocations.size();
+    }
+
+    /**
+     * 从队首清理过期的吊销记录，未过期的记录一律保留
+     */
+    private void prune(long now) {
+        Revocation head;
+        while ((head = expiries.peek()) != null && head.expiresAt() <= now) {
+            if (expiries.remove(head)) {
+                // 同一票据再次吊销时以后一条记录为准
+                revocations.remove(head.ticketId(), head.expiresAt());
+            }
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private record Revocation(String ticketId, long expiresAt) {
+    }
+}
@@ -0,0 +1,157 @@
+package dev.flyfish.boot.cas.context.token;
+
+import dev.flyfish.boot.cas.filter.CASParameter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 令牌的HMAC签名与校验
+ *
+ * @author wangyu
+ * 格式为 kid.payload.signature，payload与signature均为无填充的base64url。
+ * 第一个密钥用于签发，其余密钥只用于校验，轮换时把新密钥放在首位，旧密钥保留到令牌全部过期。
+ * Mac实例按线程、按密钥复用。
+ */
+@Slf4j
+public class TokenCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int MIN_SECRET_LENGTH = 32;
+
+    private static final int FIELDS = 7;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SigningKey signingKey;
+
+    private final Map<String, SigningKey> keys = new HashMap<>();
+
+    /**
+     * @param keys 密钥，第一个用于签发
+     */
+    public TokenCodec(List<CASParameter.Token.Key> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("at least one token signing key must be configured");
+        }
+        for (CASParameter.Token.Key key : keys) {
+            String id = key.getId();
+            if (id == null || id.isEmpty() || id.indexOf('.') != -1) {
+                throw new IllegalArgumentException("token key id must be non-empty and must not contain '.'");
+            }
+            byte[] secret = key.getSecret() == null ? new byte[0] : key.getSecret().getBytes(StandardCharsets.UTF_8);
+            if (secret.length < MIN_SECRET_LENGTH) {
+                throw new IllegalArgumentException("token key [" + id + "] must be at least " + MIN_SECRET_LENGTH + " bytes");
+            }
+            if (this.keys.putIfAbsent(id, new SigningKey(id, secret)) != null) {
+                throw new IllegalArgumentException("duplicated token key id [" + id + "]");
+            }
+        }
+        this.signingKey = this.keys.get(keys.get(0).getId());
+    }
+
+    /**
+     * 签发令牌
+     *
+     * @param token 令牌
+     * @return cookie值
+     */
+    public String encode(CASToken token) {
+        String payload = String.join("\n", field(token.user()), field(token.principal()),
+                Long.toString(token.authTime()), Long.toString(token.expiresAt()), token.primary() ? "1" : "0",
+                field(token.proxyingService()), field(token.ticketId()));
+        String signed = signingKey.id + '.' + ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = signed.getBytes(StandardCharsets.US_ASCII);
+        return signed + '.' + ENCODER.encodeToString(signingKey.mac().doFinal(bytes));
+    }
+
+    /**
+     * 校验并解析令牌，不检查有效期
+     *
+     * @param value cookie值
+     * @return 令牌，签名错误或格式非法时为空
+     */
+    public CASToken decode(String value) {
+        int first = value.indexOf('.');
+        int second = first == -1 ? -1 : value.indexOf('.', first + 1);
+        if (second == -1) {
+            return null;
+        }
+        SigningKey key = keys.get(value.substring(0, first));
+        if (key == null) {
+            log.debug("token signed with unknown key, ignored");
+            return null;
+        }
+        try {
+            byte[] signed = value.substring(0, second).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = DECODER.decode(value.substring(second + 1));
+            if (!MessageDigest.isEqual(key.mac().doFinal(signed), signature)) {
+                log.debug("token signature mismatch, ignored");
+                return null;
+            }
+            String[] fields = new String(DECODER.decode(value.substring(first + 1, second)), StandardCharsets.UTF_8)
+                    .split("\n", -1);
+            if (fields.length != FIELDS) {
+                return null;
+            }
+            return new CASToken(value(fields[0]), value(fields[1]), Long.parseLong(fields[2]),
+                    Long.parseLong(fields[3]), "1".equals(fields[4]), value(fields[5]), value(fields[6]));
+        } catch (IllegalArgumentException e) {
+            log.debug("malformed token, ignored", e);
+            return null;
+        }
+    }
+
+    private static String field(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf('\n') != -1) {
+            throw new IllegalArgumentException("token fields must not contain line breaks");
+        }
+        return value;
+    }
+
+    private static String value(String field) {
+        return field.isEmpty() ? null : field;
+    }
+
+    /**
+     * 单个密钥，Mac按线程缓存
+     */
+    private static final class SigningKey {
+
+        private final String id;
+
+        private final ThreadLocal<Mac> macs;
+
+        private SigningKey(String id, byte[] secret) {
+            this.id = id;
+            SecretKeySpec spec = new SecretKeySpec(secret, ALGORITHM);
+            this.macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(ALGORITHM);
+                    mac.init(spec);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("unable to initialize " + ALGORITHM, e);
+                }
+            });
+        }
+
+        private Mac mac() {
+            return macs.get();
+        }
+    }
+}
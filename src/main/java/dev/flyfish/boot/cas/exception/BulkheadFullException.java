@@ -0,0 +1,15 @@
+package dev.flyfish.boot.cas.exception;
+
+import java.time.Duration;
+
+/**
+ * 并发校验已满，排队已满或排队超时
+ *
+ * @author wangyu
+ */
+public class BulkheadFullException extends ValidationRejectedException {
+
+    public BulkheadFullException(String message, Duration retryAfter) {
+        super(message, retryAfter);
+    }
+}
@@ -0,0 +1,13 @@
+package dev.flyfish.boot.cas.exception;
+
+/**
+ * cas服务器不可用：连接失败、超时或响应异常，与票据本身无关
+ *
+ * @author wangyu
+ */
+public class CASUnavailableException extends CASAuthenticationException {
+
+    public CASUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
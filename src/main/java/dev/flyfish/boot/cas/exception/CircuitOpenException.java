@@ -0,0 +1,18 @@
+package dev.flyfish.boot.cas.exception;
+
+import java.time.Duration;
+
+/**
+ * 熔断器打开，校验未发出即失败
+ *
+ * @author wangyu
+ */
+public class CircuitOpenException extends ValidationRejectedException {
+
+    /**
+     * @param retryAfter 距离允许试探的剩余时间
+     */
+    public CircuitOpenException(Duration retryAfter) {
+        super("CAS validation circuit breaker is open, retry after " + retryAfter, retryAfter);
+    }
+}
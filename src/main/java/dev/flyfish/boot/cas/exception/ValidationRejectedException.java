@@ -0,0 +1,22 @@
+package dev.flyfish.boot.cas.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * 校验未发出即被拒绝，票据未被消费
+ *
+ * @author wangyu
+ */
+@Getter
+public class ValidationRejectedException extends CASUnavailableException {
+
+    // 建议客户端的重试间隔
+    private final Duration retryAfter;
+
+    public ValidationRejectedException(String message, Duration retryAfter) {
+        super(message, null);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -2,17 +2,31 @@ package dev.flyfish.boot.cas.filter;
 
 import dev.flyfish.boot.cas.context.CASContext;
 import dev.flyfish.boot.cas.context.CASContextInit;
+import dev.flyfish.boot.cas.context.CASQuery;
 import dev.flyfish.boot.cas.context.CASReceipt;
 import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.context.UserSessionIndex;
+import dev.flyfish.boot.cas.context.proxy.ProxyGrantingTicketStorage;
+import dev.flyfish.boot.cas.context.proxy.ProxyReceiptCache;
+import dev.flyfish.boot.cas.context.token.CASToken;
+import dev.flyfish.boot.cas.context.token.StatelessTokens;
 import dev.flyfish.boot.cas.exception.CASAuthenticationException;
-import dev.flyfish.boot.cas.validator.ProxyTicketValidator;
-import dev.flyfish.boot.cas.validator.XmlUtils;
+import dev.flyfish.boot.cas.exception.CircuitOpenException;
+import dev.flyfish.boot.cas.exception.ValidationRejectedException;
+import dev.flyfish.boot.cas.metrics.CASMetrics;
+import dev.flyfish.boot.cas.metrics.CASObservations;
+import dev.flyfish.boot.cas.metrics.FilterOutcome;
+import dev.flyfish.boot.cas.validator.LogoutRequestDecoder;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpCookie;
-import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
-import org.springframework.util.CollectionUtils;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
@@ -22,11 +36,10 @@ import reactor.core.publisher.Mono;
 
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * cas filter的webflux实现
@@ -54,14 +67,55 @@ public class CASFilter implements WebFilter {
     static final String CAS_FILTER_USERLOGINMARK = "edu.yale.its.tp.cas.client.filter.userLoginMark";
     static final String CAS_FILTER_EXCLUSION = "edu.yale.its.tp.cas.client.filter.filterExclusion";
 
+    // cas协议约定代理票据以此开头
+    private static final String PROXY_TICKET_PREFIX = "PT-";
+
+    private static final byte[] PROXY_CALLBACK_RESPONSE = ("<?xml version=\"1.0\"?><casClient:proxySuccess "
+            + "xmlns:casClient=\"http://www.yale.edu/tp/casClient\"/>").getBytes(StandardCharsets.UTF_8);
+
     private final CASParameter parameter;
     private final CASContextInit initializer;
+    private final ReactiveTicketValidator validator;
+    private final LogoutRequestDecoder logoutRequestDecoder;
+    private final LogoutEndpoint logoutEndpoint;
+    private final RouteTable routeTable;
+    private final CASUrlTemplates urlTemplates;
     @Getter
-    private final SessionMappingStorage sessionMappingStorage = new SessionMappingStorage.HashMapBackedSessionStorage();
+    private final SessionMappingStorage sessionMappingStorage;
+    private final StatelessTokens tokens;
+    @Setter
+    private CASMetrics metrics = CASMetrics.NOOP;
+    @Setter
+    private CASObservations observations = CASObservations.NOOP;
+    // 代理回调地址的路径，未配置代理时为空
+    private final String proxyCallbackPath;
+    @Setter
+    private ProxyGrantingTicketStorage proxyGrantingTicketStorage;
+    private final ProxyReceiptCache proxyReceipts;
+    // 用户名到session的索引，未启用时为空
+    @Setter
+    private UserSessionIndex userSessionIndex;
+
+    public CASFilter(CASParameter parameter, ReactiveTicketValidator validator, SessionMappingStorage sessionMappingStorage) {
+        this(parameter, validator, sessionMappingStorage, null);
+    }
 
-    public CASFilter(CASParameter parameter) {
+    /**
+     * @param tokens 无状态令牌，为空时使用session保存登录状态
+     */
+    public CASFilter(CASParameter parameter, ReactiveTicketValidator validator, SessionMappingStorage sessionMappingStorage,
+                     StatelessTokens tokens) {
         this.parameter = parameter.checked();
+        this.tokens = tokens;
         this.initializer = createInitializer();
+        this.validator = validator;
+        this.sessionMappingStorage = sessionMappingStorage;
+        this.logoutRequestDecoder = new LogoutRequestDecoder(parameter.logout.maxPayloadLength);
+        this.logoutEndpoint = new LogoutEndpoint(parameter.logout);
+        this.routeTable = RouteTable.compile(parameter);
+        this.urlTemplates = new CASUrlTemplates(parameter);
+        this.proxyCallbackPath = parameter.casProxyCallbackUrl != null ? URI.create(parameter.casProxyCallbackUrl).getPath() : null;
+        this.proxyReceipts = new ProxyReceiptCache(parameter.proxy.getReceiptTimeToLive(), parameter.proxy.getMaxReceipts());
     }
 
     private CASContextInit createInitializer() {
@@ -83,50 +137,52 @@ public class CASFilter implements WebFilter {
         return null;
     }
 
-    private boolean isReceiptAcceptable(CASReceipt receipt) {
+    private boolean isReceiptAcceptable(CASContext context, CASReceipt receipt) {
         if (receipt == null) {
             throw new IllegalArgumentException("Cannot evaluate a null receipt.");
-        } else if (parameter.casRenew && !receipt.isPrimaryAuthentication()) {
+        } else if (context.isRenew() && !receipt.isPrimaryAuthentication()) {
             return false;
         } else {
             return !receipt.isProxied() || parameter.authorizedProxies.contains(receipt.getProxyingService());
         }
     }
 
-    private CASReceipt getAuthenticatedUser(CASContext context) throws CASAuthenticationException {
-        log.trace("entering getAuthenticatedUser()");
-        ProxyTicketValidator pv = new ProxyTicketValidator();
-        pv.setCasValidateUrl(parameter.casValidate);
-        pv.setServiceTicket(context.getTicket());
-        pv.setService(this.getService(context));
-        pv.setRenew(parameter.casRenew);
-        if (parameter.casProxyCallbackUrl != null) {
-            pv.setProxyCallbackUrl(parameter.casProxyCallbackUrl);
+    private boolean isTokenAcceptable(RoutePolicy policy, CASToken token) {
+        if (policy == RoutePolicy.RENEW && !token.primary()) {
+            return false;
         }
-
-        log.debug("about to validate ProxyTicketValidator: [{}]", pv);
-
-        return CASReceipt.getReceipt(pv);
+        return !token.isProxied() || parameter.authorizedProxies.contains(token.proxyingService());
     }
 
-    private String getService(CASContext context) {
-        log.trace("entering getService()");
-
-        if (parameter.casServerName == null && parameter.casServiceUrl == null) {
-            throw new IllegalArgumentException("need one of the following configuration parameters: edu.yale.its.tp.cas.client.filter.serviceUrl or edu.yale.its.tp.cas.client.filter.serverName");
+    /**
+     * 把令牌中的用户信息放入请求属性，供参数解析等后续处理使用
+     */
+    private static void applyToken(ServerWebExchange exchange, CASToken token) {
+        Map<String, Object> attributes = exchange.getAttributes();
+        attributes.put(CASToken.ATTRIBUTE, token);
+        attributes.put(CAS_FILTER_USER, token.user());
+        if (token.principal() != null) {
+            attributes.put(CASLoginFilter.CONST_CAS_USERNAME, token.principal());
         }
+    }
 
-        String serviceString;
-        if (parameter.casServiceUrl != null) {
-            serviceString = URLEncoder.encode(parameter.casServiceUrl, StandardCharsets.UTF_8);
-        } else {
-            serviceString = computeService(context, parameter.getFullServerUrl());
-        }
+    /**
+     * 非阻塞校验票据，失败时以 {@link CASAuthenticationException} 结束
+     *
+     * @param context 上下文
+     * @return 校验结果
+     */
+    private Mono<CASReceipt> getAuthenticatedUser(CASContext context) {
+        log.trace("entering getAuthenticatedUser()");
+        return validator.validate(context.getTicket(), this.getService(context), context.isRenew());
+    }
 
+    private String getService(CASContext context) {
+        String service = urlTemplates.service(context.getRequest(), context.getQuery());
         if (log.isTraceEnabled()) {
-            log.trace("returning from getService() with service [{}]", serviceString);
+            log.trace("returning from getService() with service [{}]", service);
         }
-        return serviceString;
+        return service;
     }
 
     /**
@@ -137,41 +193,11 @@ public class CASFilter implements WebFilter {
      * @return 结果
      */
     public String computeService(CASContext context, String server) {
-        if (log.isTraceEnabled()) {
-            log.trace("entering getService({}, {})", context, server);
-        }
-
         if (server == null) {
             log.error("getService() argument \"server\" was illegally null.");
             throw new IllegalArgumentException("name of server is required");
         }
-
-        URI uri = context.getRequest().getURI();
-
-        StringBuilder sb = new StringBuilder(server).append(uri.getPath());
-
-        if (uri.getQuery() != null) {
-            String query = uri.getQuery();
-
-            int ticketLoc = query.indexOf("ticket=");
-            if (ticketLoc == -1) {
-                sb.append("?").append(query);
-            } else if (ticketLoc > 0) {
-                ticketLoc = query.indexOf("&ticket=");
-                if (ticketLoc == -1) {
-                    sb.append("?").append(query);
-                } else if (ticketLoc > 0) {
-                    sb.append("?").append(query, 0, ticketLoc);
-                }
-            }
-        }
-
-        String encodedService = URLEncoder.encode(sb.toString(), StandardCharsets.UTF_8);
-        if (log.isTraceEnabled()) {
-            log.trace("returning from getService() with encoded service [{}]", encodedService);
-        }
-
-        return encodedService;
+        return urlTemplates.service(context.getRequest(), context.getQuery(), server);
     }
 
     /**
@@ -185,70 +211,226 @@ public class CASFilter implements WebFilter {
         String sessionId = context.getSession().getId();
 
         log.trace("entering redirectToCAS()");
+        metrics.onFilter(FilterOutcome.REDIRECT);
 
-        StringBuilder casLoginString = new StringBuilder()
-                .append(parameter.casLogin)
-                .append("?service=").append(this.getService(context))
-                .append(parameter.casRenew ? "&renew=true" : "")
-                .append(parameter.casGateway ? "&gateway=true" : "");
-
-        if (StringUtils.hasText(sessionId)) {
-            String appId = parameter.casServerName + request.getPath().contextPath().value();
-            casLoginString.append("&appId=").append(URLEncoder.encode(appId, StandardCharsets.UTF_8))
-                    .append("&sessionId=").append(sessionId);
-        }
-
+        // 携带的旧session已超时
+        String timeout = null;
         List<HttpCookie> cookies = request.getCookies().get("JSESSIONID");
-        if (!CollectionUtils.isEmpty(cookies)) {
-            cookies.stream()
-                    .filter(Objects::nonNull)
-                    .map(HttpCookie::getValue)
-                    .filter(cookie -> !cookie.equals("null") && !cookie.equals(sessionId))
-                    .peek(cookie -> log.debug("Session is timeout. The timeout session is {}", cookie))
-                    .findFirst()
-                    .ifPresent(cookie -> casLoginString.append("&timeOut=").append(cookie));
+        if (cookies != null) {
+            for (HttpCookie cookie : cookies) {
+                String value = cookie == null ? null : cookie.getValue();
+                if (value != null && !value.equals("null") && !value.equals(sessionId)) {
+                    log.debug("Session is timeout. The timeout session is {}", value);
+                    timeout = value;
+                    break;
+                }
+            }
         }
 
+        String casLoginString = urlTemplates.login(request, context.getQuery(), context.isRenew(), context.isGateway(),
+                sessionId, timeout);
+
         log.debug("Redirecting browser to [{})", casLoginString);
         log.trace("returning from redirectToCAS()");
 
-        return context.redirect(casLoginString.toString());
+        return context.redirect(casLoginString);
     }
 
     private Mono<Void> redirectToInitFailure(CASContext context, String cause) {
         log.trace("entering redirectToInitFailure()");
+        metrics.onFilter(FilterOutcome.INIT_FAILURE);
 
-        String casLoginString = parameter.casLogin + "?action=initFailure";
-        if (cause != null && cause.equals("Illegal user")) {
-            casLoginString += "&userIllegal=true";
-        }
-
-        String locale = context.getQuery("locale");
-        if (locale != null) {
-            casLoginString += "&locale=" + locale;
-        }
+        String casLoginString = urlTemplates.initFailure("Illegal user".equals(cause), context.getQuery().getLocale());
 
         log.debug("Redirecting browser to [{})", casLoginString);
         log.trace("returning from redirectToInitFailure()");
         return context.redirect(casLoginString);
     }
 
-    private boolean isExclusion(String url) {
-        if (parameter.exclusions == null) {
-            return false;
-        } else {
-            return parameter.exclusions.contains(url);
+    /**
+     * 校验未发出即被拒绝时快速失败：熔断时跳转降级页面，未配置或并发已满时响应503
+     * 此时票据未被消费，不再跳转cas，避免cas不可用时反复重定向
+     *
+     * @param context 上下文
+     * @param e       拒绝原因
+     * @return 结果
+     */
+    private Mono<Void> onRejected(CASContext context, ValidationRejectedException e) {
+        log.debug(e.getMessage());
+        boolean circuitOpen = e instanceof CircuitOpenException;
+        metrics.onFilter(circuitOpen ? FilterOutcome.UNAVAILABLE : FilterOutcome.SHED);
+        String fallbackUrl = parameter.client.getBreaker().getFallbackUrl();
+        if (circuitOpen && StringUtils.hasText(fallbackUrl)) {
+            return context.redirect(fallbackUrl);
         }
+        ServerHttpResponse response = context.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        // 向上取整到秒，至少为1
+        long seconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        return response.setComplete();
     }
 
-    private Mono<Void> translate(CASContext context) {
-        // 是代理回调地址，通过
-        if (parameter.casProxyCallbackUrl != null && parameter.casProxyCallbackUrl.endsWith(context.getPath())
-                && context.getQuery("pgtId") != null && context.getQuery("pgtIou") != null) {
-            log.trace("passing through what we hope is CAS's request for proxy ticket receptor.");
-            return context.filter();
+    /**
+     * 票据校验通过后的处理，记录receipt并初始化上下文
+     *
+     * @param context 上下文
+     * @param receipt 校验结果
+     * @return 结果
+     */
+    private Mono<Void> onAuthenticated(CASContext context, CASReceipt receipt) {
+        if (!this.isReceiptAcceptable(context, receipt)) {
+            throw new IllegalStateException("Authentication was technically successful but rejected as a matter of policy. [" + receipt + "]");
         }
 
+        resolveProxyGrantingTicket(receipt);
+
+        if (null == initializer) {
+            return onInitialized(context, receipt, null);
+        }
+        // 初始化单独观测，后续处理延迟到观测结束后执行
+        return observations.observeSync(CASObservations.CONTEXT_INIT, () -> initialize(context, receipt))
+                .flatMap(Function.identity());
+    }
+
+    /**
+     * 取回cas在校验前回调的pgt
+     */
+    private void resolveProxyGrantingTicket(CASReceipt receipt) {
+        if (receipt.getPgtIou() != null && proxyGrantingTicketStorage != null) {
+            receipt.setProxyGrantingTicket(proxyGrantingTicketStorage.retrieve(receipt.getPgtIou()));
+        }
+    }
+
+    /**
+     * 携带代理票据的请求，通常来自其他服务的代理调用
+     * 校验结果按 票据+服务 放入共享缓存，不写入session，代理方在有效期内重复使用同一票据时不再校验
+     *
+     * @param context     上下文
+     * @param proxyTicket 代理票据
+     * @return 结果
+     */
+    private Mono<Void> authenticateProxy(CASContext context, String proxyTicket) {
+        String service = this.getService(context);
+        ProxyReceiptCache.Grant cached = proxyReceipts.get(proxyTicket, service);
+        if (cached != null && this.isReceiptAcceptable(context, cached.receipt())) {
+            log.trace("proxy ticket [{}] was validated before - passing request through filter.", proxyTicket);
+            applyGrant(context.getExchange(), cached);
+            return pass(context);
+        }
+        return validator.validate(proxyTicket, service, context.isRenew())
+                .onErrorResume(ValidationRejectedException.class, e -> this.onRejected(context, e).then(Mono.empty()))
+                .onErrorResume(CASAuthenticationException.class, e -> {
+                    log.debug(e.getMessage(), e);
+                    return this.redirectToCAS(context).then(Mono.empty());
+                })
+                .flatMap(receipt -> {
+                    if (!this.isReceiptAcceptable(context, receipt)) {
+                        throw new IllegalStateException("Authentication was technically successful but rejected as a matter of policy. [" + receipt + "]");
+                    }
+                    resolveProxyGrantingTicket(receipt);
+                    ProxyReceiptCache.Grant grant;
+                    try {
+                        grant = new ProxyReceiptCache.Grant(receipt,
+                                initializer == null ? null : initializer.getTranslatorUser(receipt.getUserName()));
+                    } catch (Exception e) {
+                        String cause = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+                        return this.redirectToInitFailure(context, cause);
+                    }
+                    proxyReceipts.put(proxyTicket, service, grant);
+                    applyGrant(context.getExchange(), grant);
+                    return pass(context);
+                });
+    }
+
+    /**
+     * 把代理调用的用户信息放入请求属性
+     */
+    private static void applyGrant(ServerWebExchange exchange, ProxyReceiptCache.Grant grant) {
+        Map<String, Object> attributes = exchange.getAttributes();
+        attributes.put(CAS_FILTER_RECEIPT, grant.receipt());
+        attributes.put(CAS_FILTER_USER, grant.receipt().getUserName());
+        if (grant.principal() != null) {
+            attributes.put(CASLoginFilter.CONST_CAS_USERNAME, grant.principal());
+        }
+    }
+
+    /**
+     * 代理票据优先取pt参数，其次是以 PT- 开头的ticket
+     */
+    private static String proxyTicket(CASQuery query) {
+        if (query.getProxyTicket() != null) {
+            return query.getProxyTicket();
+        }
+        String ticket = query.getTicket();
+        return ticket != null && ticket.startsWith(PROXY_TICKET_PREFIX) ? ticket : null;
+    }
+
+    /**
+     * 尝试转换用户名并初始化上下文
+     *
+     * @param context 上下文
+     * @param receipt 校验结果
+     * @return 后续处理
+     */
+    private Mono<Void> initialize(CASContext context, CASReceipt receipt) {
+        // 获取到用户名
+        String userName = receipt.getUserName();
+        try {
+            String translated = initializer.getTranslatorUser(userName);
+            log.debug("translated username: {} to {}", userName, translated);
+            initializer.initContext(context, translated, receipt);
+            return Mono.defer(() -> onInitialized(context, receipt, translated));
+        } catch (Exception e) {
+            String cause = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+            context.setSessionAttribute("initFailure", cause);
+            return this.redirectToInitFailure(context, cause);
+        }
+    }
+
+    /**
+     * 初始化完成，记录登录状态并放行
+     *
+     * @param context    上下文
+     * @param receipt    校验结果
+     * @param translated 转换后的用户名，未配置初始化时为空
+     * @return 结果
+     */
+    private Mono<Void> onInitialized(CASContext context, CASReceipt receipt, String translated) {
+        String userName = receipt.getUserName();
+        Map<String, Object> sessionAttributes = context.getSession().getAttributes();
+        sessionAttributes.put(CAS_FILTER_USER, userName);
+        sessionAttributes.put(CAS_FILTER_RECEIPT, receipt);
+        sessionAttributes.remove(CAS_FILTER_GATEWAYED);
+
+        if (log.isTraceEnabled()) {
+            log.trace("validated ticket to get authenticated receipt [{}], now passing request along filter chain.", receipt);
+            log.trace("returning from doFilter()");
+        }
+
+        // 无状态模式签发令牌，不再保留session
+        if (context.isStateless()) {
+            CASToken token = tokens.create(receipt, translated, context.getTicket());
+            tokens.issue(context.getExchange(), token);
+            applyToken(context.getExchange(), token);
+            return context.getSession().invalidate().then(Mono.defer(() -> pass(context)));
+        }
+
+        if (userSessionIndex != null) {
+            return userSessionIndex.register(userName, context.getSession()).then(Mono.defer(() -> pass(context)));
+        }
+        return pass(context);
+    }
+
+    /**
+     * 放行请求并记录
+     */
+    private Mono<Void> pass(CASContext context) {
+        metrics.onFilter(FilterOutcome.PASS_THROUGH);
+        return context.filter();
+    }
+
+    private Mono<Void> translate(CASContext context) {
         // 请求包装，增强请求并完成自定义功能
         if (parameter.wrapRequest) {
             log.trace("Wrapping request with CASFilterRequestWrapper.");
@@ -261,66 +443,32 @@ public class CASFilter implements WebFilter {
 
         // 使用了用户标记，快速跳过
         if (parameter.userLoginMark != null && session.getAttribute(parameter.userLoginMark) != null) {
-            return context.filter();
+            return pass(context);
         }
 
         // 获取receipt，若存在，则通过
         CASReceipt receipt = session.getAttribute(CAS_FILTER_RECEIPT);
-        if (receipt != null && this.isReceiptAcceptable(receipt)) {
+        if (receipt != null && this.isReceiptAcceptable(context, receipt)) {
             log.trace("CAS_FILTER_RECEIPT attribute was present and acceptable - passing  request through filter..");
-            return context.filter();
-        }
-
-        // 命中排除地址，跳过请求
-        if (this.isExclusion(context.getPath())) {
-            return context.filter();
+            sessionMappingStorage.touch(session.getId());
+            // 从文件恢复的session在重启后首次访问时重新登记
+            if (userSessionIndex != null && !userSessionIndex.contains(session.getId())) {
+                return userSessionIndex.recover(receipt.getUserName(), session).then(Mono.defer(() -> pass(context)));
+            }
+            return pass(context);
         }
 
         // 判断票据
         String ticket = context.getTicket();
         // 存在票据时，验证票据
         if (StringUtils.hasText(ticket)) {
-            try {
-                receipt = this.getAuthenticatedUser(context);
-            } catch (CASAuthenticationException e) {
-                return this.redirectToCAS(context);
-            }
-
-            if (!this.isReceiptAcceptable(receipt)) {
-                throw new IllegalStateException("Authentication was technically successful but rejected as a matter of policy. [" + receipt + "]");
-            }
-
-            // 记录receipt
-            String pt = context.getQuery("pt");
-            if (StringUtils.hasText(pt)) {
-                context.setSessionAttribute(pt, receipt);
-            }
-
-            // 获取到用户名
-            String userName = receipt.getUserName();
-            // 尝试初始化
-            if (null != initializer) {
-                try {
-                    String translated = initializer.getTranslatorUser(userName);
-                    log.debug("translated username: {} to {}", userName, translated);
-                    initializer.initContext(context, translated);
-                } catch (Exception e) {
-                    String cause = e.getCause().getMessage();
-                    context.setSessionAttribute("initFailure", cause);
-                    return this.redirectToInitFailure(context, cause);
-                }
-            }
-
-            sessionAttributes.put(CAS_FILTER_USER, userName);
-            sessionAttributes.put(CAS_FILTER_RECEIPT, receipt);
-            sessionAttributes.remove(CAS_FILTER_GATEWAYED);
-
-            if (log.isTraceEnabled()) {
-                log.trace("validated ticket to get authenticated receipt [{}], now passing request along filter chain.", receipt);
-                log.trace("returning from doFilter()");
-            }
-
-            return context.filter();
+            return this.getAuthenticatedUser(context)
+                    .onErrorResume(ValidationRejectedException.class, e -> this.onRejected(context, e).then(Mono.empty()))
+                    .onErrorResume(CASAuthenticationException.class, e -> {
+                        log.debug(e.getMessage(), e);
+                        return this.redirectToCAS(context).then(Mono.empty());
+                    })
+                    .flatMap(validated -> this.onAuthenticated(context, validated));
         }
 
         // 不存在票据，跳转验证
@@ -338,7 +486,7 @@ public class CASFilter implements WebFilter {
         }
 
         log.trace("Previously gatewayed.");
-        if (!parameter.casGateway && session.getAttribute(CAS_FILTER_USER) == null) {
+        if (!context.isGateway() && session.getAttribute(CAS_FILTER_USER) == null) {
             if (session.getAttribute("initFailure") != null) {
                 String cause = session.getAttribute("initFailure");
                 return this.redirectToInitFailure(context, cause);
@@ -349,7 +497,7 @@ public class CASFilter implements WebFilter {
         }
 
         log.trace("casGateway was true and CAS_FILTER_USER set: passing request along filter chain.");
-        return context.filter();
+        return pass(context);
     }
 
     /**
@@ -359,62 +507,117 @@ public class CASFilter implements WebFilter {
      * @return 结果
      */
     private Mono<Void> handle(CASContext context) {
-        // 优先处理token请求
+        // 优先处理token请求，签发令牌时不需要记录session映射，吊销记录已满而不签发时仍需记录
         if (context.isTokenRequest()) {
+            context.setStateless(tokens != null && tokens.canIssue());
+        }
+        if (context.isTokenRequest() && !context.isStateless()) {
             String sessionId = context.getSession().getId();
             log.debug("Storing session identifier for {}", sessionId);
 
             // 包括ticket，尝试重新替换session
-            return sessionMappingStorage.removeBySessionById(sessionId)
+            Mono<Void> mapping = sessionMappingStorage.removeBySessionById(sessionId)
                     .onErrorContinue((e, v) -> log.debug("error when remove session"))
-                    .then(Mono.defer(() -> sessionMappingStorage.addSessionById(context.getTicket(), context.getSession())
-                            .then(translate(context))));
-        }
-        // post请求需要特殊处理
-        if (context.getMethod() == HttpMethod.POST) {
-            // 通过form表单获取注销请求，处理注销逻辑
-            return context.getFormData("logoutRequest")
-                    .doOnNext(payload -> log.trace("Logout request=[{}]", payload))
-                    .defaultIfEmpty("")
-                    .flatMap(payload -> {
-                        if (StringUtils.hasText(payload)) {
-                            String token = XmlUtils.getTextForElement(payload, "SessionIndex");
-                            if (StringUtils.hasText(token)) {
-                                // 满足条件时断路
-                                return sessionMappingStorage.removeSessionByMappingId(token)
-                                        .doOnNext(session -> log.debug("Invalidating session [{}] for ST [{}]", session.getId(), token))
-                                        .flatMap(WebSession::invalidate)
-                                        .doOnError(IllegalStateException.class, e -> log.debug(e.getMessage(), e))
-                                        .onErrorComplete();
-                            }
-                        }
-                        // 继续执行
-                        return translate(context);
-                    });
+                    .then(Mono.defer(() -> sessionMappingStorage.addSessionById(context.getTicket(), context.getSession())));
+            return observations.observe(CASObservations.SESSION_MAPPING, mapping)
+                    .then(Mono.defer(() -> translate(context)));
         }
         return translate(context);
     }
 
 
-    @Override
-    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    /**
+     * 处理注销回调，不是注销回调时继续常规流程
+     *
+     * @param body  已读取的请求体
+     * @param chain 过滤链
+     * @return 结果
+     */
+    private Mono<Void> logout(LogoutEndpoint.Body body, WebFilterChain chain) {
+        String payload = body.logoutRequest();
+        if (payload != null) {
+            log.trace("Logout request=[{}]", payload);
+            String token = logoutRequestDecoder.decodeSessionIndex(payload);
+            if (StringUtils.hasText(token)) {
+                // 满足条件时断路
+                Mono<Void> invalidation = sessionMappingStorage.removeSessionByMappingId(token)
+                        .doOnNext(session -> {
+                            metrics.onFilter(FilterOutcome.LOGOUT_HANDLED);
+                            log.debug("Invalidating session [{}] for ST [{}]", session.getId(), token);
+                        })
+                        .switchIfEmpty(Mono.fromRunnable(() -> metrics.onFilter(FilterOutcome.LOGOUT_MISS)))
+                        .flatMap(WebSession::invalidate);
+                return observations.observe(CASObservations.LOGOUT, invalidation)
+                        .doOnError(IllegalStateException.class, e -> log.debug(e.getMessage(), e))
+                        .onErrorComplete();
+            }
+        }
+        // 继续执行
+        return authenticate(body.exchange(), chain);
+    }
+
+    /**
+     * 处理cas的代理回调，保存pgtIou与pgt的映射并直接响应，不加载session
+     * cas可能先不带参数访问回调地址以确认其可用
+     *
+     * @param exchange 请求
+     * @return 结果
+     */
+    private Mono<Void> proxyCallback(ServerWebExchange exchange) {
+        CASQuery query = CASQuery.parse(exchange.getRequest().getURI().getRawQuery());
+        if (query.getPgtIou() != null && query.getPgtId() != null && proxyGrantingTicketStorage != null) {
+            log.debug("Received proxy granting ticket for [{}]", query.getPgtIou());
+            proxyGrantingTicketStorage.save(query.getPgtIou(), query.getPgtId());
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_XML);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(PROXY_CALLBACK_RESPONSE)));
+    }
+
+    private Mono<Void> authenticate(ServerWebExchange exchange, WebFilterChain chain) {
+        // 代理回调来自cas服务器，不参与认证
+        if (proxyCallbackPath != null && proxyCallbackPath.equals(exchange.getRequest().getPath().value())) {
+            return proxyCallback(exchange);
+        }
+        // 路由策略优先判定，排除的请求不加载上下文与session
+        RoutePolicy policy = routeTable.resolve(exchange.getRequest());
+        if (policy == RoutePolicy.EXCLUDE) {
+            metrics.onFilter(FilterOutcome.EXCLUDED);
+            return chain.filter(exchange);
+        }
+        // 无状态模式，令牌有效时只在内存中校验，不读取session
+        if (tokens != null) {
+            CASToken token = tokens.resolve(exchange.getRequest());
+            if (token != null && isTokenAcceptable(policy, token)) {
+                applyToken(exchange, token);
+                metrics.onFilter(FilterOutcome.PASS_THROUGH);
+                return chain.filter(exchange);
+            }
+        }
         // 拦截器需要基于session判定，故提前使用
         return CASContext.create(exchange, chain)
                 .flatMap(context -> {
-                    WebSession session = context.getSession();
+                    context.setPolicy(policy);
                     if (log.isTraceEnabled()) {
                         log.trace("entering doFilter()");
                     }
-                    // 执行跳过策略
-                    String pt = context.getQuery("pt");
-                    if (StringUtils.hasText(pt)) {
-                        if (session.getAttribute(pt) != null) {
-                            return context.filter();
-                        }
+                    // 代理调用不记录session映射，也不写入session
+                    String pt = proxyTicket(context.getQuery());
+                    if (pt != null) {
+                        return authenticateProxy(context, pt);
                     }
                     return handle(context);
                 });
     }
 
-
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // 只有可能是注销回调的请求才读取请求体
+        if (logoutEndpoint.matches(exchange.getRequest())) {
+            return logoutEndpoint.read(exchange)
+                    .flatMap(body -> logout(body, chain));
+        }
+        return authenticate(exchange, chain);
+    }
 }
@@ -3,19 +3,28 @@ package dev.flyfish.boot.cas.filter;
 import com.fasterxml.jackson.annotation.JsonAlias;
 import lombok.Data;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.UUID;
 
 @Data
 public class CASParameter {
 
-    // 排除的过滤地址
+    // 排除的过滤地址，精确匹配，新配置请使用routes
     @JsonAlias(CASFilter.CAS_FILTER_EXCLUSION)
     Set<String> exclusions;
 
+    // 路由策略，启动时编译
+    List<Route> routes = new ArrayList<>();
+
     @JsonAlias(CASFilter.LOGIN_INIT_PARAM)
     String casLogin;
 
@@ -52,6 +61,30 @@ public class CASParameter {
     @JsonAlias(CASFilter.AUTHORIZED_PROXY_INIT_PARAM)
     List<String> authorizedProxies = new ArrayList<>();
 
+    // 票据校验客户端配置
+    Client client = new Client();
+
+    // 单点注销配置
+    Logout logout = new Logout();
+
+    // 票据与session映射的存储配置
+    SessionMapping sessionMapping = new SessionMapping();
+
+    // session存储配置，超时与最大session数沿用 server.reactive.session
+    SessionStore sessionStore = new SessionStore();
+
+    // 用户名到session的索引配置
+    UserSessions userSessions = new UserSessions();
+
+    // 集群注销配置，仅在存在LogoutTransport时生效
+    Cluster cluster = new Cluster();
+
+    // 无状态令牌配置
+    Token token = new Token();
+
+    // 代理配置，代理授权票据相关的配置仅在配置了casProxyCallbackUrl时生效
+    Proxy proxy = new Proxy();
+
     public void setAuthorizedProxies(String casAuthorizedProxy) {
         if (casAuthorizedProxy != null) {
             StringTokenizer casProxies = new StringTokenizer(casAuthorizedProxy);
@@ -85,4 +118,336 @@ public class CASParameter {
         }
         return this;
     }
+
+    /**
+     * 路由策略，所有条件同时满足时生效
+     */
+    @Data
+    public static class Route {
+
+        // 路径模式，支持PathPattern语法，如 /static/**、/api/{id}，包含context path
+        List<String> patterns = new ArrayList<>();
+
+        // 请求方法，为空时匹配全部
+        Set<String> methods = new LinkedHashSet<>();
+
+        // 请求头条件，值为正则，为空或*时只要求存在
+        // 请求头可被客户端伪造，不要用于exclude、gateway等降低鉴权的策略，除非可信代理会移除外部请求的该请求头
+        Map<String, String> headers = new LinkedHashMap<>();
+
+        // 命中后的策略
+        RoutePolicy policy = RoutePolicy.AUTHENTICATE;
+    }
+
+    /**
+     * 票据校验所使用的非阻塞http客户端配置
+     */
+    @Data
+    public static class Client {
+
+        // 建立连接超时
+        Duration connectTimeout = Duration.ofSeconds(5);
+
+        // 读取响应超时
+        Duration readTimeout = Duration.ofSeconds(10);
+
+        // 连接池最大连接数
+        int maxConnections = 200;
+
+        // 等待获取连接的最大排队数
+        int pendingAcquireMaxCount = 1000;
+
+        // 等待获取连接的超时时间
+        Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        // 空闲连接最大保留时间
+        Duration maxIdleTime = Duration.ofSeconds(30);
+
+        // 校验响应的最大长度
+        DataSize maxResponseSize = DataSize.ofKilobytes(256);
+
+        // 可复用的解析状态数量
+        int parserPoolSize = 64;
+
+        // 校验响应格式，JSON需要cas服务端支持format参数
+        Format format = Format.XML;
+
+        // 单次校验的总时限，包括连接、重试与读取响应，不包括并发限制的排队
+        Duration deadline = Duration.ofSeconds(15);
+
+        // 并发校验限制
+        Bulkhead bulkhead = new Bulkhead();
+
+        // 熔断配置
+        Breaker breaker = new Breaker();
+
+        // 连接失败的重试配置
+        Retry retry = new Retry();
+
+        /**
+         * 校验响应格式
+         */
+        public enum Format {
+            XML, JSON
+        }
+
+        /**
+         * 并发校验限制，超出时排队，队列已满或排队超时的请求直接响应503
+         */
+        @Data
+        public static class Bulkhead {
+
+            // 是否启用
+            boolean enabled = true;
+
+            // 最大并发校验数，应小于连接池最大连接数
+            int maxConcurrent = 100;
+
+            // 最大排队数
+            int maxQueue = 500;
+
+            // 最长排队时间，同时作为503响应的Retry-After
+            Duration queueTimeout = Duration.ofSeconds(2);
+        }
+
+        /**
+         * 熔断配置，cas不可用的比例过高时直接失败，不再等待超时
+         */
+        @Data
+        public static class Breaker {
+
+            // 是否启用
+            boolean enabled = true;
+
+            // 统计最近多少次调用
+            int windowSize = 50;
+
+            // 至少统计多少次调用后才会打开
+            int minimumCalls = 20;
+
+            // 打开的失败率阈值，0到1
+            double failureRateThreshold = 0.5;
+
+            // 打开后经过多久进入半开状态
+            Duration openDuration = Duration.ofSeconds(30);
+
+            // 半开状态放行的试探调用数
+            int halfOpenCalls = 3;
+
+            // 打开时跳转的降级页面，为空时响应503
+            String fallbackUrl;
+        }
+
+        /**
+         * 重试配置，只重试未建立连接的调用，请求一旦发出票据即可能已被消费，不再重试
+         */
+        @Data
+        public static class Retry {
+
+            // 单次校验的最大重试次数，0为不重试
+            int maxAttempts = 1;
+
+            // 重试前的等待时间
+            Duration backoff = Duration.ofMillis(50);
+
+            // 每次校验积攒的重试令牌数
+            double budgetRatio = 0.1;
+
+            // 最多积攒的重试令牌数
+            int budget = 10;
+        }
+    }
+
+    /**
+     * cas服务器回调的单点注销配置
+     */
+    @Data
+    public static class Logout {
+
+        // 注销回调地址，支持PathPattern语法，为空时任意路径的表单POST都会被检查
+        String path;
+
+        // 注销回调请求体的最大长度，超出时响应413
+        DataSize maxBodySize = DataSize.ofKilobytes(64);
+
+        // 注销报文的最大字符数，超出时直接忽略
+        int maxPayloadLength = 16 * 1024;
+    }
+
+    /**
+     * 代理授权票据与代理票据的配置
+     */
+    @Data
+    public static class Proxy {
+
+        // cas的代理票据地址，为空时由校验地址推导
+        String url;
+
+        // pgtIou到pgt映射的保留时间，cas在返回校验结果之前回调，映射通常很快就会被取走
+        Duration pgtIouTimeToLive = Duration.ofMinutes(1);
+
+        // 最多保存的pgtIou映射数
+        int maxPgtEntries = 10_000;
+
+        // 是否合并同一pgt对同一目标服务的并发申请，共享同一个代理票据，只适用于会缓存代理票据校验结果的目标服务
+        boolean coalesce = false;
+
+        // 作为目标服务时，代理票据校验结果的保留时间，期间代理方可重复使用同一票据
+        Duration receiptTimeToLive = Duration.ofMinutes(5);
+
+        // 最多缓存的代理票据校验结果数
+        int maxReceipts = 10_000;
+    }
+
+    /**
+     * 票据与session映射的存储配置
+     */
+    @Data
+    public static class SessionMapping {
+
+        // 最多保存的票据数
+        int maxEntries = 100_000;
+
+        // 映射的空闲过期时间，为空时使用session超时时间
+        Duration timeToLive;
+    }
+
+    /**
+     * session存储配置
+     */
+    @Data
+    public static class SessionStore {
+
+        // 存储类型
+        Type type = Type.MEMORY;
+
+        // 映射文件所在目录，仅mapped有效
+        String directory = "cas-sessions";
+
+        // 单个映射文件的大小，单个session序列化后不能超过该大小
+        DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        // 文件中已删除记录的占比超过该值时后台整理
+        double compactionThreshold = 0.5;
+
+        // 过期调度的刻度，超时的session最多延迟一个刻度被移除并通知监听器
+        Duration expiryTick = Duration.ofSeconds(1);
+
+        // 分片数，仅sharded有效，0为处理器数的两倍，向上取2的幂
+        int shards = 0;
+
+        // 软水位，占最大session数的比例，超过后由后台淘汰最久未访问的session，仅sharded有效
+        double softWatermark = 0.9;
+
+        // 淘汰时每次随机取样的session数，越大越接近LRU，仅sharded有效
+        int evictionSamples = 5;
+
+        // session事件的投递配置
+        Events events = new Events();
+
+        public enum Type {
+            // 堆内存储，重启后丢失
+            MEMORY,
+            // 分片的堆内存储，达到最大session数时淘汰最久未访问的session，不再拒绝新的session
+            SHARDED,
+            // 属性序列化到内存映射文件，堆内只保留索引，重启后恢复
+            MAPPED
+        }
+
+        /**
+         * session事件的投递配置
+         */
+        @Data
+        public static class Events {
+
+            // 多个监听器之间的调用方式
+            Dispatch dispatch = Dispatch.ORDERED;
+
+            // 是否异步投递，开启后发布事件立即返回，由后台线程成批投递
+            boolean async = false;
+
+            // 异步队列的容量，已满时由发布方直接投递
+            int queueCapacity = 10_000;
+
+            // 异步投递时单批的最大事件数
+            int batchSize = 256;
+
+            public enum Dispatch {
+                // 按声明顺序逐个调用，前一个完成后再调用下一个
+                ORDERED,
+                // 同时调用所有监听器，每个监听器收到的事件仍按发布顺序
+                PARALLEL
+            }
+        }
+    }
+
+    /**
+     * 用户名到session的索引配置，用于按用户注销全部session与限制同时登录数
+     */
+    @Data
+    public static class UserSessions {
+
+        // 是否启用
+        boolean enabled = true;
+
+        // 每个用户的最大session数，超出时注销最早登录的session，0为不限制
+        int maxSessionsPerUser = 0;
+    }
+
+    /**
+     * 集群注销配置
+     */
+    @Data
+    public static class Cluster {
+
+        // 当前节点标识，默认随机生成
+        String nodeId = UUID.randomUUID().toString();
+
+        // 单次广播的最大票据数
+        int batchSize = 100;
+
+        // 攒批的最长等待时间
+        Duration batchWindow = Duration.ofMillis(50);
+
+        // 待广播的最大票据数，广播跟不上时超出的部分被丢弃
+        int maxPending = 10000;
+    }
+
+    /**
+     * 无状态令牌配置，启用后登录完成即销毁session，由签名cookie承载登录状态
+     */
+    @Data
+    public static class Token {
+
+        // 是否启用
+        boolean enabled;
+
+        // cookie名称
+        String cookieName = "CAS_TOKEN";
+
+        // 令牌有效期，过期后重新经过cas认证
+        Duration maxAge = Duration.ofHours(8);
+
+        // 是否仅https传输，为空时根据casServerProtocol判断
+        Boolean secure;
+
+        // cookie的SameSite属性
+        String sameSite = "Lax";
+
+        // 签名密钥，第一个用于签发，其余只用于校验，便于轮换
+        List<Key> keys = new ArrayList<>();
+
+        /**
+         * 签名密钥
+         */
+        @Data
+        public static class Key {
+
+            // 密钥标识，写入令牌
+            String id;
+
+            // 密钥，至少32字节
+            String secret;
+        }
+    }
 }
@@ -0,0 +1,252 @@
+package dev.flyfish.boot.cas.filter;
+
+import dev.flyfish.boot.cas.context.CASQuery;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.StringUtils;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * cas相关地址的模板
+ *
+ * @author wangyu
+ * 登录地址、服务地址中不变的部分在启动时编码好，请求时只编码解码后的路径与查询串，
+ * 写入按线程复用的缓冲区，每次只为最终的字符串分配内存。编码规则与 {@link URLEncoder} 一致。
+ */
+public class CASUrlTemplates {
+
+    private static final String TICKET = "ticket";
+
+    // 超出该容量的缓冲区不再复用
+    private static final int MAX_RETAINED_BUFFER = 8192;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // URLEncoder中无需编码的字符
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = UNRESERVED['-'] = UNRESERVED['*'] = UNRESERVED['_'] = true;
+    }
+
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    // 已编码的固定服务地址，配置了casServiceUrl时使用
+    private final String fixedService;
+
+    // 已编码的 协议://服务名
+    private final String encodedServer;
+
+    // 登录地址 + ?service=
+    private final String loginPrefix;
+
+    // &appId= + 已编码的服务名
+    private final String appIdPrefix;
+
+    private final String initFailurePrefix;
+
+    public CASUrlTemplates(CASParameter parameter) {
+        this.fixedService = parameter.casServiceUrl != null ? URLEncoder.encode(parameter.casServiceUrl, StandardCharsets.UTF_8) : null;
+        String server = parameter.getFullServerUrl();
+        this.encodedServer = server != null ? URLEncoder.encode(server, StandardCharsets.UTF_8) : null;
+        this.loginPrefix = parameter.casLogin + "?service=";
+        this.appIdPrefix = "&appId=" + URLEncoder.encode(String.valueOf(parameter.casServerName), StandardCharsets.UTF_8);
+        this.initFailurePrefix = parameter.casLogin + "?action=initFailure";
+    }
+
+    /**
+     * 计算已编码的服务地址
+     *
+     * @param request 请求
+     * @param query   cas查询参数
+     * @return 去除ticket后的服务地址
+     */
+    public String service(ServerHttpRequest request, CASQuery query) {
+        if (fixedService != null) {
+            return fixedService;
+        }
+        StringBuilder buffer = buffer();
+        appendService(buffer, encodedServer, request.getURI(), query);
+        return release(buffer);
+    }
+
+    /**
+     * 以指定的服务名计算服务地址
+     *
+     * @param request 请求
+     * @param query   cas查询参数
+     * @param server  协议://服务名
+     * @return 去除ticket后的服务地址
+     */
+    public String service(ServerHttpRequest request, CASQuery query, String server) {
+        StringBuilder buffer = buffer();
+        appendService(buffer, URLEncoder.encode(server, StandardCharsets.UTF_8), request.getURI(), query);
+        return release(buffer);
+    }
+
+    /**
+     * 构建跳转cas登录的地址
+     *
+     * @param request   请求
+     * @param query     cas查询参数
+     * @param renew     是否要求重新输入凭证
+     * @param gateway   是否网关模式
+     * @param sessionId 当前session，可为空
+     * @param timeout   已超时的旧session，可为空
+     * @return 地址
+     */
+    public String login(ServerHttpRequest request, CASQuery query, boolean renew, boolean gateway,
+                        String sessionId, String timeout) {
+        StringBuilder buffer = buffer().append(loginPrefix);
+        if (fixedService != null) {
+            buffer.append(fixedService);
+        } else {
+            appendService(buffer, encodedServer, request.getURI(), query);
+        }
+        if (renew) {
+            buffer.append("&renew=true");
+        }
+        if (gateway) {
+            buffer.append("&gateway=true");
+        }
+        if (StringUtils.hasText(sessionId)) {
+            buffer.append(appIdPrefix);
+            encode(buffer, request.getPath().contextPath().value());
+            buffer.append("&sessionId=");
+            encode(buffer, sessionId);
+        }
+        if (timeout != null) {
+            buffer.append("&timeOut=");
+            encode(buffer, timeout);
+        }
+        return release(buffer);
+    }
+
+    /**
+     * 构建初始化失败的跳转地址
+     *
+     * @param illegalUser 是否为非法用户
+     * @param locale      语言，可为空
+     * @return 地址
+     */
+    public String initFailure(boolean illegalUser, String locale) {
+        if (!illegalUser && locale == null) {
+            return initFailurePrefix;
+        }
+        StringBuilder buffer = buffer().append(initFailurePrefix);
+        if (illegalUser) {
+            buffer.append("&userIllegal=true");
+        }
+        if (locale != null) {
+            buffer.append("&locale=");
+            encode(buffer, locale);
+        }
+        return release(buffer);
+    }
+
+    /**
+     * 追加 编码后的(服务名 + 路径 + 去除ticket的查询串)
+     * 与原先一致，编码的是解码后的路径与查询串，已在cas登记的服务地址无需改变
+     */
+    private static void appendService(StringBuilder buffer, String encodedServer, URI uri, CASQuery query) {
+        buffer.append(encodedServer);
+        encode(buffer, uri.getPath());
+        String decoded = uri.getQuery();
+        if (decoded == null || decoded.isEmpty()) {
+            return;
+        }
+        if (!query.hasTicket()) {
+            buffer.append("%3F");
+            encode(buffer, decoded);
+            return;
+        }
+        // 逐个参数复制，只跳过名称恰好为ticket的参数
+        boolean first = true;
+        int length = decoded.length();
+        int start = 0;
+        while (start < length) {
+            int end = decoded.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (end > start && !isTicket(decoded, start, end)) {
+                buffer.append(first ? "%3F" : "%26");
+                encodeRange(buffer, decoded, start, end);
+                first = false;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static boolean isTicket(String query, int start, int end) {
+        int nameEnd = start + TICKET.length();
+        return query.startsWith(TICKET, start) && (nameEnd == end || query.charAt(nameEnd) == '=');
+    }
+
+    private static void encode(StringBuilder buffer, String value) {
+        encodeRange(buffer, value, 0, value.length());
+    }
+
+    /**
+     * 与 {@link URLEncoder#encode(String, java.nio.charset.Charset)} 相同的编码规则，直接写入缓冲区
+     */
+    private static void encodeRange(StringBuilder buffer, String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 128) {
+                if (UNRESERVED[c]) {
+                    buffer.append(c);
+                } else if (c == ' ') {
+                    buffer.append('+');
+                } else {
+                    appendByte(buffer, c);
+                }
+            } else if (c < 0x800) {
+                appendByte(buffer, 0xC0 | (c >> 6));
+                appendByte(buffer, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(buffer, 0xF0 | (codePoint >> 18));
+                appendByte(buffer, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendByte(buffer, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(buffer, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符，与URLEncoder一致替换为?
+                appendByte(buffer, '?');
+            } else {
+                appendByte(buffer, 0xE0 | (c >> 12));
+                appendByte(buffer, 0x80 | ((c >> 6) & 0x3F));
+                appendByte(buffer, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void appendByte(StringBuilder buffer, int b) {
+        buffer.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    private StringBuilder buffer() {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    private String release(StringBuilder buffer) {
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package dev.flyfish.boot.cas.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * cas单点注销回调的识别与读取
+ *
+ * @author wangyu
+ * 只有可能是注销回调的请求才会读取请求体：POST、表单类型、长度在限制内，且命中配置的注销地址。
+ * 未配置注销地址时兼容旧行为，任意路径的表单POST都可能是注销回调，此时还要求声明Content-Length，
+ * 以便不读取请求体就能排除大表单。读取后不是注销回调的请求，请求体与表单数据会重新暴露给后续处理。
+ */
+@Slf4j
+public class LogoutEndpoint {
+
+    static final String LOGOUT_REQUEST = "logoutRequest";
+
+    private final PathPattern path;
+
+    private final int maxBodySize;
+
+    public LogoutEndpoint(CASParameter.Logout logout) {
+        this.path = StringUtils.hasText(logout.path) ? PathPatternParser.defaultInstance.parse(logout.path) : null;
+        this.maxBodySize = Math.toIntExact(logout.maxBodySize.toBytes());
+    }
+
+    /**
+     * 判断请求是否可能是注销回调，不读取请求体
+     *
+     * @param request 请求
+     * @return 是否需要读取请求体
+     */
+    public boolean matches(ServerHttpRequest request) {
+        if (request.getMethod() != HttpMethod.POST) {
+            return false;
+        }
+        HttpHeaders headers = request.getHeaders();
+        MediaType contentType = headers.getContentType();
+        if (contentType == null || !MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(contentType)) {
+            return false;
+        }
+        if (path != null) {
+            return path.matches(request.getPath());
+        }
+        long length = headers.getContentLength();
+        return length >= 0 && length <= maxBodySize;
+    }
+
+    /**
+     * 在长度限制内读取请求体，超出限制时直接响应413
+     *
+     * @param exchange 请求
+     * @return 读取结果，被拒绝时为空
+     */
+    public Mono<Body> read(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getHeaders().getContentLength() > maxBodySize) {
+            return reject(exchange);
+        }
+        Charset charset = charset(request.getHeaders().getContentType());
+        return DataBufferUtils.join(request.getBody(), maxBodySize)
+                .map(buffer -> {
+                    try {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        return bytes;
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .defaultIfEmpty(new byte[0])
+                .map(bytes -> {
+                    MultiValueMap<String, String> form = parseForm(new String(bytes, charset), charset);
+                    String payload = form.getFirst(LOGOUT_REQUEST);
+                    return new Body(StringUtils.hasText(payload) ? payload : null, new BufferedExchange(exchange, bytes, form));
+                })
+                .onErrorResume(DataBufferLimitException.class, e -> reject(exchange));
+    }
+
+    private Mono<Body> reject(ServerWebExchange exchange) {
+        log.warn("Rejecting logout request on [{}], body exceeds the limit of {} bytes",
+                exchange.getRequest().getPath(), maxBodySize);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.PAYLOAD_TOO_LARGE);
+        return response.setComplete().then(Mono.empty());
+    }
+
+    private static Charset charset(MediaType contentType) {
+        return contentType != null && contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+    }
+
+    private static MultiValueMap<String, String> parseForm(String body, Charset charset) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        for (String pair : StringUtils.tokenizeToStringArray(body, "&")) {
+            int eq = pair.indexOf('=');
+            if (eq == -1) {
+                form.add(URLDecoder.decode(pair, charset), null);
+            } else {
+                form.add(URLDecoder.decode(pair.substring(0, eq), charset), URLDecoder.decode(pair.substring(eq + 1), charset));
+            }
+        }
+        return form;
+    }
+
+    /**
+     * 读取结果
+     *
+     * @param logoutRequest 注销报文，不是注销回调时为空
+     * @param exchange      可重复读取请求体的exchange
+     */
+    public record Body(String logoutRequest, ServerWebExchange exchange) {
+    }
+
+    /**
+     * 请求体已被读取的exchange，请求体与表单数据从缓存中提供
+     */
+    private static final class BufferedExchange extends ServerWebExchangeDecorator {
+
+        private final ServerHttpRequest request;
+
+        private final Mono<MultiValueMap<String, String>> formData;
+
+        private BufferedExchange(ServerWebExchange delegate, byte[] body, MultiValueMap<String, String> form) {
+            super(delegate);
+            this.request = new ServerHttpRequestDecorator(delegate.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return Flux.defer(() -> Flux.just(delegate.getResponse().bufferFactory().wrap(body)));
+                }
+            };
+            this.formData = Mono.just(form);
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public Mono<MultiValueMap<String, String>> getFormData() {
+            return formData;
+        }
+    }
+}
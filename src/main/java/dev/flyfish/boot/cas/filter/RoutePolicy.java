@@ -0,0 +1,31 @@
+package dev.flyfish.boot.cas.filter;
+
+/**
+ * 路由的鉴权策略
+ *
+ * @author wangyu
+ * 以请求头为条件的路由不应使用 {@link #EXCLUDE} 或 {@link #GATEWAY}：请求头可被任意客户端伪造，
+ * 除非前置的可信代理会移除外部请求携带的该请求头，否则等同于绕过认证。
+ */
+public enum RoutePolicy {
+
+    /**
+     * 直接放行，不加载上下文与session
+     */
+    EXCLUDE,
+
+    /**
+     * 需要登录
+     */
+    AUTHENTICATE,
+
+    /**
+     * 网关模式，cas未登录时同样放行
+     */
+    GATEWAY,
+
+    /**
+     * 要求重新输入凭证
+     */
+    RENEW
+}
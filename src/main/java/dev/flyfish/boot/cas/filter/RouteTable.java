@@ -0,0 +1,225 @@
+package dev.flyfish.boot.cas.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 启动时编译的路由策略表
+ *
+ * @author wangyu
+ * 不含通配符的路径放入精确匹配表，其余模式按首段字面量分桶，首段即为通配的模式单独存放。
+ * 桶内按 {@link PathPattern#SPECIFICITY_COMPARATOR} 排序，请求只需检查同一首段的少量模式。
+ * 匹配优先级：精确路径 > 更具体的模式 > 声明顺序。未命中时使用全局的默认策略。
+ */
+@Slf4j
+public final class RouteTable {
+
+    private static final CompiledRoute[] EMPTY = new CompiledRoute[0];
+
+    private static final Comparator<CompiledRoute> SPECIFICITY =
+            Comparator.comparing(CompiledRoute::pattern, PathPattern.SPECIFICITY_COMPARATOR)
+                    .thenComparingInt(CompiledRoute::order);
+
+    private final Map<String, CompiledRoute[]> literals;
+
+    private final Map<String, CompiledRoute[]> buckets;
+
+    private final CompiledRoute[] wildcards;
+
+    private final RoutePolicy defaultPolicy;
+
+    private RouteTable(Map<String, CompiledRoute[]> literals, Map<String, CompiledRoute[]> buckets,
+                       CompiledRoute[] wildcards, RoutePolicy defaultPolicy) {
+        this.literals = literals;
+        this.buckets = buckets;
+        this.wildcards = wildcards;
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    /**
+     * 编译路由配置，兼容旧的排除地址
+     *
+     * @param parameter 参数
+     * @return 路由表
+     */
+    public static RouteTable compile(CASParameter parameter) {
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        List<CompiledRoute> routes = new ArrayList<>();
+
+        // 旧的排除地址按原样精确匹配，优先于自定义路由
+        if (parameter.exclusions != null) {
+            for (String exclusion : parameter.exclusions) {
+                routes.add(new CompiledRoute(routes.size(), exclusion, null, Set.of(), Map.of(), RoutePolicy.EXCLUDE));
+            }
+        }
+
+        for (CASParameter.Route route : parameter.routes) {
+            if (route.policy == null) {
+                throw new IllegalArgumentException("route " + route.patterns + " must declare a policy");
+            }
+            Set<HttpMethod> methods = route.methods.stream()
+                    .map(method -> HttpMethod.valueOf(method.trim().toUpperCase(Locale.ROOT)))
+                    .collect(Collectors.toUnmodifiableSet());
+            Map<String, Pattern> headers = new LinkedHashMap<>();
+            route.headers.forEach((name, value) ->
+                    headers.put(name, StringUtils.hasText(value) && !"*".equals(value) ? Pattern.compile(value) : null));
+            for (String pattern : route.patterns) {
+                PathPattern compiled = isLiteral(pattern) ? null : parser.parse(pattern);
+                routes.add(new CompiledRoute(routes.size(), pattern, compiled, methods, headers, route.policy));
+            }
+        }
+
+        Map<String, List<CompiledRoute>> literals = new HashMap<>();
+        Map<String, List<CompiledRoute>> buckets = new HashMap<>();
+        List<CompiledRoute> wildcards = new ArrayList<>();
+        for (CompiledRoute route : routes) {
+            if (route.pattern == null) {
+                literals.computeIfAbsent(route.source, k -> new ArrayList<>()).add(route);
+            } else {
+                String segment = firstSegment(route.source);
+                if (segment == null || !isLiteral(segment)) {
+                    wildcards.add(route);
+                } else {
+                    buckets.computeIfAbsent(segment, k -> new ArrayList<>()).add(route);
+                }
+            }
+        }
+
+        RoutePolicy defaultPolicy = parameter.casRenew ? RoutePolicy.RENEW
+                : parameter.casGateway ? RoutePolicy.GATEWAY : RoutePolicy.AUTHENTICATE;
+        RouteTable table = new RouteTable(freeze(literals, null), freeze(buckets, SPECIFICITY),
+                sorted(wildcards, SPECIFICITY), defaultPolicy);
+        log.debug("compiled {} cas routes: {} literal paths, {} buckets, {} wildcard patterns, default policy {}",
+                routes.size(), literals.size(), buckets.size(), wildcards.size(), defaultPolicy);
+        return table;
+    }
+
+    /**
+     * 解析请求对应的策略
+     *
+     * @param request 请求
+     * @return 策略，未命中任何路由时返回默认策略
+     */
+    public RoutePolicy resolve(ServerHttpRequest request) {
+        RequestPath path = request.getPath();
+
+        CompiledRoute[] exact = literals.get(path.value());
+        if (exact != null) {
+            for (CompiledRoute route : exact) {
+                if (route.accepts(request)) {
+                    return route.policy;
+                }
+            }
+        }
+
+        CompiledRoute bucketed = null;
+        if (!buckets.isEmpty()) {
+            List<PathContainer.Element> elements = path.elements();
+            if (elements.size() > 1 && elements.get(1) instanceof PathContainer.PathSegment segment) {
+                bucketed = firstMatch(buckets.getOrDefault(segment.valueToMatch(), EMPTY), path, request);
+            }
+        }
+        CompiledRoute wildcard = firstMatch(wildcards, path, request);
+
+        if (bucketed == null && wildcard == null) {
+            return defaultPolicy;
+        }
+        if (bucketed == null || wildcard == null) {
+            return bucketed != null ? bucketed.policy : wildcard.policy;
+        }
+        return SPECIFICITY.compare(bucketed, wildcard) <= 0 ? bucketed.policy : wildcard.policy;
+    }
+
+    /**
+     * @return 未命中路由时的策略
+     */
+    public RoutePolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    private static CompiledRoute firstMatch(CompiledRoute[] routes, RequestPath path, ServerHttpRequest request) {
+        for (CompiledRoute route : routes) {
+            if (route.pattern.matches(path) && route.accepts(request)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String firstSegment(String pattern) {
+        int start = pattern.startsWith("/") ? 1 : 0;
+        int end = pattern.indexOf('/', start);
+        String segment = end == -1 ? pattern.substring(start) : pattern.substring(start, end);
+        return segment.isEmpty() ? null : segment;
+    }
+
+    private static Map<String, CompiledRoute[]> freeze(Map<String, List<CompiledRoute>> source,
+                                                       Comparator<CompiledRoute> comparator) {
+        Map<String, CompiledRoute[]> frozen = new HashMap<>(source.size() * 2);
+        source.forEach((key, routes) -> frozen.put(key, sorted(routes, comparator)));
+        return frozen;
+    }
+
+    private static CompiledRoute[] sorted(List<CompiledRoute> routes, Comparator<CompiledRoute> comparator) {
+        if (comparator != null) {
+            routes.sort(comparator);
+        }
+        return routes.toArray(EMPTY);
+    }
+
+    /**
+     * 编译后的单条路由，pattern为空表示精确路径
+     */
+    private record CompiledRoute(int order, String source, PathPattern pattern, Set<HttpMethod> methods,
+                                 Map<String, Pattern> headers, RoutePolicy policy) {
+
+        /**
+         * 校验路径以外的条件
+         */
+        private boolean accepts(ServerHttpRequest request) {
+            if (!methods.isEmpty() && !methods.contains(request.getMethod())) {
+                return false;
+            }
+            if (CollectionUtils.isEmpty(headers)) {
+                return true;
+            }
+            HttpHeaders requestHeaders = request.getHeaders();
+            for (Map.Entry<String, Pattern> header : headers.entrySet()) {
+                String value = requestHeaders.getFirst(header.getKey());
+                if (value == null || (header.getValue() != null && !header.getValue().matcher(value).matches())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package dev.flyfish.boot.cas.metrics;
+
+/**
+ * cas客户端的指标记录
+ *
+ * @author wangyu
+ * 所有方法默认不处理，未启用指标时调用开销仅为一次空方法调用，不产生任何分配
+ */
+public interface CASMetrics {
+
+    /**
+     * 未启用指标时使用
+     */
+    CASMetrics NOOP = new CASMetrics() {
+    };
+
+    /**
+     * 票据校验成功
+     */
+    String VALIDATION_SUCCESS = "success";
+
+    /**
+     * cas服务器拒绝票据
+     */
+    String VALIDATION_FAILURE = "failure";
+
+    /**
+     * 网络或解析异常
+     */
+    String VALIDATION_ERROR = "error";
+
+    /**
+     * 记录过滤器的处理结果
+     *
+     * @param outcome 结果
+     */
+    default void onFilter(FilterOutcome outcome) {
+    }
+
+    /**
+     * 记录一次票据校验
+     *
+     * @param durationNanos 耗时，纳秒
+     * @param outcome       结果，见 VALIDATION_* 常量
+     * @param errorCode     cas返回的错误码，仅在failure时存在
+     */
+    default void onValidation(long durationNanos, String outcome, String errorCode) {
+    }
+
+    /**
+     * 记录一次按票据查找session映射
+     *
+     * @param hit 是否命中
+     */
+    default void onMappingLookup(boolean hit) {
+    }
+
+    default void onSessionCreated() {
+    }
+
+    default void onSessionInvalidated() {
+    }
+
+    /**
+     * 记录一次session监听器的调用
+     *
+     * @param listener      监听器名称
+     * @param durationNanos 耗时，纳秒，异步完成的监听器计到完成为止
+     */
+    default void onSessionListener(String listener, long durationNanos) {
+    }
+}
@@ -0,0 +1,73 @@
+package dev.flyfish.boot.cas.metrics;
+
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
+import dev.flyfish.boot.cas.config.session.WebSessionListener;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.validator.ReactiveTicketValidator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.publisher.Mono;
+
+/**
+ * cas指标配置，classpath中存在micrometer时生效
+ *
+ * @author wangyu
+ * 指标以 {@link io.micrometer.core.instrument.binder.MeterBinder} 的形式注册，由actuator绑定到注册中心，
+ * 可通过 cas.filter.metrics.enabled=false 关闭
+ */
+@AutoConfiguration
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnProperty(prefix = "cas.filter.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CASMetricsConfig {
+
+    /**
+     * 映射存储、session存储、事件总线与校验器延迟获取，它们的创建依赖本指标
+     *
+     * @param sessionMappingStorage 映射存储
+     * @param webSessionStore       session存储
+     * @param ticketValidator       票据校验器
+     * @param webSessionEventBus    session事件总线
+     * @return 结果
+     */
+    @Bean
+    @ConditionalOnMissingBean(CASMetrics.class)
+    public MicrometerCASMetrics casMetrics(ObjectProvider<SessionMappingStorage> sessionMappingStorage,
+                                           ObjectProvider<WebSessionStore> webSessionStore,
+                                           ObjectProvider<ReactiveTicketValidator> ticketValidator,
+                                           ObjectProvider<WebSessionEventBus> webSessionEventBus) {
+        return new MicrometerCASMetrics(sessionMappingStorage::getIfAvailable, webSessionStore::getIfAvailable, () -> {
+            ReactiveTicketValidator validator = ticketValidator.getIfAvailable();
+            return validator == null ? null : validator.getBulkhead();
+        }, webSessionEventBus::getIfAvailable);
+    }
+
+    /**
+     * 统计session的创建与销毁
+     *
+     * @param casMetrics 指标
+     * @return 结果
+     */
+    @Bean
+    public WebSessionListener casMetricsSessionListener(CASMetrics casMetrics) {
+        return new WebSessionListener() {
+            @Override
+            public Mono<Void> onSessionCreated(WebSession session) {
+                casMetrics.onSessionCreated();
+                return Mono.empty();
+            }
+
+            @Override
+            public Mono<Void> onSessionInvalidated(WebSession session) {
+                casMetrics.onSessionInvalidated();
+                return Mono.empty();
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package dev.flyfish.boot.cas.metrics;
+
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.Callable;
+
+/**
+ * cas各处理阶段的观测（链路追踪）
+ *
+ * @author wangyu
+ * 父观测从Reactor Context中的 {@link ObservationThreadLocalAccessor#KEY} 读取，新观测写回Context，
+ * 校验请求的http客户端观测因此成为子节点。注册中心为空实现或观测被过滤（未采样）时直接返回原始流。
+ */
+public final class CASObservations {
+
+    public static final CASObservations NOOP = new CASObservations(ObservationRegistry.NOOP);
+
+    /**
+     * 票据校验，包括http请求与响应解析
+     */
+    public static final String VALIDATION = "cas.client.validation";
+
+    /**
+     * 校验响应的读取与解析
+     */
+    public static final String PARSE = "cas.client.validation.parse";
+
+    /**
+     * {@link dev.flyfish.boot.cas.context.CASContextInit} 的用户转换与初始化
+     */
+    public static final String CONTEXT_INIT = "cas.client.context.init";
+
+    /**
+     * 登录时票据与session映射的更新
+     */
+    public static final String SESSION_MAPPING = "cas.client.session.mapping";
+
+    /**
+     * 向cas申请代理票据
+     */
+    public static final String PROXY = "cas.client.proxy";
+
+    /**
+     * 单点注销回调使session失效
+     */
+    public static final String LOGOUT = "cas.client.logout";
+
+    private final ObservationRegistry registry;
+
+    public CASObservations(ObservationRegistry registry) {
+        this.registry = registry;
+    }
+
+    public ObservationRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 观测一个异步阶段，订阅时开始，完成、出错或取消时结束
+     *
+     * @param name   观测名
+     * @param source 原始流
+     * @return 结果
+     */
+    public <T> Mono<T> observe(String name, Mono<T> source) {
+        return observe(name, KeyValues.empty(), source);
+    }
+
+    /**
+     * 观测一个异步阶段
+     *
+     * @param name           观测名
+     * @param lowCardinality 低基数的标签
+     * @param source         原始流
+     * @return 结果
+     */
+    public <T> Mono<T> observe(String name, KeyValues lowCardinality, Mono<T> source) {
+        return observe(name, lowCardinality, source, true);
+    }
+
+    /**
+     * 观测一个叶子阶段，不写入Context
+     * 用于包裹上游流的阶段，例如响应解析，上游的http请求仍以外层观测为父节点
+     *
+     * @param name   观测名
+     * @param source 原始流
+     * @return 结果
+     */
+    public <T> Mono<T> observeLeaf(String name, Mono<T> source) {
+        return observe(name, KeyValues.empty(), source, false);
+    }
+
+    private <T> Mono<T> observe(String name, KeyValues lowCardinality, Mono<T> source, boolean propagate) {
+        if (registry.isNoop()) {
+            return source;
+        }
+        return Mono.deferContextual(context -> {
+            Observation observation = start(name, lowCardinality, context.getOrDefault(ObservationThreadLocalAccessor.KEY, null));
+            if (observation.isNoop()) {
+                return source;
+            }
+            Mono<T> observed = source.doOnError(observation::error)
+                    .doFinally(signal -> observation.stop());
+            return propagate ? observed.contextWrite(c -> c.put(ObservationThreadLocalAccessor.KEY, observation)) : observed;
+        });
+    }
+
+    /**
+     * 观测一段同步逻辑，观测在执行期间同时放入线程上下文
+     *
+     * @param name     观测名
+     * @param callable 同步逻辑，结果为空时返回空流
+     * @return 结果
+     */
+    public <T> Mono<T> observeSync(String name, Callable<T> callable) {
+        if (registry.isNoop()) {
+            return Mono.fromCallable(callable);
+        }
+        return Mono.deferContextual(context -> {
+            Observation observation = start(name, KeyValues.empty(), context.getOrDefault(ObservationThreadLocalAccessor.KEY, null));
+            try (Observation.Scope ignored = observation.openScope()) {
+                return Mono.justOrEmpty(callable.call());
+            } catch (Exception e) {
+                observation.error(e);
+                return Mono.error(e);
+            } finally {
+                observation.stop();
+            }
+        });
+    }
+
+    private Observation start(String name, KeyValues lowCardinality, Observation parent) {
+        return Observation.createNotStarted(name, registry)
+                .lowCardinalityKeyValues(lowCardinality)
+                .parentObservation(parent)
+                .start();
+    }
+}
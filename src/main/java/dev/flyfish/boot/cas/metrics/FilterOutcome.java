@@ -0,0 +1,58 @@
+package dev.flyfish.boot.cas.metrics;
+
+/**
+ * 过滤器对单个请求的处理结果
+ *
+ * @author wangyu
+ */
+public enum FilterOutcome {
+
+    /**
+     * 已登录，放行
+     */
+    PASS_THROUGH,
+
+    /**
+     * 命中排除路由
+     */
+    EXCLUDED,
+
+    /**
+     * 跳转cas登录
+     */
+    REDIRECT,
+
+    /**
+     * 上下文初始化失败
+     */
+    INIT_FAILURE,
+
+    /**
+     * 注销回调命中本地session
+     */
+    LOGOUT_HANDLED,
+
+    /**
+     * 注销回调未命中本地session
+     */
+    LOGOUT_MISS,
+
+    /**
+     * 校验熔断，跳转降级页面或响应503
+     */
+    UNAVAILABLE,
+
+    /**
+     * 并发校验已满，响应503
+     */
+    SHED;
+
+    private final String tag = name().toLowerCase().replace('_', '-');
+
+    /**
+     * @return 指标的标签值
+     */
+    public String tag() {
+        return tag;
+    }
+}
@@ -0,0 +1,50 @@
+package dev.flyfish.boot.cas.metrics;
+
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import org.springframework.web.server.WebSession;
+import reactor.core.publisher.Mono;
+
+/**
+ * 记录映射查找命中率的存储
+ *
+ * @author wangyu
+ * 放在集群广播之内，远端广播引起的查找同样会被记录
+ */
+public class MeteredSessionMappingStorage implements SessionMappingStorage {
+
+    private final SessionMappingStorage delegate;
+
+    private final CASMetrics metrics;
+
+    public MeteredSessionMappingStorage(SessionMappingStorage delegate, CASMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<WebSession> removeSessionByMappingId(String mappingId) {
+        return delegate.removeSessionByMappingId(mappingId)
+                .doOnNext(session -> metrics.onMappingLookup(true))
+                .switchIfEmpty(Mono.fromRunnable(() -> metrics.onMappingLookup(false)));
+    }
+
+    @Override
+    public Mono<Void> removeBySessionById(String sessionId) {
+        return delegate.removeBySessionById(sessionId);
+    }
+
+    @Override
+    public Mono<Void> addSessionById(String mappingId, WebSession session) {
+        return delegate.addSessionById(mappingId, session);
+    }
+
+    @Override
+    public void touch(String sessionId) {
+        delegate.touch(sessionId);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+}
@@ -0,0 +1,255 @@
+package dev.flyfish.boot.cas.metrics;
+
+import dev.flyfish.boot.cas.config.session.MappedWebSessionStore;
+import dev.flyfish.boot.cas.config.session.ShardedWebSessionStore;
+import dev.flyfish.boot.cas.config.session.WebSessionEventBus;
+import dev.flyfish.boot.cas.context.SessionMappingStorage;
+import dev.flyfish.boot.cas.validator.Bulkhead;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import org.springframework.web.server.session.WebSessionStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 基于micrometer的指标实现
+ *
+ * @author wangyu
+ * 计数器与计时器在绑定时一次性注册，记录时只做数组下标或常量字段访问。
+ * 绑定之前的调用直接忽略。cas错误码作为标签，超过上限的错误码归入OTHER。
+ */
+public class MicrometerCASMetrics implements CASMetrics, MeterBinder {
+
+    private static final int MAX_ERROR_CODES = 32;
+
+    private static final String OTHER = "OTHER";
+
+    private static final String NONE = "none";
+
+    private final Supplier<SessionMappingStorage> mappingStorage;
+
+    private final Supplier<WebSessionStore> sessionStore;
+
+    private final Supplier<Bulkhead> bulkhead;
+
+    private final Supplier<WebSessionEventBus> sessionEvents;
+
+    private final Map<String, Timer> failures = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> listeners = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    private Counter[] outcomes;
+
+    private Timer success;
+
+    private Timer error;
+
+    private Counter mappingHits;
+
+    private Counter mappingMisses;
+
+    private Counter sessionsCreated;
+
+    private Counter sessionsInvalidated;
+
+    /**
+     * @param mappingStorage 映射存储，用于统计映射数
+     * @param sessionStore   session存储，用于统计活跃session数
+     * @param bulkhead       校验的并发限制，用于统计排队与拒绝数
+     * @param sessionEvents  session事件总线，用于统计排队与溢出数
+     */
+    public MicrometerCASMetrics(Supplier<SessionMappingStorage> mappingStorage, Supplier<WebSessionStore> sessionStore,
+                                Supplier<Bulkhead> bulkhead, Supplier<WebSessionEventBus> sessionEvents) {
+        this.mappingStorage = mappingStorage;
+        this.sessionStore = sessionStore;
+        this.bulkhead = bulkhead;
+        this.sessionEvents = sessionEvents;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Counter[] counters = new Counter[FilterOutcome.values().length];
+        for (FilterOutcome outcome : FilterOutcome.values()) {
+            counters[outcome.ordinal()] = Counter.builder("cas.filter.requests")
+                    .description("Requests handled by the CAS filter")
+                    .tag("outcome", outcome.tag())
+                    .register(registry);
+        }
+        this.outcomes = counters;
+        this.success = validationTimer(registry, VALIDATION_SUCCESS, NONE);
+        this.error = validationTimer(registry, VALIDATION_ERROR, NONE);
+
+        Gauge.builder("cas.validation.active", this, metrics -> metrics.bulkhead(Bulkhead::getActive))
+                .description("Ticket validations holding a concurrency slot")
+                .register(registry);
+        Gauge.builder("cas.validation.queued", this, metrics -> metrics.bulkhead(Bulkhead::getQueued))
+                .description("Ticket validations waiting for a concurrency slot")
+                .register(registry);
+        rejections(registry, "queue-full", Bulkhead::getQueueFull);
+        rejections(registry, "queue-timeout", Bulkhead::getQueueTimeouts);
+
+        this.mappingHits = mappingLookups(registry, "hit");
+        this.mappingMisses = mappingLookups(registry, "miss");
+        Gauge.builder("cas.session.mapping.size", this, MicrometerCASMetrics::mappingSize)
+                .description("Service tickets mapped to sessions")
+                .register(registry);
+
+        this.sessionsCreated = Counter.builder("cas.sessions.created")
+                .description("Sessions created by the session store")
+                .register(registry);
+        this.sessionsInvalidated = Counter.builder("cas.sessions.invalidated")
+                .description("Sessions invalidated")
+                .register(registry);
+        Gauge.builder("cas.sessions.active", this, MicrometerCASMetrics::activeSessions)
+                .description("Sessions held by the session store")
+                .register(registry);
+        evictions(registry, "soft", ShardedWebSessionStore::getSoftEvictions);
+        evictions(registry, "hard", ShardedWebSessionStore::getHardEvictions);
+        Gauge.builder("cas.session.events.queued", this,
+                        metrics -> metrics.sessionEvents(WebSessionEventBus::getQueueDepth))
+                .description("Session events waiting for asynchronous delivery")
+                .register(registry);
+        FunctionCounter.builder("cas.session.events.overflow", this,
+                        metrics -> metrics.sessionEvents(WebSessionEventBus::getOverflow))
+                .description("Session events delivered by the publisher because the queue was full")
+                .register(registry);
+
+        this.registry = registry;
+    }
+
+    @Override
+    public void onFilter(FilterOutcome outcome) {
+        if (registry != null) {
+            outcomes[outcome.ordinal()].increment();
+        }
+    }
+
+    @Override
+    public void onValidation(long durationNanos, String outcome, String errorCode) {
+        MeterRegistry current = registry;
+        if (current == null) {
+            return;
+        }
+        Timer timer = switch (outcome) {
+            case VALIDATION_SUCCESS -> success;
+            case VALIDATION_FAILURE -> failureTimer(current, errorCode == null ? NONE : errorCode);
+            default -> error;
+        };
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onMappingLookup(boolean hit) {
+        if (registry != null) {
+            (hit ? mappingHits : mappingMisses).increment();
+        }
+    }
+
+    @Override
+    public void onSessionCreated() {
+        if (registry != null) {
+            sessionsCreated.increment();
+        }
+    }
+
+    @Override
+    public void onSessionInvalidated() {
+        if (registry != null) {
+            sessionsInvalidated.increment();
+        }
+    }
+
+    @Override
+    public void onSessionListener(String listener, long durationNanos) {
+        MeterRegistry current = registry;
+        if (current == null) {
+            return;
+        }
+        listeners.computeIfAbsent(listener, name -> Timer.builder("cas.session.listener")
+                        .description("Session listener latency per delivery")
+                        .tag("listener", name)
+                        .register(current))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer failureTimer(MeterRegistry registry, String code) {
+        Timer timer = failures.get(code);
+        if (timer != null) {
+            return timer;
+        }
+        if (failures.size() >= MAX_ERROR_CODES) {
+            return failures.computeIfAbsent(OTHER, c -> validationTimer(registry, VALIDATION_FAILURE, c));
+        }
+        return failures.computeIfAbsent(code, c -> validationTimer(registry, VALIDATION_FAILURE, c));
+    }
+
+    private static Timer validationTimer(MeterRegistry registry, String outcome, String code) {
+        return Timer.builder("cas.validation")
+                .description("Service ticket validation latency")
+                .tag("outcome", outcome)
+                .tag("code", code)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private void rejections(MeterRegistry registry, String reason, ToDoubleFunction<Bulkhead> count) {
+        FunctionCounter.builder("cas.validation.rejected", this, metrics -> metrics.bulkhead(count))
+                .description("Ticket validations rejected by the concurrency limit")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private void evictions(MeterRegistry registry, String watermark, ToDoubleFunction<ShardedWebSessionStore> count) {
+        FunctionCounter.builder("cas.sessions.evicted", this,
+                        metrics -> metrics.sessionStore.get() instanceof ShardedWebSessionStore store
+                                ? count.applyAsDouble(store) : Double.NaN)
+                .description("Least recently used sessions evicted by the sharded session store")
+                .tag("watermark", watermark)
+                .register(registry);
+    }
+
+    private static Counter mappingLookups(MeterRegistry registry, String result) {
+        return Counter.builder("cas.session.mapping.lookups")
+                .description("Session lookups by service ticket")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private double bulkhead(ToDoubleFunction<Bulkhead> value) {
+        Bulkhead current = bulkhead.get();
+        return current == null ? Double.NaN : value.applyAsDouble(current);
+    }
+
+    private double sessionEvents(ToDoubleFunction<WebSessionEventBus> value) {
+        WebSessionEventBus current = sessionEvents.get();
+        return current == null ? Double.NaN : value.applyAsDouble(current);
+    }
+
+    private double mappingSize() {
+        SessionMappingStorage storage = mappingStorage.get();
+        int size = storage == null ? -1 : storage.size();
+        return size < 0 ? Double.NaN : size;
+    }
+
+    private double activeSessions() {
+        WebSessionStore store = sessionStore.get();
+        if (store instanceof MappedWebSessionStore mapped) {
+            return mapped.getSessionCount();
+        }
+        if (store instanceof ShardedWebSessionStore sharded) {
+            return sharded.getSessionCount();
+        }
+        return store instanceof InMemoryWebSessionStore memory ? memory.getSessions().size() : Double.NaN;
+    }
+}
@@ -0,0 +1,181 @@
+package dev.flyfish.boot.cas.validator;
+
+import dev.flyfish.boot.cas.exception.BulkheadFullException;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 并发校验限制
+ *
+ * @author wangyu
+ * 同时进行的调用不超过maxConcurrent，超出的调用按到达顺序排队，队列已满或排队超时立即失败。
+ * 调用结束时名额直接交给队首，不经过空闲状态，排队中的调用取消或超时则移出队列。
+ */
+public class Bulkhead {
+
+    private final boolean enabled;
+
+    private final int maxConcurrent;
+
+    private final int maxQueue;
+
+    private final Duration queueTimeout;
+
+    private final ArrayDeque<Waiter<?>> queue = new ArrayDeque<>();
+
+    private final LongAdder queueFull = new LongAdder();
+
+    private final LongAdder queueTimeouts = new LongAdder();
+
+    private int active;
+
+    public Bulkhead(CASParameter.Client.Bulkhead bulkhead) {
+        this.enabled = bulkhead.isEnabled();
+        this.maxConcurrent = Math.max(1, bulkhead.getMaxConcurrent());
+        this.maxQueue = Math.max(0, bulkhead.getMaxQueue());
+        this.queueTimeout = bulkhead.getQueueTimeout();
+    }
+
+    /**
+     * 在并发限制内执行调用
+     *
+     * @param call 调用，获得名额后才会订阅
+     * @return 结果，被拒绝时以 {@link BulkheadFullException} 结束
+     */
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.create(sink -> {
+            Waiter<T> waiter = new Waiter<>(call, sink);
+            boolean permitted = false;
+            synchronized (this) {
+                if (active < maxConcurrent) {
+                    active++;
+                    permitted = true;
+                } else if (queue.size() < maxQueue) {
+                    queue.add(waiter);
+                } else {
+                    waiter = null;
+                }
+            }
+            if (waiter == null) {
+                queueFull.increment();
+                sink.error(new BulkheadFullException("Too many concurrent CAS validations, queue is full", queueTimeout));
+                return;
+            }
+            Waiter<T> current = waiter;
+            sink.onCancel(() -> {
+                if (!dequeue(current)) {
+                    current.cancel();
+                }
+            });
+            if (permitted) {
+                current.run();
+            } else {
+                current.timer = Schedulers.parallel().schedule(() -> {
+                    if (dequeue(current)) {
+                        queueTimeouts.increment();
+                        sink.error(new BulkheadFullException("Timed out waiting for a CAS validation slot", queueTimeout));
+                    }
+                }, queueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * @return 进行中的调用数
+     */
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * @return 排队中的调用数
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return 因队列已满被拒绝的调用数
+     */
+    public long getQueueFull() {
+        return queueFull.sum();
+    }
+
+    /**
+     * @return 因排队超时被拒绝的调用数
+     */
+    public long getQueueTimeouts() {
+        return queueTimeouts.sum();
+    }
+
+    private synchronized boolean dequeue(Waiter<?> waiter) {
+        return queue.remove(waiter);
+    }
+
+    /**
+     * 归还名额，有排队的调用时直接转交
+     */
+    private void release() {
+        Waiter<?> next;
+        synchronized (this) {
+            next = queue.poll();
+            if (next == null) {
+                active--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    /**
+     * 排队中或进行中的调用
+     */
+    private final class Waiter<T> {
+
+        private final Supplier<Mono<T>> call;
+
+        private final MonoSink<T> sink;
+
+        private volatile Disposable timer;
+
+        private volatile Disposable running;
+
+        private Waiter(Supplier<Mono<T>> call, MonoSink<T> sink) {
+            this.call = call;
+            this.sink = sink;
+        }
+
+        /**
+         * 已获得名额，开始调用，结束时归还名额
+         */
+        private void run() {
+            Disposable pending = timer;
+            if (pending != null) {
+                pending.dispose();
+            }
+            running = Mono.defer(call)
+                    .doFinally(signal -> release())
+                    .subscribe(sink::success, sink::error, sink::success, Context.of(sink.contextView()));
+        }
+
+        private void cancel() {
+            Disposable current = running;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package dev.flyfish.boot.cas.validator;
+
+import dev.flyfish.boot.cas.filter.CASParameter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * 票据校验的熔断器
+ *
+ * @author wangyu
+ * 按最近若干次调用的结果统计失败率，达到阈值后打开，期间调用立即失败。
+ * 打开一段时间后进入半开状态，只放行少量试探调用，全部成功则关闭，任一失败则重新打开。
+ * 只有cas不可用（连接失败、超时、响应异常）计为失败，票据无效说明cas工作正常，计为成功。
+ * 校验本身是毫秒级的网络调用，这里直接使用同步锁。
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean enabled;
+
+    private final double failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long openNanos;
+
+    private final int halfOpenCalls;
+
+    // 环形窗口，true为失败
+    private final boolean[] window;
+
+    private int position;
+
+    private int recorded;
+
+    private int failures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    private volatile Consumer<CircuitBreakerEvent> listener = event -> {
+    };
+
+    public CircuitBreaker(CASParameter.Client.Breaker breaker) {
+        this.enabled = breaker.isEnabled();
+        this.failureRateThreshold = breaker.getFailureRateThreshold();
+        this.minimumCalls = Math.max(1, breaker.getMinimumCalls());
+        this.openNanos = breaker.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, breaker.getHalfOpenCalls());
+        this.window = new boolean[Math.max(this.minimumCalls, breaker.getWindowSize())];
+    }
+
+    /**
+     * @param listener 状态变化的监听，在状态变化后、锁外调用
+     */
+    public void setListener(Consumer<CircuitBreakerEvent> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 申请一次调用
+     *
+     * @return 是否放行
+     */
+    public boolean tryAcquire() {
+        if (!enabled) {
+            return true;
+        }
+        CircuitBreakerEvent event = null;
+        boolean permitted;
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                event = transition(State.HALF_OPEN);
+                halfOpenPermits = halfOpenCalls;
+                halfOpenSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                permitted = halfOpenPermits > 0;
+                if (permitted) {
+                    halfOpenPermits--;
+                }
+            } else {
+                permitted = state == State.CLOSED;
+            }
+        }
+        publish(event);
+        return permitted;
+    }
+
+    /**
+     * 调用成功，或cas正常响应了失败
+     */
+    public void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        CircuitBreakerEvent event = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (++halfOpenSuccesses >= halfOpenCalls) {
+                    reset();
+                    event = transition(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+        }
+        publish(event);
+    }
+
+    /**
+     * cas不可用
+     */
+    public void onFailure() {
+        if (!enabled) {
+            return;
+        }
+        CircuitBreakerEvent event = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                event = open();
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+                    event = open();
+                }
+            }
+        }
+        publish(event);
+    }
+
+    /**
+     * 调用被取消，没有结果，归还半开状态的试探名额
+     */
+    public void onIgnored() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                halfOpenPermits++;
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return 距离进入半开状态的剩余时间，未打开时为0
+     */
+    public synchronized Duration getRemainingOpenTime() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openNanos - (System.nanoTime() - openedAt)));
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private CircuitBreakerEvent open() {
+        openedAt = System.nanoTime();
+        reset();
+        return transition(State.OPEN);
+    }
+
+    private void reset() {
+        position = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    private CircuitBreakerEvent transition(State to) {
+        State from = state;
+        state = to;
+        return new CircuitBreakerEvent(from, to, Instant.now());
+    }
+
+    private void publish(CircuitBreakerEvent event) {
+        if (event == null) {
+            return;
+        }
+        if (event.to() == State.OPEN) {
+            log.warn("CAS validation circuit breaker {} -> {}", event.from(), event.to());
+        } else {
+            log.info("CAS validation circuit breaker {} -> {}", event.from(), event.to());
+        }
+        try {
+            listener.accept(event);
+        } catch (RuntimeException e) {
+            log.warn("error when notifying circuit breaker listener", e);
+        }
+    }
+}
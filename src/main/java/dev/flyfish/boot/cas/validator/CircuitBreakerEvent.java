@@ -0,0 +1,14 @@
+package dev.flyfish.boot.cas.validator;
+
+import java.time.Instant;
+
+/**
+ * 熔断器状态变化事件，自动配置下以spring事件发布，可通过 {@code @EventListener} 监听
+ *
+ * @param from 原状态
+ * @param to   新状态
+ * @param time 变化时间
+ * @author wangyu
+ */
+public record CircuitBreakerEvent(CircuitBreaker.State from, CircuitBreaker.State to, Instant time) {
+}
@@ -0,0 +1,236 @@
+package dev.flyfish.boot.cas.validator;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 流式的json校验响应解析器，对应 {@code format=JSON}
+ *
+ * @author wangyu
+ * 使用jackson的非阻塞解析器逐块消费网络缓冲区，只按字段路径挑出关心的值，不构建树。
+ * 属性值可以是单个值或数组，数字与布尔值按文本保存，null与嵌套对象忽略。
+ */
+public class JsonValidationResponseParser implements ResponseParser {
+
+    static final String SERVICE_RESPONSE = "serviceResponse";
+    static final String CODE = "code";
+    static final String DESCRIPTION = "description";
+
+    // 关心的字段最多位于第5层
+    private static final int MAX_DEPTH = 8;
+
+    private final JsonFactory factory = new JsonFactory();
+
+    private final BlockingQueue<ParseState> pool;
+
+    private final int maxResponseSize;
+
+    public JsonValidationResponseParser(int poolSize, int maxResponseSize) {
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * 解析状态只在正常结束或出错后回收，此时不会再有缓冲区喂入。
+     * 取消（超时、订阅方离开、连接断开）时网络线程可能仍在解析，该状态直接丢弃，不放回池中
+     */
+    @Override
+    public Mono<ValidationResponse> parse(Flux<DataBuffer> body) {
+        return Mono.usingWhen(Mono.fromCallable(this::acquire),
+                state -> body.<Void>handle((buffer, sink) -> {
+                            try {
+                                state.feed(buffer);
+                            } catch (IOException e) {
+                                sink.error(e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .then(Mono.fromCallable(state::finish)),
+                state -> Mono.fromRunnable(() -> release(state)),
+                (state, e) -> Mono.fromRunnable(() -> release(state)),
+                state -> Mono.empty());
+    }
+
+    private ParseState acquire() throws IOException {
+        ParseState state = pool.poll();
+        if (state == null) {
+            state = new ParseState();
+        }
+        state.open();
+        return state;
+    }
+
+    private void release(ParseState state) {
+        state.reset();
+        pool.offer(state);
+    }
+
+    /**
+     * 单次解析的状态，同一时刻只被一个响应使用，因此无需同步
+     */
+    private final class ParseState {
+
+        // 每层容器对应的字段名，数组元素沿用数组的字段名
+        private final String[] path = new String[MAX_DEPTH];
+
+        private final boolean[] array = new boolean[MAX_DEPTH];
+
+        private final List<String> proxies = new ArrayList<>(2);
+
+        private final Map<String, List<String>> attributes = new LinkedHashMap<>();
+
+        private JsonParser parser;
+
+        private int received;
+
+        private int depth;
+
+        private String field;
+
+        private boolean authenticationSuccess;
+
+        private boolean authenticationFailure;
+
+        private String user;
+
+        private String pgtIou;
+
+        private String errorCode;
+
+        private String errorMessage;
+
+        private void open() throws IOException {
+            this.parser = factory.createNonBlockingByteBufferParser();
+        }
+
+        private void feed(DataBuffer buffer) throws IOException {
+            received += buffer.readableByteCount();
+            if (received > maxResponseSize) {
+                throw new IOException("CAS response exceeds the limit of " + maxResponseSize + " bytes");
+            }
+            ByteBufferFeeder feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    feeder.feedInput(iterator.next());
+                    drain();
+                }
+            }
+        }
+
+        private ValidationResponse finish() throws IOException {
+            parser.getNonBlockingInputFeeder().endOfInput();
+            drain();
+            if (authenticationSuccess) {
+                return new ValidationResponse(true, user, pgtIou, proxies, attributes, null, null);
+            }
+            if (authenticationFailure) {
+                return new ValidationResponse(false, null, null, null, null, errorCode, errorMessage);
+            }
+            throw new IOException("no indication of success or failure from CAS");
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                    case FIELD_NAME -> field = parser.currentName();
+                    case START_OBJECT, START_ARRAY -> push(token == JsonToken.START_ARRAY);
+                    case END_OBJECT, END_ARRAY -> depth--;
+                    case VALUE_STRING, VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_TRUE, VALUE_FALSE -> value(parser.getText());
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        private void push(boolean isArray) {
+            if (depth < MAX_DEPTH) {
+                path[depth] = name();
+                array[depth] = isArray;
+            }
+            depth++;
+            if (depth == 3 && SERVICE_RESPONSE.equals(path[1])) {
+                authenticationSuccess |= ValidationResponseParser.AUTHENTICATION_SUCCESS.equals(path[2]);
+                authenticationFailure |= ValidationResponseParser.AUTHENTICATION_FAILURE.equals(path[2]);
+            }
+        }
+
+        /**
+         * 当前值的字段名，数组元素取数组的字段名
+         */
+        private String name() {
+            return depth > 0 && depth <= MAX_DEPTH && array[depth - 1] ? path[depth - 1] : field;
+        }
+
+        private void value(String value) {
+            if (depth < 3 || depth > 5 || !SERVICE_RESPONSE.equals(path[1])) {
+                return;
+            }
+            String name = name();
+            if (name == null) {
+                return;
+            }
+            if (ValidationResponseParser.AUTHENTICATION_FAILURE.equals(path[2])) {
+                if (depth == 3) {
+                    switch (name) {
+                        case CODE -> errorCode = value.trim();
+                        case DESCRIPTION -> errorMessage = value.trim();
+                        default -> {
+                        }
+                    }
+                }
+                return;
+            }
+            if (!ValidationResponseParser.AUTHENTICATION_SUCCESS.equals(path[2])) {
+                return;
+            }
+            if (depth == 3) {
+                switch (name) {
+                    case ValidationResponseParser.USER -> user = value.trim();
+                    case ValidationResponseParser.PROXY_GRANTING_TICKET -> pgtIou = value.trim();
+                    default -> {
+                    }
+                }
+            } else if (ValidationResponseParser.PROXIES.equals(path[3])) {
+                if (depth == 4 && array[3]) {
+                    proxies.add(value.trim());
+                }
+            } else if (ValidationResponseParser.ATTRIBUTES.equals(path[3]) && !array[3]) {
+                // 单值直接位于属性对象内，多值位于属性对象内的数组中
+                if (depth == 4 || array[4]) {
+                    attributes.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+                }
+            }
+        }
+
+        private void reset() {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException ignored) {
+                }
+                parser = null;
+            }
+            received = depth = 0;
+            field = user = pgtIou = errorCode = errorMessage = null;
+            authenticationSuccess = authenticationFailure = false;
+            proxies.clear();
+            attributes.clear();
+        }
+    }
+}
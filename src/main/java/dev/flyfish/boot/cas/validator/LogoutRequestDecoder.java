@@ -0,0 +1,226 @@
+package dev.flyfish.boot.cas.validator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+
+/**
+ * 单点注销请求解码器，从cas的SAML LogoutRequest中提取SessionIndex
+ *
+ * @author wangyu
+ * 标准形态的报文由快速扫描器直接截取，不满足校验条件时退回完整的sax解析。
+ * 解析器与文本累加器按线程复用，解码过程是同步的，不会跨线程共享。
+ */
+@Slf4j
+public class LogoutRequestDecoder {
+
+    static final String SESSION_INDEX = "SessionIndex";
+
+    static final String LOGOUT_REQUEST = "LogoutRequest";
+
+    private static final SAXParserFactory PARSER_FACTORY = createParserFactory();
+
+    private final ThreadLocal<FallbackParser> parsers = ThreadLocal.withInitial(FallbackParser::new);
+
+    private final int maxPayloadLength;
+
+    public LogoutRequestDecoder(int maxPayloadLength) {
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    private static SAXParserFactory createParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException | SAXException e) {
+            log.warn("unable to harden the logout request parser", e);
+        }
+        return factory;
+    }
+
+    /**
+     * 解码注销请求中的SessionIndex
+     *
+     * @param payload 注销请求报文
+     * @return SessionIndex，报文非法或超长时返回null
+     */
+    public String decodeSessionIndex(String payload) {
+        if (payload == null || payload.isEmpty()) {
+            return null;
+        }
+        if (payload.length() > maxPayloadLength) {
+            log.warn("Logout request of {} chars exceeds the limit of {}, ignored", payload.length(), maxPayloadLength);
+            return null;
+        }
+        String index = scan(payload);
+        if (index != null) {
+            return index;
+        }
+        log.trace("Logout request is not in the standard shape, falling back to full parsing");
+        return parsers.get().parse(payload);
+    }
+
+    /**
+     * 快速路径，只接受标准形态：根元素为LogoutRequest，不含声明、注释、CDATA与实体，
+     * 且只有一个无属性的SessionIndex元素
+     *
+     * @param payload 报文
+     * @return 提取结果，不满足条件时返回null
+     */
+    static String scan(String payload) {
+        int length = payload.length();
+        int start = 0;
+        while (start < length && Character.isWhitespace(payload.charAt(start))) {
+            start++;
+        }
+        // 根元素必须是LogoutRequest，前缀任意
+        if (start >= length || payload.charAt(start) != '<' || !matchesElementName(payload, start + 1, LOGOUT_REQUEST)) {
+            return null;
+        }
+        // 声明、注释、CDATA、doctype及实体引用交给完整解析
+        if (payload.indexOf("<!", start) != -1 || payload.indexOf("<?", start) != -1 || payload.indexOf('&', start) != -1) {
+            return null;
+        }
+
+        // 第一次出现的SessionIndex必须是无属性的开始标签
+        int name = payload.indexOf(SESSION_INDEX, start);
+        if (name == -1 || !payload.startsWith(">", name + SESSION_INDEX.length())) {
+            return null;
+        }
+        // 开始标签：'<' + 可选前缀 + SessionIndex + '>'
+        int open = payload.lastIndexOf('<', name);
+        if (open == -1 || !isPrefix(payload, open + 1, name)) {
+            return null;
+        }
+        int contentStart = name + SESSION_INDEX.length() + 1;
+        int contentEnd = payload.indexOf('<', contentStart);
+        if (contentEnd == -1) {
+            return null;
+        }
+        // 结束标签必须与开始标签同名
+        String qualified = payload.substring(open + 1, contentStart - 1);
+        int close = contentEnd + 2 + qualified.length();
+        if (!payload.startsWith("</", contentEnd) || !payload.startsWith(qualified, contentEnd + 2)
+                || !payload.startsWith(">", close)) {
+            return null;
+        }
+        // 存在多个SessionIndex时语义不明确
+        if (payload.indexOf(SESSION_INDEX, close) != -1) {
+            return null;
+        }
+
+        while (contentStart < contentEnd && Character.isWhitespace(payload.charAt(contentStart))) {
+            contentStart++;
+        }
+        while (contentEnd > contentStart && Character.isWhitespace(payload.charAt(contentEnd - 1))) {
+            contentEnd--;
+        }
+        return contentStart < contentEnd ? payload.substring(contentStart, contentEnd) : null;
+    }
+
+    /**
+     * 判断from处开始的是否为 [前缀:]名称，且后面紧跟空白、'/'或'>'
+     */
+    private static boolean matchesElementName(String payload, int from, String localName) {
+        int end = from;
+        int length = payload.length();
+        while (end < length) {
+            char c = payload.charAt(end);
+            if (Character.isWhitespace(c) || c == '>' || c == '/') {
+                break;
+            }
+            end++;
+        }
+        int colon = payload.lastIndexOf(':', end - 1);
+        int localStart = colon >= from ? colon + 1 : from;
+        return end - localStart == localName.length() && payload.startsWith(localName, localStart)
+                && (localStart == from || isPrefix(payload, from, localStart));
+    }
+
+    /**
+     * 判断[from, to)是否为空或者 合法前缀 + ':'
+     */
+    private static boolean isPrefix(String payload, int from, int to) {
+        if (from == to) {
+            return true;
+        }
+        if (payload.charAt(to - 1) != ':' || to - 1 == from) {
+            return false;
+        }
+        for (int i = from; i < to - 1; i++) {
+            char c = payload.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 完整解析，单线程内复用解析器与累加器
+     */
+    private static final class FallbackParser extends DefaultHandler {
+
+        private final StringBuilder buffer = new StringBuilder(64);
+
+        private XMLReader reader;
+
+        private boolean foundElement;
+
+        private String parse(String payload) {
+            buffer.setLength(0);
+            foundElement = false;
+            try {
+                XMLReader current = reader();
+                current.parse(new InputSource(new StringReader(payload)));
+            } catch (Exception e) {
+                log.error("Unable to parse logout request", e);
+                // 解析器状态不确定，丢弃重建
+                reader = null;
+                return null;
+            }
+            String index = buffer.toString().trim();
+            return index.isEmpty() ? null : index;
+        }
+
+        private XMLReader reader() throws ParserConfigurationException, SAXException {
+            if (reader == null) {
+                reader = PARSER_FACTORY.newSAXParser().getXMLReader();
+                reader.setContentHandler(this);
+                reader.setErrorHandler(this);
+            }
+            return reader;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (SESSION_INDEX.equals(localName)) {
+                foundElement = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (SESSION_INDEX.equals(localName)) {
+                foundElement = false;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (foundElement) {
+                buffer.append(ch, start, length);
+            }
+        }
+    }
+}
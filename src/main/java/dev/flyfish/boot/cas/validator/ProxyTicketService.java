@@ -0,0 +1,182 @@
+package dev.flyfish.boot.cas.validator;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.exception.CASAuthenticationException;
+import dev.flyfish.boot.cas.exception.CASUnavailableException;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.metrics.CASObservations;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.util.xml.StaxUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 非阻塞的代理票据申请
+ *
+ * @author wangyu
+ * 以登录时取得的pgt向cas的 /proxy 申请访问后端服务的代理票据，与票据校验共用连接池。
+ * 开启合并时，同一pgt对同一目标服务的并发申请共享一次请求与同一个代理票据，
+ * 代理票据只能校验一次，因此只适用于会缓存代理票据校验结果的目标服务。
+ */
+@Slf4j
+public class ProxyTicketService {
+
+    static final String PROXY_SUCCESS = "proxySuccess";
+    static final String PROXY_FAILURE = "proxyFailure";
+    static final String PROXY_TICKET = "proxyTicket";
+
+    private final XMLInputFactory factory = StaxUtils.createDefensiveInputFactory();
+
+    private final WebClient webClient;
+
+    private final CASObservations observations;
+
+    private final String proxyPrefix;
+
+    private final Duration deadline;
+
+    private final int maxResponseSize;
+
+    // 未开启合并时为空
+    private final SingleFlight<ProxyKey, String> requests;
+
+    /**
+     * @param parameter 参数
+     * @param validator 票据校验器，共用其连接池与观测
+     */
+    public ProxyTicketService(CASParameter parameter, ReactiveTicketValidator validator) {
+        this.webClient = validator.getWebClient();
+        this.observations = validator.getObservations();
+        String url = StringUtils.hasText(parameter.getProxy().getUrl())
+                ? parameter.getProxy().getUrl() : proxyUrl(parameter.getCasValidate());
+        this.proxyPrefix = url + (url.indexOf('?') == -1 ? '?' : '&') + "targetService=";
+        this.deadline = parameter.getClient().getDeadline();
+        this.maxResponseSize = Math.toIntExact(parameter.getClient().getMaxResponseSize().toBytes());
+        this.requests = parameter.getProxy().isCoalesce() ? new SingleFlight<>() : null;
+    }
+
+    /**
+     * 由校验地址推导代理票据地址，兼容cas 3.0的 /p3 前缀
+     *
+     * @param validateUrl 校验地址
+     * @return 代理票据地址
+     */
+    static String proxyUrl(String validateUrl) {
+        int query = validateUrl.indexOf('?');
+        String base = query == -1 ? validateUrl : validateUrl.substring(0, query);
+        base = base.substring(0, base.lastIndexOf('/'));
+        if (base.endsWith("/p3")) {
+            base = base.substring(0, base.length() - 3);
+        }
+        return base + "/proxy";
+    }
+
+    /**
+     * 以receipt中的pgt申请代理票据
+     *
+     * @param receipt       登录时的校验结果
+     * @param targetService 目标服务地址，未编码
+     * @return 代理票据，失败时抛出 {@link CASAuthenticationException}
+     */
+    public Mono<String> getProxyTicket(CASReceipt receipt, String targetService) {
+        String pgtId = receipt.getProxyGrantingTicket();
+        if (pgtId == null) {
+            return Mono.error(new CASAuthenticationException("No proxy granting ticket for [" + receipt.getUserName() + "]"));
+        }
+        return getProxyTicket(pgtId, targetService);
+    }
+
+    /**
+     * 申请代理票据
+     *
+     * @param pgtId         代理授权票据
+     * @param targetService 目标服务地址，未编码
+     * @return 代理票据，失败时抛出 {@link CASAuthenticationException}
+     */
+    public Mono<String> getProxyTicket(String pgtId, String targetService) {
+        ProxyKey key = new ProxyKey(pgtId, targetService);
+        return requests == null ? Mono.defer(() -> request(key)) : requests.execute(key, this::request);
+    }
+
+    /**
+     * @return 当前合并中的申请数
+     */
+    public int getInFlightRequests() {
+        return requests == null ? 0 : requests.size();
+    }
+
+    private Mono<String> request(ProxyKey key) {
+        String url = proxyPrefix + URLEncoder.encode(key.targetService(), StandardCharsets.UTF_8)
+                + "&pgt=" + URLEncoder.encode(key.pgtId(), StandardCharsets.UTF_8);
+        log.debug("requesting proxy ticket for [{}]", key.targetService());
+
+        Mono<String> request = webClient.get()
+                .uri(URI.create(url))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> DataBufferUtils.join(body, maxResponseSize))
+                .handle((DataBuffer buffer, SynchronousSink<String> sink) -> {
+                    try (InputStream input = buffer.asInputStream(true)) {
+                        sink.next(parse(input));
+                    } catch (CASAuthenticationException e) {
+                        sink.error(e);
+                    } catch (Exception e) {
+                        sink.error(new CASUnavailableException("Unable to read proxy response from [" + proxyPrefix + "]", e));
+                    }
+                })
+                .timeout(deadline)
+                .onErrorMap(e -> !(e instanceof CASAuthenticationException),
+                        e -> new CASUnavailableException("Unable to request proxy ticket from [" + proxyPrefix + "]", e));
+        return observations.observe(CASObservations.PROXY, request);
+    }
+
+    /**
+     * 解析代理票据响应，元素按本地名匹配
+     */
+    private String parse(InputStream input) throws XMLStreamException, CASAuthenticationException {
+        XMLStreamReader reader = factory.createXMLStreamReader(input);
+        try {
+            boolean success = false;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case PROXY_SUCCESS -> success = true;
+                    case PROXY_TICKET -> {
+                        if (success) {
+                            return reader.getElementText().trim();
+                        }
+                    }
+                    case PROXY_FAILURE -> {
+                        String errorCode = reader.getAttributeValue(null, "code");
+                        String message = reader.getElementText().trim();
+                        throw new CASAuthenticationException("Proxy ticket request failed with code [" + errorCode + "]: " + message);
+                    }
+                    default -> {
+                    }
+                }
+            }
+            throw new XMLStreamException("no indication of success or failure from CAS");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private record ProxyKey(String pgtId, String targetService) {
+    }
+}
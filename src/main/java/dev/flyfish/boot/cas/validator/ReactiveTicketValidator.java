@@ -0,0 +1,273 @@
+package dev.flyfish.boot.cas.validator;
+
+import dev.flyfish.boot.cas.context.CASReceipt;
+import dev.flyfish.boot.cas.exception.BulkheadFullException;
+import dev.flyfish.boot.cas.exception.CASAuthenticationException;
+import dev.flyfish.boot.cas.exception.CASUnavailableException;
+import dev.flyfish.boot.cas.exception.CircuitOpenException;
+import dev.flyfish.boot.cas.filter.CASParameter;
+import dev.flyfish.boot.cas.metrics.CASMetrics;
+import dev.flyfish.boot.cas.metrics.CASObservations;
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 非阻塞的票据校验器
+ *
+ * @author wangyu
+ * 基于连接池化、keep-alive的reactor-netty客户端实现，校验过程不会阻塞事件循环
+ */
+@Slf4j
+public class ReactiveTicketValidator implements DisposableBean {
+
+    private final CASParameter parameter;
+
+    private final ConnectionProvider connectionProvider;
+
+    // 与代理票据申请共用连接池
+    @Getter(AccessLevel.PACKAGE)
+    private final WebClient webClient;
+
+    private final ResponseParser responseParser;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final CASObservations observations;
+
+    private final SingleFlight<ValidationKey, CASReceipt> validations = new SingleFlight<>();
+
+    // 校验地址中固定不变的前后缀，启动时计算一次
+    private final String validatePrefix;
+
+    private final String validateSuffix;
+
+    private final Duration deadline;
+
+    @Getter
+    private final Bulkhead bulkhead;
+
+    @Getter
+    private final CircuitBreaker circuitBreaker;
+
+    private final RetryBudget retryBudget;
+
+    // 未配置重试时为空
+    private final Retry retry;
+
+    @Setter
+    private CASMetrics metrics = CASMetrics.NOOP;
+
+    public ReactiveTicketValidator(CASParameter parameter) {
+        this(parameter, ObservationRegistry.NOOP);
+    }
+
+    /**
+     * @param observationRegistry 观测注册中心，校验与解析各自记录观测，http请求为其子观测
+     */
+    public ReactiveTicketValidator(CASParameter parameter, ObservationRegistry observationRegistry) {
+        this.parameter = parameter.checked();
+        this.observations = new CASObservations(observationRegistry);
+        this.connectionProvider = createConnectionProvider(parameter.getClient());
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(createHttpClient(connectionProvider, parameter.getClient())))
+                .observationRegistry(observationRegistry)
+                .build();
+        this.responseParser = createResponseParser(parameter.getClient());
+
+        String validate = parameter.getCasValidate();
+        this.validatePrefix = validate + (validate.indexOf('?') == -1 ? '?' : '&') + "service=";
+        this.validateSuffix = (parameter.getCasProxyCallbackUrl() != null ? "&pgtUrl=" + parameter.getCasProxyCallbackUrl() : "")
+                + (parameter.getClient().getFormat() == CASParameter.Client.Format.JSON ? "&format=JSON" : "");
+
+        CASParameter.Client client = parameter.getClient();
+        this.deadline = client.getDeadline();
+        this.bulkhead = new Bulkhead(client.getBulkhead());
+        this.circuitBreaker = new CircuitBreaker(client.getBreaker());
+        CASParameter.Client.Retry retry = client.getRetry();
+        this.retryBudget = new RetryBudget(retry.getBudgetRatio(), retry.getBudget());
+        this.retry = retry.getMaxAttempts() > 0
+                ? Retry.backoff(retry.getMaxAttempts(), retry.getBackoff())
+                .filter(e -> isConnectFailure(e) && retryBudget.tryWithdraw())
+                .doBeforeRetry(signal -> log.debug("retrying CAS validation after connect failure: {}", signal.failure().toString()))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure())
+                : null;
+    }
+
+    private static ResponseParser createResponseParser(CASParameter.Client client) {
+        int maxResponseSize = Math.toIntExact(client.getMaxResponseSize().toBytes());
+        return switch (client.getFormat()) {
+            case XML -> new ValidationResponseParser(client.getParserPoolSize(), maxResponseSize);
+            case JSON -> new JsonValidationResponseParser(client.getParserPoolSize(), maxResponseSize);
+        };
+    }
+
+    private static ConnectionProvider createConnectionProvider(CASParameter.Client client) {
+        return ConnectionProvider.builder("cas-validation")
+                .maxConnections(client.getMaxConnections())
+                .pendingAcquireMaxCount(client.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(client.getPendingAcquireTimeout())
+                .maxIdleTime(client.getMaxIdleTime())
+                .build();
+    }
+
+    private static HttpClient createHttpClient(ConnectionProvider provider, CASParameter.Client client) {
+        return HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(client.getConnectTimeout().toMillis()))
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(client.getReadTimeout());
+    }
+
+    /**
+     * 校验票据，同一票据与服务的并发校验会共享同一个结果
+     * 票据只能使用一次，重复提交的请求若各自校验，后到的必然失败
+     *
+     * @param ticket  票据
+     * @param service 已编码的服务地址
+     * @return 校验成功的receipt，失败时抛出 {@link CASAuthenticationException}
+     */
+    public Mono<CASReceipt> validate(String ticket, String service) {
+        return validate(ticket, service, parameter.isCasRenew());
+    }
+
+    /**
+     * 校验票据，renew由路由策略决定
+     *
+     * @param ticket  票据
+     * @param service 已编码的服务地址
+     * @param renew   是否要求票据来自重新输入凭证
+     * @return 校验成功的receipt，失败时抛出 {@link CASAuthenticationException}
+     */
+    public Mono<CASReceipt> validate(String ticket, String service, boolean renew) {
+        return validations.execute(new ValidationKey(ticket, service, renew), this::doValidate);
+    }
+
+    /**
+     * @return 当前在途的校验数
+     */
+    public int getInFlightValidations() {
+        return validations.size();
+    }
+
+    private Mono<CASReceipt> doValidate(ValidationKey key) {
+        URI uri;
+        try {
+            uri = validationUri(key);
+        } catch (CASAuthenticationException e) {
+            return Mono.error(e);
+        }
+        // 熔断时不发出请求也不排队，票据保持未消费
+        if (!circuitBreaker.tryAcquire()) {
+            return Mono.error(new CircuitOpenException(circuitBreaker.getRemainingOpenTime()));
+        }
+        retryBudget.deposit();
+        // 获得并发名额后才发出请求，在此时计时，合并的并发校验只记录一次
+        Mono<CASReceipt> validation = bulkhead.execute(metrics == CASMetrics.NOOP
+                ? () -> exchange(key, uri, null)
+                : () -> exchange(key, uri, System.nanoTime()));
+        return observations.observe(CASObservations.VALIDATION, KeyValues.of("renew", String.valueOf(key.renew())), validation)
+                .doOnSuccess(receipt -> circuitBreaker.onSuccess())
+                .doOnError(e -> {
+                    // 票据无效说明cas工作正常，排队被拒绝或其他本地异常时没有结果
+                    if (e instanceof BulkheadFullException) {
+                        circuitBreaker.onIgnored();
+                    } else if (e instanceof CASUnavailableException) {
+                        circuitBreaker.onFailure();
+                    } else if (e instanceof CASAuthenticationException) {
+                        circuitBreaker.onSuccess();
+                    } else {
+                        circuitBreaker.onIgnored();
+                    }
+                })
+                .doOnCancel(circuitBreaker::onIgnored);
+    }
+
+    /**
+     * 连接未建立的失败，此时请求未发出，可以安全重试
+     */
+    private static boolean isConnectFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 拼接校验地址，票据来自请求参数，编码后拼接，避免改写校验请求的参数
+     *
+     * @throws CASAuthenticationException 地址不合法，不发出请求
+     */
+    private URI validationUri(ValidationKey key) throws CASAuthenticationException {
+        String url = validatePrefix + key.service() + "&ticket=" + URLEncoder.encode(key.ticket(), StandardCharsets.UTF_8)
+                + validateSuffix + (key.renew() ? "&renew=true" : "");
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new CASAuthenticationException("Invalid validation url [" + url + "]", e);
+        }
+    }
+
+    /**
+     * @param uri   校验地址
+     * @param start 开始时间，为空时不记录指标
+     */
+    private Mono<CASReceipt> exchange(ValidationKey key, URI uri, Long start) {
+        log.debug("about to validate ticket against [{}]", uri);
+
+        return webClient.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .transform(body -> retry != null ? body.retryWhen(retry) : body)
+                .as(body -> observations.observeLeaf(CASObservations.PARSE, responseParser.parse(body)))
+                .handle((ValidationResponse response, SynchronousSink<CASReceipt> sink) -> {
+                    try {
+                        sink.next(CASReceipt.fromResponse(response, parameter.getCasValidate(),
+                                parameter.getCasProxyCallbackUrl(), key.renew()));
+                        if (start != null) {
+                            metrics.onValidation(System.nanoTime() - start, CASMetrics.VALIDATION_SUCCESS, null);
+                        }
+                    } catch (CASAuthenticationException e) {
+                        if (start != null) {
+                            metrics.onValidation(System.nanoTime() - start, CASMetrics.VALIDATION_FAILURE, response.errorCode());
+                        }
+                        sink.error(e);
+                    }
+                })
+                .timeout(deadline)
+                .onErrorMap(e -> !(e instanceof CASAuthenticationException), e -> {
+                    if (start != null) {
+                        metrics.onValidation(System.nanoTime() - start, CASMetrics.VALIDATION_ERROR, null);
+                    }
+                    return new CASUnavailableException("Unable to validate ticket against [" + uri + "]", e);
+                });
+    }
+
+    private record ValidationKey(String ticket, String service, boolean renew) {
+    }
+
+    @Override
+    public void destroy() {
+        connectionProvider.dispose();
+    }
+}
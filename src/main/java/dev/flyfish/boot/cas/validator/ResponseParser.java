@@ -0,0 +1,21 @@
+package dev.flyfish.boot.cas.validator;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 校验响应解析器
+ *
+ * @author wangyu
+ */
+public interface ResponseParser {
+
+    /**
+     * 解析响应体，消费过的缓冲区会立即释放
+     *
+     * @param body 响应体
+     * @return 不可变的解析结果
+     */
+    Mono<ValidationResponse> parse(Flux<DataBuffer> body);
+}
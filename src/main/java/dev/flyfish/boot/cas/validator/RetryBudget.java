@@ -0,0 +1,45 @@
+package dev.flyfish.boot.cas.validator;
+
+/**
+ * 重试预算
+ *
+ * @author wangyu
+ * 每次校验存入ratio个令牌，每次重试取出一个，令牌数不超过capacity。
+ * cas整体不可用时重试量被限制在正常调用量的固定比例内，不会放大故障。
+ */
+public class RetryBudget {
+
+    // 定点数，1个令牌为SCALE
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private long balance;
+
+    /**
+     * @param ratio    每次调用存入的令牌数，如0.1表示最多每10次调用重试一次
+     * @param capacity 最多积攒的令牌数，初始为满
+     */
+    public RetryBudget(double ratio, int capacity) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = (long) capacity * SCALE;
+        this.balance = this.capacity;
+    }
+
+    public synchronized void deposit() {
+        balance = Math.min(capacity, balance + deposit);
+    }
+
+    /**
+     * @return 是否还有预算
+     */
+    public synchronized boolean tryWithdraw() {
+        if (balance < SCALE) {
+            return false;
+        }
+        balance -= SCALE;
+        return true;
+    }
+}
@@ -77,6 +77,16 @@ public class ServiceTicketValidator {
     }
 
     public void validate() throws IOException, SAXException, ParserConfigurationException {
+        String url = this.getValidateUrl();
+        this.parseResponse(SecureURL.retrieve(url));
+    }
+
+    /**
+     * 构建校验地址，同时重置上一次的校验状态
+     *
+     * @return 完整的校验地址
+     */
+    public String getValidateUrl() {
         if (this.casValidateUrl != null && this.st != null) {
             this.clear();
             this.attemptedAuthentication = true;
@@ -99,20 +109,27 @@ public class ServiceTicketValidator {
 
             String url = sb.toString();
             this.ss = url;
-            String response = SecureURL.retrieve(url);
-            this.entireResponse = response;
-            if (response != null) {
-                XMLReader r = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
-                r.setFeature("http://xml.org/sax/features/namespaces", false);
-                r.setContentHandler(this.newHandler());
-                r.parse(new InputSource(new StringReader(response)));
-            }
-
+            return url;
         } else {
             throw new IllegalStateException("must set validation URL and ticket");
         }
     }
 
+    /**
+     * 解析cas服务器返回的校验结果，可供非阻塞的客户端复用
+     *
+     * @param response 响应体
+     */
+    public void parseResponse(String response) throws SAXException, ParserConfigurationException, IOException {
+        this.entireResponse = response;
+        if (response != null) {
+            XMLReader r = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            r.setFeature("http://xml.org/sax/features/namespaces", false);
+            r.setContentHandler(this.newHandler());
+            r.parse(new InputSource(new StringReader(response)));
+        }
+    }
+
     protected DefaultHandler newHandler() {
         return new Handler();
     }
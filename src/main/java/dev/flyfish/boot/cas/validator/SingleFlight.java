@@ -0,0 +1,56 @@
+package dev.flyfish.boot.cas.validator;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 在途请求合并器
+ *
+ * @author wangyu
+ * 同一个key的并发调用共享同一个进行中的结果，结果产生（成功、失败或取消）后立即移除，不做任何缓存
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行或加入一个在途调用
+     *
+     * @param key    合并的键
+     * @param loader 真正的调用逻辑，每个在途周期只会被订阅一次
+     * @return 共享的结果
+     */
+    public Mono<V> execute(K key, Function<K, Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> new Flight(k, loader).shared));
+    }
+
+    /**
+     * @return 当前在途的调用数
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private final class Flight {
+
+        private final K key;
+
+        private final Mono<V> shared;
+
+        private Flight(K key, Function<K, Mono<V>> loader) {
+            this.key = key;
+            // 结果下发前即移除自身，之后的调用将重新发起，不会拿到已下发的结果
+            this.shared = Mono.defer(() -> loader.apply(key))
+                    .doOnTerminate(this::evict)
+                    .doFinally(signal -> evict())
+                    .cache();
+        }
+
+        private void evict() {
+            inFlight.remove(key, shared);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dev.flyfish.boot.cas.validator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 票据校验的不可变结果
+ *
+ * @param successful   是否校验成功
+ * @param user         用户名
+ * @param pgtIou       代理授权票据的IOU
+ * @param proxies      代理链，未经代理时为空
+ * @param attributes   cas释放的用户属性，按响应中的顺序，每个属性可有多个值
+ * @param errorCode    失败时的错误码
+ * @param errorMessage 失败时的错误信息
+ * @author wangyu
+ */
+public record ValidationResponse(boolean successful, String user, String pgtIou, List<String> proxies,
+                                 Map<String, List<String>> attributes, String errorCode, String errorMessage) {
+
+    public ValidationResponse {
+        proxies = proxies == null ? List.of() : List.copyOf(proxies);
+        attributes = copyOf(attributes);
+    }
+
+    /**
+     * 保持顺序的不可变副本
+     */
+    private static Map<String, List<String>> copyOf(Map<String, List<String>> attributes) {
+        if (attributes == null || attributes.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, List<String>> copy = new LinkedHashMap<>(attributes.size() * 2);
+        attributes.forEach((name, values) -> copy.put(name, List.copyOf(values)));
+        return Collections.unmodifiableMap(copy);
+    }
+}
@@ -0,0 +1,268 @@
+package dev.flyfish.boot.cas.validator;
+
+import com.fasterxml.aalto.AsyncByteBufferFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.xml.StaxUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 流式的校验响应解析器
+ *
+ * @author wangyu
+ * 直接消费网络缓冲区，逐块喂给非阻塞的xml解析器，无需先拼接成字符串。
+ * 解析状态（文本累加器、代理列表）池化复用，每次解析只为最终结果分配内存。
+ * 元素按本地名匹配，不依赖cas命名空间前缀。cas 3.0的 {@code cas:attributes} 下每个子元素为一个属性值，同名元素为多值。
+ */
+public class ValidationResponseParser implements ResponseParser {
+
+    static final String AUTHENTICATION_SUCCESS = "authenticationSuccess";
+    static final String AUTHENTICATION_FAILURE = "authenticationFailure";
+    static final String PROXY_GRANTING_TICKET = "proxyGrantingTicket";
+    static final String USER = "user";
+    static final String PROXIES = "proxies";
+    static final String PROXY = "proxy";
+    static final String ATTRIBUTES = "attributes";
+
+    // 超出该容量的累加器不回收，避免异常响应长期占用内存
+    private static final int MAX_RETAINED_TEXT = 4096;
+
+    private final AsyncXMLInputFactory factory = StaxUtils.createDefensiveInputFactory(InputFactoryImpl::new);
+
+    private final BlockingQueue<ParseState> pool;
+
+    private final int maxResponseSize;
+
+    public ValidationResponseParser(int poolSize, int maxResponseSize) {
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * 解析状态只在正常结束或出错后回收，此时不会再有缓冲区喂入。
+     * 取消（超时、订阅方离开、连接断开）时网络线程可能仍在解析，该状态直接丢弃，不放回池中
+     */
+    @Override
+    public Mono<ValidationResponse> parse(Flux<DataBuffer> body) {
+        return Mono.usingWhen(Mono.fromCallable(this::acquire),
+                state -> body.<Void>handle((buffer, sink) -> {
+                            try {
+                                state.feed(buffer);
+                            } catch (XMLStreamException e) {
+                                sink.error(e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .then(Mono.fromCallable(state::finish)),
+                state -> Mono.fromRunnable(() -> release(state)),
+                (state, e) -> Mono.fromRunnable(() -> release(state)),
+                state -> Mono.empty());
+    }
+
+    private ParseState acquire() {
+        ParseState state = pool.poll();
+        if (state == null) {
+            state = new ParseState();
+        }
+        state.open();
+        return state;
+    }
+
+    private void release(ParseState state) {
+        if (state.reset()) {
+            pool.offer(state);
+        }
+    }
+
+    /**
+     * 单次解析的状态，同一时刻只被一个响应使用，因此无需同步
+     */
+    private final class ParseState {
+
+        private final StringBuilder text = new StringBuilder(64);
+
+        private final List<String> proxies = new ArrayList<>(2);
+
+        private final Map<String, List<String>> attributes = new LinkedHashMap<>();
+
+        private AsyncXMLStreamReader<AsyncByteBufferFeeder> reader;
+
+        private int received;
+
+        private boolean ended;
+
+        private boolean capturing;
+
+        private boolean authenticationSuccess;
+
+        private boolean authenticationFailure;
+
+        private boolean proxyFragment;
+
+        // cas:attributes内的元素深度，0表示不在属性内
+        private int attributeDepth;
+
+        private String attribute;
+
+        private String user;
+
+        private String pgtIou;
+
+        private String errorCode;
+
+        private String errorMessage;
+
+        private void open() {
+            this.reader = factory.createAsyncForByteBuffer();
+        }
+
+        private void feed(DataBuffer buffer) throws XMLStreamException {
+            received += buffer.readableByteCount();
+            if (received > maxResponseSize) {
+                throw new XMLStreamException("CAS response exceeds the limit of " + maxResponseSize + " bytes");
+            }
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext() && !ended) {
+                    reader.getInputFeeder().feedInput(iterator.next());
+                    drain();
+                }
+            }
+        }
+
+        private ValidationResponse finish() throws XMLStreamException {
+            if (!ended) {
+                reader.getInputFeeder().endOfInput();
+                drain();
+            }
+            if (authenticationSuccess) {
+                return new ValidationResponse(true, user, pgtIou, proxies, attributes, null, null);
+            }
+            if (authenticationFailure) {
+                return new ValidationResponse(false, null, null, null, null, errorCode, errorMessage);
+            }
+            throw new XMLStreamException("no indication of success or failure from CAS");
+        }
+
+        private void drain() throws XMLStreamException {
+            int event;
+            while (!ended && (event = reader.next()) != AsyncXMLStreamReader.EVENT_INCOMPLETE) {
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> startElement(reader.getLocalName());
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (capturing) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> endElement(reader.getLocalName());
+                    case XMLStreamConstants.END_DOCUMENT -> ended = true;
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        private void startElement(String name) {
+            text.setLength(0);
+            capturing = false;
+            if (attributeDepth > 0) {
+                // 只取属性的直接子元素
+                if (++attributeDepth == 2) {
+                    attribute = name;
+                    capturing = true;
+                }
+                return;
+            }
+            switch (name) {
+                case AUTHENTICATION_SUCCESS -> authenticationSuccess = true;
+                case AUTHENTICATION_FAILURE -> {
+                    authenticationFailure = true;
+                    capturing = true;
+                    String code = reader.getAttributeValue(null, "code");
+                    errorCode = code == null ? null : code.trim();
+                }
+                case USER, PROXY_GRANTING_TICKET -> capturing = authenticationSuccess;
+                case PROXIES -> proxyFragment = authenticationSuccess;
+                case ATTRIBUTES -> attributeDepth = authenticationSuccess ? 1 : 0;
+                case PROXY -> capturing = proxyFragment;
+                default -> {
+                }
+            }
+        }
+
+        private void endElement(String name) {
+            if (attributeDepth > 0) {
+                if (capturing && attributeDepth == 2) {
+                    attributes.computeIfAbsent(attribute, key -> new ArrayList<>(1)).add(trimmedText());
+                }
+                attributeDepth--;
+                capturing = false;
+                return;
+            }
+            if (capturing) {
+                switch (name) {
+                    case USER -> user = trimmedText();
+                    case PROXY_GRANTING_TICKET -> pgtIou = trimmedText();
+                    case PROXY -> proxies.add(trimmedText());
+                    case AUTHENTICATION_FAILURE -> errorMessage = trimmedText();
+                    default -> {
+                    }
+                }
+            }
+            if (PROXIES.equals(name)) {
+                proxyFragment = false;
+            }
+            capturing = false;
+        }
+
+        /**
+         * 直接在累加器上去除首尾空白，只分配结果字符串
+         */
+        private String trimmedText() {
+            int start = 0, end = text.length();
+            while (start < end && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            return text.substring(start, end);
+        }
+
+        /**
+         * 重置状态以便复用
+         *
+         * @return 是否可以回收
+         */
+        private boolean reset() {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+                reader = null;
+            }
+            received = 0;
+            ended = capturing = authenticationSuccess = authenticationFailure = proxyFragment = false;
+            attributeDepth = 0;
+            user = pgtIou = errorCode = errorMessage = attribute = null;
+            proxies.clear();
+            attributes.clear();
+            text.setLength(0);
+            return text.capacity() <= MAX_RETAINED_TEXT;
+        }
+    }
+}